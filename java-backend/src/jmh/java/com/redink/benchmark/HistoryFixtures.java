@@ -0,0 +1,142 @@
+package com.redink.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redink.model.HistoryRecord;
+import com.redink.model.HistorySummary;
+import com.redink.model.OutlineResult;
+import com.redink.util.OutlineParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * 历史记录目录生成器
+ * 生成 N 条记录文件和对应的 index.json 快照，目录结构与 HistoryServiceImpl 一致。
+ * 同一记录数的目录生成一次后复用（以 .complete 标记）；会写入目录的基准应通过 copyOf 使用副本
+ *
+ * 也可以单独运行：java ... com.redink.benchmark.HistoryFixtures <目录> <记录数>
+ */
+public final class HistoryFixtures {
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    private static final String COMPLETE_MARKER = ".complete";
+    private static final String[] STATUSES = {"draft", "generating", "completed", "completed", "partial"};
+
+    private HistoryFixtures() {
+    }
+
+    /**
+     * 获取（必要时生成）包含指定记录数的历史目录
+     */
+    public static Path historyDir(int records) throws IOException {
+        Path dir = Paths.get("target", "jmh-fixtures", "history-" + records);
+        if (!Files.exists(dir.resolve(COMPLETE_MARKER))) {
+            generate(dir, records, 42L);
+        }
+        return dir;
+    }
+
+    /**
+     * 复制历史目录到新的临时目录，每轮基准独立使用，更新和索引日志不会写回共享的生成目录
+     */
+    public static Path copyOf(Path source) throws IOException {
+        Path copy = Files.createTempDirectory(source.getParent(), source.getFileName() + "-trial-");
+        try (Stream<Path> files = Files.list(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) {
+                    Files.copy(file, copy.resolve(file.getFileName()));
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * 删除 copyOf 创建的目录
+     */
+    public static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * 生成历史目录
+     * @param dir 目标目录
+     * @param records 记录数
+     * @param seed 随机种子
+     */
+    public static void generate(Path dir, int records, long seed) throws IOException {
+        Files.createDirectories(dir);
+        ObjectMapper objectMapper = new ObjectMapper();
+        Random random = new Random(seed);
+        LocalDateTime base = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+        List<HistorySummary> summaries = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            String id = new UUID(seed, i).toString();
+            String time = base.plusMinutes(i * 7L).format(DATE_FORMATTER);
+            int pages = 2 + random.nextInt(17);
+            String outlineText = BenchmarkFixtures.outline(pages, seed + i);
+
+            OutlineResult outline = new OutlineResult();
+            outline.setSuccess(true);
+            outline.setOutline(outlineText);
+            outline.setPages(OutlineParser.parseOutline(outlineText));
+
+            HistoryRecord.ImagesInfo images = new HistoryRecord.ImagesInfo();
+            images.setTaskId("task_" + Long.toHexString(seed) + "_" + i);
+
+            HistoryRecord record = new HistoryRecord();
+            record.setId(id);
+            record.setTitle(BenchmarkFixtures.title(random));
+            record.setCreatedAt(time);
+            record.setUpdatedAt(time);
+            record.setOutline(outline);
+            record.setImages(images);
+            record.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+            record.setThumbnail("0.png");
+            objectMapper.writeValue(dir.resolve(id + ".json").toFile(), record);
+
+            HistorySummary summary = new HistorySummary();
+            summary.setId(id);
+            summary.setTitle(record.getTitle());
+            summary.setCreatedAt(time);
+            summary.setUpdatedAt(time);
+            summary.setStatus(record.getStatus());
+            summary.setThumbnail(record.getThumbnail());
+            summary.setPageCount(outline.getPages().size());
+            summary.setTaskId(images.getTaskId());
+            summaries.add(summary);
+        }
+
+        // 快照按最新在前保存
+        Collections.reverse(summaries);
+        objectMapper.writeValue(dir.resolve("index.json").toFile(), Map.of("records", summaries));
+        Files.deleteIfExists(dir.resolve("index.log"));
+        Files.deleteIfExists(dir.resolve("index.log.compacting"));
+        Files.writeString(dir.resolve(COMPLETE_MARKER), String.valueOf(records));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("用法: HistoryFixtures <目录> <记录数>");
+            System.exit(1);
+        }
+        generate(Paths.get(args[0]), Integer.parseInt(args[1]), 42L);
+    }
+}
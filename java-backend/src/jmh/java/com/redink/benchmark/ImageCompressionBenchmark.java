@@ -0,0 +1,37 @@
+package com.redink.benchmark;
+
+import com.redink.util.ImageUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片压缩基准：不同尺寸的固定图片压缩到封面参考图（200KB）和缩略图（50KB）大小
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageCompressionBenchmark {
+
+    @Param({"512x768", "1024x1536", "2048x3072"})
+    public String size;
+
+    @Param({"200", "50"})
+    public int targetKb;
+
+    private byte[] image;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] dimensions = size.split("x");
+        image = BenchmarkFixtures.image(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), 7L);
+    }
+
+    @Benchmark
+    public ImageUtils.CompressionResult compress() {
+        return ImageUtils.compress(image, targetKb);
+    }
+}
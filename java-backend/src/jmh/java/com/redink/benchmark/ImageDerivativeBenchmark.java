@@ -0,0 +1,42 @@
+package com.redink.benchmark;
+
+import com.redink.util.ImageUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 衍生图基准：一次解码生成多个宽度，与原来按大小压缩出单个 50KB 缩略图对比
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageDerivativeBenchmark {
+
+    private static final int[] WIDTHS = {360, 720};
+
+    @Param({"1024x1536", "2048x3072"})
+    public String size;
+
+    private byte[] image;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] dimensions = size.split("x");
+        image = BenchmarkFixtures.image(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), 7L);
+    }
+
+    @Benchmark
+    public ImageUtils.DerivedImages deriveWidths() throws IOException {
+        return ImageUtils.deriveWidths(image, WIDTHS, 80);
+    }
+
+    @Benchmark
+    public byte[] singleThumbnail() {
+        return ImageUtils.compressImage(image, 50);
+    }
+}
@@ -0,0 +1,35 @@
+package com.redink.benchmark;
+
+import com.redink.model.Page;
+import com.redink.util.OutlineParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大纲解析基准：2~18 页的合成大纲
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutlineParseBenchmark {
+
+    @Param({"2", "6", "12", "18"})
+    public int pages;
+
+    private String outline;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        outline = BenchmarkFixtures.outline(pages, 11L);
+    }
+
+    @Benchmark
+    public List<Page> parseOutline() {
+        return OutlineParser.parseOutline(outline);
+    }
+}
@@ -0,0 +1,79 @@
+package com.redink.benchmark;
+
+import com.redink.config.ProviderHttpClientConfig;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务商 HTTP 客户端吞吐基准：32 个线程并发请求本地模拟服务商
+ * 对比连接池复用与每次新建连接、HTTP/1.1 与 H2C 多路复用
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProviderHttpClientBenchmark {
+
+    private static final String CHAT_REQUEST = "{\"model\":\"mock\",\"messages\":[{\"role\":\"user\",\"content\":\"周末城市漫步\"}]}";
+    private static final String IMAGE_REQUEST = "{\"model\":\"mock\",\"prompt\":\"周末城市漫步\",\"response_format\":\"b64_json\"}";
+
+    @Param({"pooled", "new-connection"})
+    public String connections;
+
+    @Param({"HTTP11", "H2C"})
+    public String protocol;
+
+    @Param({"20"})
+    public long latencyMillis;
+
+    private MockProviderServer server;
+    private ConnectionProvider connectionProvider;
+    private HttpClient client;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        server = MockProviderServer.start(0, latencyMillis);
+        connectionProvider = "pooled".equals(connections)
+                ? ConnectionProvider.builder("benchmark").maxConnections(64).pendingAcquireMaxCount(-1).build()
+                : ConnectionProvider.newConnection();
+        client = ProviderHttpClientConfig.createHttpClient(connectionProvider,
+                        Duration.ofSeconds(5), Duration.ofSeconds(30), false)
+                .protocol(HttpProtocol.valueOf(protocol))
+                .baseUrl(server.baseUrl())
+                .headers(headers -> headers.set("Content-Type", "application/json"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connectionProvider.dispose();
+        server.close();
+    }
+
+    @Benchmark
+    public String chatCompletion() {
+        return post("/v1/chat/completions", CHAT_REQUEST);
+    }
+
+    @Benchmark
+    public String imageGeneration() {
+        return post("/v1/images/generations", IMAGE_REQUEST);
+    }
+
+    private String post(String path, String body) {
+        return client.post()
+                .uri(path)
+                .send(ByteBufFlux.fromString(Mono.just(body)))
+                .responseSingle((response, content) -> content.asString())
+                .block();
+    }
+}
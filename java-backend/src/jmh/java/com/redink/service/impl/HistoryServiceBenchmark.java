@@ -0,0 +1,96 @@
+package com.redink.service.impl;
+
+import com.redink.benchmark.HistoryFixtures;
+import com.redink.model.HistoryRecord;
+import com.redink.model.HistorySummary;
+import com.redink.service.PagedResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 历史记录 I/O 基准：1k/10k/100k 条记录的启动加载、列表、搜索、读取和更新
+ * 放在 service.impl 包下以使用指定目录的构造函数
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistoryServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int records;
+
+    private Path historyDir;
+    private HistoryServiceImpl service;
+    private List<String> recordIds;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        // 每轮使用生成目录的副本，updateStatus 等写操作不影响后续轮次和其他基准的加载
+        historyDir = HistoryFixtures.copyOf(HistoryFixtures.historyDir(records));
+        service = new HistoryServiceImpl(historyDir, 1000);
+        service.awaitSearchIndex();
+        recordIds = service.listRecords(1, records, null).getRecords().stream()
+                .map(HistorySummary::getId)
+                .toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        service.shutdown();
+        HistoryFixtures.delete(historyDir);
+    }
+
+    /**
+     * 启动加载：读取快照并重放日志
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public HistoryServiceImpl loadIndex() {
+        HistoryServiceImpl loaded = new HistoryServiceImpl(historyDir, 1000);
+        loaded.shutdown();
+        return loaded;
+    }
+
+    @Benchmark
+    public PagedResult<HistorySummary> listFirstPage() {
+        return service.listRecords(1, 20, null);
+    }
+
+    @Benchmark
+    public PagedResult<HistorySummary> listByStatus() {
+        return service.listRecords(1, 20, "completed");
+    }
+
+    @Benchmark
+    public PagedResult<HistorySummary> search() {
+        return service.searchRecords("手冲咖啡", 1, 20);
+    }
+
+    @Benchmark
+    public HistoryRecord getRecord() {
+        return service.getRecord(randomId());
+    }
+
+    /**
+     * 更新状态：记录文件读改写 + 追加索引日志
+     */
+    @Benchmark
+    public boolean updateStatus() {
+        return service.updateRecord(randomId(), null, null, "completed", null);
+    }
+
+    private String randomId() {
+        return recordIds.get(ThreadLocalRandom.current().nextInt(recordIds.size()));
+    }
+}
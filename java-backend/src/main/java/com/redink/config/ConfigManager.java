@@ -2,152 +2,135 @@ package com.redink.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
-import lombok.Data;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * 配置管理类
- * 负责加载和管理系统配置
+ * 负责加载和管理系统配置。
+ * 服务商配置在加载时解析、校验为不可变快照，通过 AtomicReference 整体发布，读取无锁；
+ * 配置文件变化时由后台线程重新加载，解析失败时保留上一份快照
  */
 @Component
 public class ConfigManager {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(ConfigManager.class);
-    
+
+    private static final String IMAGE_CONFIG_FILE = "image_providers.yaml";
+    private static final String TEXT_CONFIG_FILE = "text_providers.yaml";
+    // 合并编辑器连续写入产生的多次事件
+    private static final long RELOAD_DEBOUNCE_MILLIS = 200;
+
     private final Environment environment;
-    
-    // 配置缓存
-    private Map<String, Object> imageProvidersConfig;
-    private Map<String, Object> textProvidersConfig;
-    
-    public ConfigManager(Environment environment) {
+    private final Path configDir;
+
+    private final AtomicReference<ProvidersSnapshot> imageProviders = new AtomicReference<>();
+    private final AtomicReference<ProvidersSnapshot> textProviders = new AtomicReference<>();
+
+    // 配置重新加载后的回调，参数为服务商类型 image/text
+    private final List<Consumer<String>> reloadListeners = new CopyOnWriteArrayList<>();
+
+    private volatile WatchService watchService;
+
+    public ConfigManager(Environment environment,
+                         @Value("${redink.config.watch:true}") boolean watch) {
         this.environment = environment;
+        this.configDir = Paths.get("").toAbsolutePath();
+
+        imageProviders.set(load("image"));
+        textProviders.set(load("text"));
+        if (watch) {
+            startWatcher();
+        }
     }
-    
+
     /**
      * 加载图片服务商配置
+     * @return 原始配置（不可变），每次重新加载后为新对象
      */
     public Map<String, Object> loadImageProvidersConfig() {
-        if (imageProvidersConfig != null) {
-            return imageProvidersConfig;
-        }
-        
-        Path configPath = Paths.get("image_providers.yaml");
-        if (!Files.exists(configPath)) {
-            logger.warn("图片配置文件不存在: {}, 使用默认配置", configPath);
-            imageProvidersConfig = createDefaultImageConfig();
-            return imageProvidersConfig;
-        }
-        
-        try {
-            ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-            imageProvidersConfig = mapper.readValue(configPath.toFile(), Map.class);
-            logger.debug("图片配置加载成功: {}", imageProvidersConfig.keySet());
-        } catch (IOException e) {
-            logger.error("图片配置文件格式错误: {}", configPath, e);
-            throw new IllegalArgumentException(
-                "配置文件格式错误: image_providers.yaml\n" +
-                "YAML 解析错误: " + e.getMessage() + "\n" +
-                "解决方案：\n" +
-                "1. 检查 YAML 缩进是否正确（使用空格，不要用Tab）\n" +
-                "2. 检查引号是否配对\n" +
-                "3. 使用在线 YAML 验证器检查格式"
-            );
-        }
-        
-        return imageProvidersConfig;
+        return checked(imageProviders.get()).getRaw();
     }
-    
+
     /**
      * 加载文本生成服务商配置
+     * @return 原始配置（不可变），每次重新加载后为新对象
      */
     public Map<String, Object> loadTextProvidersConfig() {
-        if (textProvidersConfig != null) {
-            return textProvidersConfig;
-        }
-        
-        Path configPath = Paths.get("text_providers.yaml");
-        if (!Files.exists(configPath)) {
-            logger.warn("文本配置文件不存在: {}, 使用默认配置", configPath);
-            textProvidersConfig = createDefaultTextConfig();
-            return textProvidersConfig;
-        }
-        
-        try {
-            ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
-            textProvidersConfig = mapper.readValue(configPath.toFile(), Map.class);
-            logger.debug("文本配置加载成功: {}", textProvidersConfig.keySet());
-        } catch (IOException e) {
-            logger.error("文本配置文件格式错误: {}", configPath, e);
-            throw new IllegalArgumentException(
-                "配置文件格式错误: text_providers.yaml\n" +
-                "YAML 解析错误: " + e.getMessage() + "\n" +
-                "解决方案：\n" +
-                "1. 检查 YAML 缩进是否正确（使用空格，不要用Tab）\n" +
-                "2. 检查引号是否配对\n" +
-                "3. 使用在线 YAML 验证器检查格式"
-            );
-        }
-        
-        return textProvidersConfig;
+        return checked(textProviders.get()).getRaw();
+    }
+
+    /**
+     * 图片服务商配置快照
+     */
+    public ProvidersSnapshot getImageProviders() {
+        return checked(imageProviders.get());
+    }
+
+    /**
+     * 文本服务商配置快照
+     */
+    public ProvidersSnapshot getTextProviders() {
+        return checked(textProviders.get());
     }
-    
+
     /**
      * 获取激活的图片服务商
      */
     public String getActiveImageProvider() {
-        Map<String, Object> config = loadImageProvidersConfig();
-        return config.getOrDefault("active_provider", "google_genai").toString();
+        return getImageProviders().getActiveProvider();
     }
-    
+
     /**
      * 获取激活的文本服务商
      */
     public String getActiveTextProvider() {
-        Map<String, Object> config = loadTextProvidersConfig();
-        return config.getOrDefault("active_provider", "openai").toString();
+        return getTextProviders().getActiveProvider();
     }
-    
+
     /**
      * 获取服务商配置
+     * @return 原始配置（不可变），未找到时返回 null
      */
     public Map<String, Object> getProviderConfig(String type, String providerName) {
-        Map<String, Object> config;
-        Map<String, Object> providers;
-        
-        if ("image".equals(type)) {
-            config = loadImageProvidersConfig();
-        } else if ("text".equals(type)) {
-            config = loadTextProvidersConfig();
-        } else {
-            return new HashMap<>();
+        ProvidersSnapshot snapshot = snapshot(type);
+        if (snapshot == null) {
+            return Map.of();
         }
-        
-        providers = (Map<String, Object>) config.get("providers");
-        if (providers == null) {
-            providers = new HashMap<>();
-        }
-        
-        return (Map<String, Object>) providers.get(providerName);
+        ProvidersSnapshot.Provider provider = snapshot.getProvider(providerName);
+        return provider != null ? provider.raw() : null;
     }
-    
+
     /**
-     * 验证服务商配置
+     * 验证服务商配置（校验在加载时已完成，这里只返回结果）
      */
     public void validateProviderConfig(String type, String providerName) {
-        Map<String, Object> providerConfig = getProviderConfig(type, providerName);
-        if (providerConfig == null) {
+        ProvidersSnapshot snapshot = snapshot(type);
+        ProvidersSnapshot.Provider provider = snapshot != null ? snapshot.getProvider(providerName) : null;
+        if (provider == null) {
             throw new IllegalArgumentException(
                 "未找到服务商配置: " + providerName + "\n" +
                 "解决方案：\n" +
@@ -156,56 +139,185 @@ public class ConfigManager {
                 "3. 检查 " + type + "_providers.yaml 文件"
             );
         }
-        
-        String apiKey = (String) providerConfig.get("api_key");
-        if (apiKey == null || apiKey.trim().isEmpty()) {
-            throw new IllegalArgumentException(
-                "服务商 " + providerName + " 未配置 API Key\n" +
-                "解决方案：\n" +
-                "1. 在系统设置页面编辑该服务商，填写 API Key\n" +
-                "2. 或手动在 " + type + "_providers.yaml 中添加 api_key 字段"
-            );
-        }
-        
-        String providerType = (String) providerConfig.getOrDefault("type", providerName);
-        if (providerType.startsWith("openai") || "image_api".equals(providerType)) {
-            String baseUrl = (String) providerConfig.get("base_url");
-            if (baseUrl == null || baseUrl.trim().isEmpty()) {
-                throw new IllegalArgumentException(
-                    "服务商 " + providerName + " 未配置 Base URL\n" +
-                    "服务商类型 " + providerType + " 需要配置 base_url\n" +
-                    "解决方案：在系统设置页面编辑该服务商，填写 Base URL"
-                );
-            }
+        if (provider.validationError() != null) {
+            throw new IllegalArgumentException(provider.validationError());
         }
     }
-    
+
     /**
      * 重新加载所有配置
      */
     public void reloadConfigs() {
         logger.info("重新加载所有配置...");
-        imageProvidersConfig = null;
-        textProvidersConfig = null;
+        reload("image");
+        reload("text");
     }
-    
+
+    /**
+     * 注册配置重新加载回调
+     * @param listener 参数为重新加载的服务商类型 image/text
+     */
+    public void addReloadListener(Consumer<String> listener) {
+        reloadListeners.add(listener);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        WatchService watcher = watchService;
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                logger.debug("关闭配置文件监听失败", e);
+            }
+        }
+    }
+
+    private ProvidersSnapshot snapshot(String type) {
+        if ("image".equals(type)) {
+            return getImageProviders();
+        }
+        if ("text".equals(type)) {
+            return getTextProviders();
+        }
+        return null;
+    }
+
+    /**
+     * 配置文件格式错误时，读取配置的请求都返回该错误
+     */
+    private ProvidersSnapshot checked(ProvidersSnapshot snapshot) {
+        if (snapshot.getLoadError() != null) {
+            throw new IllegalArgumentException(snapshot.getLoadError());
+        }
+        return snapshot;
+    }
+
+    /**
+     * 重新加载一类配置；新文件格式错误时保留当前快照
+     */
+    private void reload(String type) {
+        ProvidersSnapshot loaded = load(type);
+        AtomicReference<ProvidersSnapshot> target = "image".equals(type) ? imageProviders : textProviders;
+        if (loaded.getLoadError() != null && target.get().getLoadError() == null) {
+            logger.error("{} 配置格式错误，继续使用上一份配置", type);
+            return;
+        }
+        target.set(loaded);
+        logger.info("{} 服务商配置已重新加载: active={}, providers={}", type,
+                loaded.getActiveProvider(), loaded.getProviders().keySet());
+        for (Consumer<String> listener : reloadListeners) {
+            try {
+                listener.accept(type);
+            } catch (RuntimeException e) {
+                logger.warn("配置重新加载回调失败", e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProvidersSnapshot load(String type) {
+        boolean image = "image".equals(type);
+        String fileName = image ? IMAGE_CONFIG_FILE : TEXT_CONFIG_FILE;
+        Path configPath = configDir.resolve(fileName);
+
+        if (!Files.exists(configPath)) {
+            logger.warn("{}配置文件不存在: {}, 使用默认配置", image ? "图片" : "文本", configPath);
+            return image ? createDefaultImageConfig() : createDefaultTextConfig();
+        }
+
+        try {
+            ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+            Map<String, Object> config = mapper.readValue(configPath.toFile(), Map.class);
+            ProvidersSnapshot snapshot = ProvidersSnapshot.of(type, config, image ? "google_genai" : "openai");
+            logger.debug("{}配置加载成功: {}", image ? "图片" : "文本", snapshot.getRaw().keySet());
+            snapshot.getProviders().values().stream()
+                    .filter(provider -> provider.validationError() != null)
+                    .forEach(provider -> logger.warn("服务商配置不完整: {}/{}", type, provider.name()));
+            return snapshot;
+        } catch (IOException e) {
+            logger.error("{}配置文件格式错误: {}", image ? "图片" : "文本", configPath, e);
+            return ProvidersSnapshot.failed(type,
+                "配置文件格式错误: " + fileName + "\n" +
+                "YAML 解析错误: " + e.getMessage() + "\n" +
+                "解决方案：\n" +
+                "1. 检查 YAML 缩进是否正确（使用空格，不要用Tab）\n" +
+                "2. 检查引号是否配对\n" +
+                "3. 使用在线 YAML 验证器检查格式"
+            );
+        }
+    }
+
+    /**
+     * 监听配置目录，服务商配置文件创建、修改、删除时重新加载
+     */
+    private void startWatcher() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            configDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("无法监听配置文件变化，修改配置后需调用重新加载: {}", e.getMessage());
+            watchService = null;
+            return;
+        }
+
+        Thread watcher = new Thread(this::watchLoop, "redink-config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.info("监听服务商配置文件变化: {}", configDir);
+    }
+
+    private void watchLoop() {
+        WatchService watcher = watchService;
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Set<String> changed = new HashSet<>();
+                collect(key, changed);
+                // 等待写入完成，合并期间的后续事件
+                TimeUnit.MILLISECONDS.sleep(RELOAD_DEBOUNCE_MILLIS);
+                WatchKey more;
+                while ((more = watcher.poll()) != null) {
+                    collect(more, changed);
+                }
+
+                if (changed.contains(IMAGE_CONFIG_FILE)) {
+                    reload("image");
+                }
+                if (changed.contains(TEXT_CONFIG_FILE)) {
+                    reload("text");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            logger.debug("配置文件监听已关闭");
+        }
+    }
+
+    private void collect(WatchKey key, Set<String> changed) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path path) {
+                changed.add(path.getFileName().toString());
+            }
+        }
+        key.reset();
+    }
+
     /**
      * 创建默认图片配置
      */
-    private Map<String, Object> createDefaultImageConfig() {
-        Map<String, Object> defaultConfig = new HashMap<>();
-        defaultConfig.put("active_provider", "google_genai");
-        defaultConfig.put("providers", new HashMap<String, Object>());
-        return defaultConfig;
+    private ProvidersSnapshot createDefaultImageConfig() {
+        return ProvidersSnapshot.of("image",
+                Map.of("active_provider", "google_genai", "providers", Map.of()), "google_genai");
     }
-    
+
     /**
      * 创建默认文本配置
      */
-    private Map<String, Object> createDefaultTextConfig() {
-        Map<String, Object> defaultConfig = new HashMap<>();
-        defaultConfig.put("active_provider", "google_gemini");
-        defaultConfig.put("providers", new HashMap<String, Object>());
-        return defaultConfig;
+    private ProvidersSnapshot createDefaultTextConfig() {
+        return ProvidersSnapshot.of("text",
+                Map.of("active_provider", "google_gemini", "providers", Map.of()), "google_gemini");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+package com.redink.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 生成任务执行器配置
+ * 大纲、图片生成、重试、重新生成共用同一个执行器，
+ * 服务商的并发上限由 ProviderConcurrencyLimiter 控制
+ */
+@Configuration
+public class ExecutorConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorConfig.class);
+
+    public static final String GENERATION_EXECUTOR = "generationExecutor";
+
+    public static final String PROVIDER_CALL_EXECUTOR = "providerCallExecutor";
+
+    public static final String DERIVATIVE_EXECUTOR = "derivativeExecutor";
+
+    public static final String SSE_WRITER_EXECUTOR = "sseWriterExecutor";
+
+    /**
+     * 执行模式
+     * virtual: 每个任务一个虚拟线程（需要 JDK 21+，低版本自动回退为 platform）
+     * platform: 固定大小的平台线程池
+     * 关闭时只 shutdown 不中断线程，进行中的页面由 ImageGenerationServiceImpl 的关闭标记判断为中断
+     */
+    @Bean(name = GENERATION_EXECUTOR, destroyMethod = "shutdown")
+    public ExecutorService generationExecutor(@Value("${redink.executor.mode:platform}") String mode,
+                                              @Value("${redink.executor.pool-size:32}") int poolSize) {
+        if ("virtual".equalsIgnoreCase(mode)) {
+            ExecutorService virtual = createVirtualThreadExecutor();
+            if (virtual != null) {
+                logger.info("生成任务执行器: 虚拟线程模式");
+                return virtual;
+            }
+            logger.warn("当前 JDK 不支持虚拟线程，回退为平台线程池: poolSize={}", poolSize);
+        }
+
+        int size = Math.max(1, poolSize);
+        logger.info("生成任务执行器: 平台线程池模式, poolSize={}", size);
+        return Executors.newFixedThreadPool(size, namedThreadFactory("redink-gen-"));
+    }
+
+    /**
+     * 服务商调用执行器：对冲请求和故障切换时并行调用多个服务商
+     * 调用方已占用生成执行器的线程，这里单独使用按需创建的线程，避免生成执行器占满时互相等待；
+     * 实际并发由 ProviderConcurrencyLimiter 限制
+     */
+    @Bean(name = PROVIDER_CALL_EXECUTOR, destroyMethod = "shutdownNow")
+    public ExecutorService providerCallExecutor() {
+        return Executors.newCachedThreadPool(namedThreadFactory("redink-provider-"));
+    }
+
+    /**
+     * 缩略图等衍生图执行器：少量低优先级线程，不与页面生成争抢 CPU
+     */
+    @Bean(name = DERIVATIVE_EXECUTOR, destroyMethod = "shutdownNow")
+    public ExecutorService derivativeExecutor(@Value("${redink.image.derivatives.pool-size:2}") int poolSize) {
+        ThreadFactory factory = namedThreadFactory("redink-derive-");
+        return Executors.newFixedThreadPool(Math.max(1, poolSize), runnable -> {
+            Thread thread = factory.newThread(runnable);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * SSE 写出执行器：按需创建线程，客户端读得慢时只占用写出线程，不影响生成执行器
+     */
+    @Bean(name = SSE_WRITER_EXECUTOR, destroyMethod = "shutdownNow")
+    public ExecutorService sseWriterExecutor() {
+        return Executors.newCachedThreadPool(namedThreadFactory("redink-sse-"));
+    }
+
+    /**
+     * 通过反射创建虚拟线程执行器，保证在 JDK 17 上也能编译运行
+     */
+    private ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,175 @@
+package com.redink.config;
+
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestClientCustomizer;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.transport.AddressUtils;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 服务商 HTTP 客户端配置
+ * Spring AI 的 RestClient（同步调用）和 WebClient（流式调用）共用一个 Reactor Netty 连接池：
+ * 每个远程主机一个子池并保持长连接，TLS 下通过 ALPN 协商 HTTP/2 多路复用，不支持时回退 HTTP/1.1。
+ * text_providers.yaml / image_providers.yaml 中配置了 base_url 的服务商按 max_concurrent 单独设置连接上限。
+ * 连接池指标（reactor.netty.connection.provider.*：总连接、活跃、空闲、等待获取）发布到 Micrometer
+ */
+@Configuration
+public class ProviderHttpClientConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderHttpClientConfig.class);
+
+    public static final String POOL_NAME = "redink-providers";
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider providerConnectionProvider(
+            ConfigManager configManager,
+            @Value("${spring.ai.openai.base-url:}") String defaultBaseUrl,
+            @Value("${redink.http-client.max-connections:50}") int maxConnections,
+            @Value("${redink.http-client.pending-acquire-max:500}") int pendingAcquireMax,
+            @Value("${redink.http-client.pending-acquire-timeout:60s}") Duration pendingAcquireTimeout,
+            @Value("${redink.http-client.max-idle-time:60s}") Duration maxIdleTime,
+            @Value("${redink.http-client.max-life-time:10m}") Duration maxLifeTime) {
+        ConnectionProvider.Builder builder = poolSettings(ConnectionProvider.builder(POOL_NAME), maxConnections,
+                pendingAcquireMax, pendingAcquireTimeout, maxIdleTime, maxLifeTime);
+
+        Map<InetSocketAddress, Integer> hostLimits = new LinkedHashMap<>();
+        try {
+            collectHostLimits("image", configManager.loadImageProvidersConfig(), maxConnections, hostLimits);
+            collectHostLimits("text", configManager.loadTextProvidersConfig(), maxConnections, hostLimits);
+        } catch (IllegalArgumentException e) {
+            // 配置文件错误在调用服务商时再报告，连接池使用默认上限
+            logger.warn("读取服务商配置失败，连接池使用默认上限: {}", e.getMessage());
+        }
+        InetSocketAddress defaultHost = remoteAddress(defaultBaseUrl);
+        if (defaultHost != null) {
+            hostLimits.putIfAbsent(defaultHost, maxConnections);
+        }
+        // 子池不继承全局设置，除连接上限外与全局保持一致
+        hostLimits.forEach((address, limit) -> builder.forRemoteHost(address, spec -> poolSettings(spec, limit,
+                pendingAcquireMax, pendingAcquireTimeout, maxIdleTime, maxLifeTime)));
+
+        logger.info("服务商连接池: maxConnections={}, hosts={}", maxConnections, hostLimits);
+        return builder.build();
+    }
+
+    @Bean
+    public HttpClient providerHttpClient(ConnectionProvider providerConnectionProvider,
+                                         @Value("${redink.http-client.connect-timeout:30s}") Duration connectTimeout,
+                                         @Value("${redink.http-client.response-timeout:300s}") Duration responseTimeout,
+                                         @Value("${redink.http-client.http2:true}") boolean http2) {
+        logger.info("服务商 HTTP 客户端: http2={}, connectTimeout={}, responseTimeout={}",
+                http2, connectTimeout, responseTimeout);
+        return createHttpClient(providerConnectionProvider, connectTimeout, responseTimeout, http2);
+    }
+
+    /**
+     * Spring AI 同步调用（ChatModel.call、OpenAiImageModel）
+     */
+    @Bean
+    public RestClientCustomizer providerRestClientCustomizer(HttpClient providerHttpClient) {
+        return builder -> builder.requestFactory(new ReactorClientHttpRequestFactory(providerHttpClient));
+    }
+
+    /**
+     * Spring AI 流式调用（ChatModel.stream）
+     */
+    @Bean
+    public WebClientCustomizer providerWebClientCustomizer(HttpClient providerHttpClient) {
+        return builder -> builder.clientConnector(new ReactorClientHttpConnector(providerHttpClient));
+    }
+
+    /**
+     * 创建服务商 HTTP 客户端，基准测试也使用同样的配置
+     * @param http2 是否协商 HTTP/2（仅 TLS 连接；明文连接始终使用 HTTP/1.1）
+     */
+    public static HttpClient createHttpClient(ConnectionProvider connectionProvider, Duration connectTimeout,
+                                              Duration responseTimeout, boolean http2) {
+        HttpProtocol[] protocols = http2
+                ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}
+                : new HttpProtocol[]{HttpProtocol.HTTP11};
+        return HttpClient.create(connectionProvider)
+                .protocol(protocols)
+                .keepAlive(true)
+                .compress(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(responseTimeout);
+    }
+
+    private static <S extends ConnectionProvider.ConnectionPoolSpec<S>> S poolSettings(
+            S spec, int maxConnections, int pendingAcquireMax, Duration pendingAcquireTimeout,
+            Duration maxIdleTime, Duration maxLifeTime) {
+        return spec.maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMax)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(maxIdleTime)
+                .metrics(true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void collectHostLimits(String type, Map<String, Object> config, int defaultLimit,
+                                   Map<InetSocketAddress, Integer> hostLimits) {
+        Object providers = config != null ? config.get("providers") : null;
+        if (!(providers instanceof Map)) {
+            return;
+        }
+        for (Map.Entry<String, Object> entry : ((Map<String, Object>) providers).entrySet()) {
+            if (!(entry.getValue() instanceof Map)) {
+                continue;
+            }
+            Map<String, Object> provider = (Map<String, Object>) entry.getValue();
+            InetSocketAddress address = remoteAddress((String) provider.get("base_url"));
+            if (address == null) {
+                continue;
+            }
+            int limit = defaultLimit;
+            if (provider.get("max_concurrent") != null) {
+                try {
+                    limit = Math.max(1, Integer.parseInt(provider.get("max_concurrent").toString()));
+                } catch (NumberFormatException e) {
+                    logger.warn("服务商 max_concurrent 配置无效: {}/{}", type, entry.getKey());
+                }
+            }
+            // 多个服务商共用同一主机时取较大的上限
+            hostLimits.merge(address, limit, Math::max);
+        }
+    }
+
+    /**
+     * 与 Reactor Netty 建立连接时使用的地址一致（主机名不解析，IP 字面量直接转为已解析地址），
+     * 否则 forRemoteHost 匹配不到子池
+     */
+    private static InetSocketAddress remoteAddress(String baseUrl) {
+        if (baseUrl == null || baseUrl.isBlank()) {
+            return null;
+        }
+        try {
+            URI uri = URI.create(baseUrl.trim());
+            if (uri.getHost() == null) {
+                return null;
+            }
+            int port = uri.getPort() != -1 ? uri.getPort() : ("http".equalsIgnoreCase(uri.getScheme()) ? 80 : 443);
+            return AddressUtils.createUnresolved(uri.getHost(), port);
+        } catch (IllegalArgumentException e) {
+            logger.warn("服务商 base_url 无效: {}", baseUrl);
+            return null;
+        }
+    }
+}
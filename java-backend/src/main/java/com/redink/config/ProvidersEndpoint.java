@@ -0,0 +1,28 @@
+package com.redink.config;
+
+import com.redink.util.ProviderConcurrencyLimiter;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * 服务商状态端点：GET /actuator/providers
+ * 返回每个服务商的自适应并发上限、在途调用数、耗时基线和熔断器状态
+ */
+@Component
+@Endpoint(id = "providers")
+public class ProvidersEndpoint {
+
+    private final ProviderConcurrencyLimiter providerLimiter;
+
+    public ProvidersEndpoint(ProviderConcurrencyLimiter providerLimiter) {
+        this.providerLimiter = providerLimiter;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> providers() {
+        return providerLimiter.snapshot();
+    }
+}
@@ -0,0 +1,162 @@
+package com.redink.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 服务商配置快照（image_providers.yaml / text_providers.yaml 解析结果）
+ * 加载时一次性解析和校验，之后不可变，由 ConfigManager 整体原子替换
+ */
+public final class ProvidersSnapshot {
+
+    private final String type;
+    private final String activeProvider;
+    private final Map<String, Provider> providers;
+    private final Map<String, Object> raw;
+    // 配置文件解析失败时的错误信息，正常为 null
+    private final String loadError;
+
+    private ProvidersSnapshot(String type, String activeProvider, Map<String, Provider> providers,
+                              Map<String, Object> raw, String loadError) {
+        this.type = type;
+        this.activeProvider = activeProvider;
+        this.providers = providers;
+        this.raw = raw;
+        this.loadError = loadError;
+    }
+
+    /**
+     * 由 YAML 内容构建快照
+     * @param type 服务商类型 image/text
+     * @param yaml 解析后的 YAML
+     * @param defaultActive 未配置 active_provider 时的默认值
+     */
+    @SuppressWarnings("unchecked")
+    public static ProvidersSnapshot of(String type, Map<String, Object> yaml, String defaultActive) {
+        Map<String, Object> raw = (Map<String, Object>) immutableCopy(yaml != null ? yaml : Map.of());
+        Object active = raw.get("active_provider");
+
+        Map<String, Provider> providers = new LinkedHashMap<>();
+        if (raw.get("providers") instanceof Map<?, ?> entries) {
+            entries.forEach((name, value) -> {
+                if (value instanceof Map<?, ?> config) {
+                    providers.put(String.valueOf(name), Provider.of(type, String.valueOf(name), (Map<String, Object>) config));
+                }
+            });
+        }
+        return new ProvidersSnapshot(type, active != null ? active.toString() : defaultActive,
+                Collections.unmodifiableMap(providers), raw, null);
+    }
+
+    /**
+     * 配置文件格式错误时的快照，读取时抛出该错误
+     */
+    public static ProvidersSnapshot failed(String type, String loadError) {
+        return new ProvidersSnapshot(type, null, Map.of(), Map.of(), loadError);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getActiveProvider() {
+        return activeProvider;
+    }
+
+    public Map<String, Provider> getProviders() {
+        return providers;
+    }
+
+    public Provider getProvider(String name) {
+        return name != null ? providers.get(name) : null;
+    }
+
+    /**
+     * 原始配置（不可变），用于配置接口展示
+     */
+    public Map<String, Object> getRaw() {
+        return raw;
+    }
+
+    public String getLoadError() {
+        return loadError;
+    }
+
+    /**
+     * 递归复制为不可变的 Map / List
+     */
+    private static Object immutableCopy(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            map.forEach((k, v) -> copy.put(String.valueOf(k), immutableCopy(v)));
+            return Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List<?> list) {
+            List<Object> copy = new ArrayList<>(list.size());
+            list.forEach(v -> copy.add(immutableCopy(v)));
+            return Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    /**
+     * 单个服务商配置
+     * @param validationError 加载时的校验结果，配置完整时为 null
+     */
+    public record Provider(String name, String type, String apiKey, String baseUrl, String model,
+                           Integer maxConcurrent, Double weight, double costPerImage, double dailyCostCap,
+                           Map<String, Object> raw, String validationError) {
+
+        static Provider of(String category, String name, Map<String, Object> raw) {
+            String type = string(raw.get("type"));
+            String apiKey = string(raw.get("api_key"));
+            String baseUrl = string(raw.get("base_url"));
+            Double maxConcurrent = number(raw.get("max_concurrent"));
+            return new Provider(name, type, apiKey, baseUrl, string(raw.get("model")),
+                    maxConcurrent != null ? maxConcurrent.intValue() : null,
+                    number(raw.get("weight")),
+                    orZero(number(raw.get("cost_per_image"))),
+                    orZero(number(raw.get("daily_cost_cap"))),
+                    raw, validate(category, name, type, apiKey, baseUrl));
+        }
+
+        private static String validate(String category, String name, String type, String apiKey, String baseUrl) {
+            if (apiKey == null || apiKey.trim().isEmpty()) {
+                return "服务商 " + name + " 未配置 API Key\n" +
+                        "解决方案：\n" +
+                        "1. 在系统设置页面编辑该服务商，填写 API Key\n" +
+                        "2. 或手动在 " + category + "_providers.yaml 中添加 api_key 字段";
+            }
+            String providerType = type != null ? type : name;
+            if ((providerType.startsWith("openai") || "image_api".equals(providerType))
+                    && (baseUrl == null || baseUrl.trim().isEmpty())) {
+                return "服务商 " + name + " 未配置 Base URL\n" +
+                        "服务商类型 " + providerType + " 需要配置 base_url\n" +
+                        "解决方案：在系统设置页面编辑该服务商，填写 Base URL";
+            }
+            return null;
+        }
+
+        private static String string(Object value) {
+            return value != null ? value.toString() : null;
+        }
+
+        private static Double number(Object value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return Double.parseDouble(value.toString());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static double orZero(Double value) {
+            return value != null ? value : 0;
+        }
+    }
+}
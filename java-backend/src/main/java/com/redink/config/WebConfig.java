@@ -1,6 +1,12 @@
 package com.redink.config;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -19,4 +25,32 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowCredentials(false)
                 .maxAge(3600);
     }
-}
\ No newline at end of file
+
+    /**
+     * 响应式模式（spring.main.web-application-type=reactive）下的跨域配置（与 Web MVC 一致）和服务器。
+     * spring-boot-starter-web 仍在 classpath 中，自动配置会优先选用 Tomcat 作为响应式服务器，
+     * 这里显式声明 Netty 服务器工厂，使响应式模式运行在 Netty 事件循环上
+     */
+    @Configuration
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    static class WebFluxConfig implements WebFluxConfigurer {
+
+        @Override
+        public void addCorsMappings(org.springframework.web.reactive.config.CorsRegistry registry) {
+            registry.addMapping("/api/**")
+                    .allowedOriginPatterns("*")
+                    .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS")
+                    .allowedHeaders("*")
+                    .allowCredentials(false)
+                    .maxAge(3600);
+        }
+
+        @Bean
+        NettyReactiveWebServerFactory nettyReactiveWebServerFactory(
+                ObjectProvider<NettyServerCustomizer> serverCustomizers) {
+            NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory();
+            serverCustomizers.orderedStream().forEach(factory::addServerCustomizers);
+            return factory;
+        }
+    }
+}
@@ -1,50 +1,84 @@
 package com.redink.controller;
 
 import com.redink.config.ConfigManager;
+import com.redink.config.ExecutorConfig;
 import com.redink.model.*;
 import com.redink.service.HistoryService;
 import com.redink.service.ImageGenerationService;
 import com.redink.service.OutlineGenerationService;
+import com.redink.util.HttpRanges;
+import com.redink.util.ImageDerivatives;
 import com.redink.util.ImageUtils;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 主要API控制器
- * 处理大纲生成、图片生成、历史记录等核心功能
+ * 处理大纲生成、图片生成、历史记录等核心功能；响应式模式下由 ReactiveApiController 提供
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api")
 public class ApiController {
 
     private static final Logger logger = LoggerFactory.getLogger(ApiController.class);
 
+    private static final Path HISTORY_DIR = Paths.get("history");
+
+    // Tomcat sendfile 请求属性，由容器零拷贝发送文件
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final OutlineGenerationService outlineService;
     private final ImageGenerationService imageService;
     private final HistoryService historyService;
     private final ConfigManager configManager;
+    private final ImageDerivatives imageDerivatives;
+    // 阻塞的服务商调用放到生成执行器中，释放 Tomcat 请求线程
+    private final ExecutorService generationExecutor;
 
     public ApiController(OutlineGenerationService outlineService,
                          ImageGenerationService imageService,
                          HistoryService historyService,
-                         ConfigManager configManager) {
+                         ConfigManager configManager,
+                         ImageDerivatives imageDerivatives,
+                         @Qualifier(ExecutorConfig.GENERATION_EXECUTOR) ExecutorService generationExecutor) {
         this.outlineService = outlineService;
         this.imageService = imageService;
         this.historyService = historyService;
         this.configManager = configManager;
+        this.imageDerivatives = imageDerivatives;
+        this.generationExecutor = generationExecutor;
     }
 
     /**
@@ -59,34 +93,57 @@ public class ApiController {
      * 生成大纲
      */
     @PostMapping(value = "/outline")
-    public ResponseEntity<OutlineResult> generateOutline(
+    public CompletableFuture<ResponseEntity<OutlineResult>> generateOutline(
             @RequestBody OutlineRequest topic,
-            @RequestParam(value = "images", required = false) MultipartFile[] images) {
+            @RequestParam(value = "images", required = false) MultipartFile[] imageFiles) {
 
-        logger.info("开始生成大纲: topic={}, images={}", topic, images != null ? images.length : 0);
+        logger.info("开始生成大纲: topic={}, images={}", topic, imageFiles != null ? imageFiles.length : 0);
 
-        byte[][] imageData = null;
-        if (images != null && images.length > 0) {
-            imageData = new byte[images.length][];
-            for (int i = 0; i < images.length; i++) {
-                try {
-                    imageData[i] = images[i].getBytes();
-                } catch (IOException e) {
-                    logger.warn("读取图片失败: index={}", i, e);
-                }
+        byte[][] images = readImages(imageFiles);
+        return CompletableFuture.supplyAsync(() -> {
+            OutlineResult result = outlineService.generateOutline(topic.getTopic(), images);
+
+            if (result.isSuccess()) {
+                logger.info("大纲生成成功: 主题={}, 页数={}", topic, result.getPages().size());
+                return ResponseEntity.ok(result);
+            } else {
+                logger.error("大纲生成失败: {}", result.getError());
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
             }
-        }
+        }, generationExecutor);
 
-        OutlineResult result = outlineService.generateOutline(topic.getTopic(), imageData);
+    }
 
-        if (result.isSuccess()) {
-            logger.info("大纲生成成功: 主题={}, 页数={}", topic, result.getPages().size());
-            return ResponseEntity.ok(result);
-        } else {
-            logger.error("大纲生成失败: {}", result.getError());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
-        }
+    /**
+     * 流式生成大纲（SSE）
+     * 每完成一页推送 page 事件，结束时推送 complete 事件，内容与 /outline 的响应一致
+     */
+    @PostMapping(value = "/outline/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generateOutlineStream(
+            @RequestBody OutlineRequest topic,
+            @RequestParam(value = "images", required = false) MultipartFile[] images) {
+
+        logger.info("开始流式生成大纲: topic={}, images={}", topic, images != null ? images.length : 0);
+
+        return outlineService.generateOutlineStream(topic.getTopic(), readImages(images));
+    }
 
+    /**
+     * 读取上传的参考图片
+     */
+    private byte[][] readImages(MultipartFile[] images) {
+        if (images == null || images.length == 0) {
+            return null;
+        }
+        byte[][] imageData = new byte[images.length][];
+        for (int i = 0; i < images.length; i++) {
+            try {
+                imageData[i] = images[i].getBytes();
+            } catch (IOException e) {
+                logger.warn("读取图片失败: index={}", i, e);
+            }
+        }
+        return imageData;
     }
 
     /**
@@ -102,31 +159,9 @@ public class ApiController {
             String userTopic = (String) request.get("userTopic");
 
             @SuppressWarnings("unchecked")
-            List<String> userImagesBase64 = (List<String>) request.get("userImages");
-            byte[][] userImages = null;
-
-            if (userImagesBase64 != null && !userImagesBase64.isEmpty()) {
-                userImages = new byte[userImagesBase64.size()][];
-                for (int i = 0; i < userImagesBase64.size(); i++) {
-                    try {
-                        userImages[i] = ImageUtils.base64ToImage(userImagesBase64.get(i));
-                    } catch (Exception e) {
-                        logger.warn("解析用户图片失败: index={}", i, e);
-                        userImages[i] = null;
-                    }
-                }
-            }
+            byte[][] userImages = ControllerSupport.decodeUserImages((List<String>) request.get("userImages"));
 
-            @SuppressWarnings("unchecked")
-            List<Page> pageObjects = pages.stream()
-                    .map(pageMap -> {
-                        Page page = new Page();
-                        page.setIndex((Integer) pageMap.get("index"));
-                        page.setType((String) pageMap.get("type"));
-                        page.setContent((String) pageMap.get("content"));
-                        return page;
-                    })
-                    .toList();
+            List<Page> pageObjects = pages.stream().map(ControllerSupport::toPage).toList();
 
             logger.info("开始图片生成任务: taskId={}, pages={}", taskId, pageObjects.size());
 
@@ -145,31 +180,120 @@ public class ApiController {
         }
     }
 
+    /**
+     * 从主题直接生成图片（SSE流式响应）
+     * 大纲流式生成，每页解析完成即开始渲染，封面与后续大纲生成重叠进行
+     */
+    @PostMapping("/generate/pipeline")
+    public SseEmitter generateFromTopic(@RequestBody Map<String, Object> request) {
+        String topic = (String) request.get("topic");
+        String taskId = (String) request.getOrDefault("taskId", UUID.randomUUID().toString());
+
+        @SuppressWarnings("unchecked")
+        byte[][] userImages = ControllerSupport.decodeUserImages((List<String>) request.get("userImages"));
+
+        logger.info("开始流水线生成任务: taskId={}, topic={}", taskId, topic);
+        return imageService.generateFromTopic(topic, taskId, userImages);
+    }
+
+    /**
+     * 重新订阅图片生成事件（SSE）
+     * 断线后携带 Last-Event-ID 请求头（或 lastEventId 参数）重连，补发错过的事件后继续接收；
+     * 任务不存在或已过保留期时返回 404，客户端应改用任务状态接口
+     */
+    @GetMapping(value = "/generate/{taskId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeEvents(
+            @PathVariable String taskId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        String lastEventId = lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam;
+        SseEmitter emitter = imageService.subscribeEvents(taskId, lastEventId);
+        if (emitter == null) {
+            return ResponseEntity.notFound().build();
+        }
+        logger.info("重新订阅任务事件: taskId={}, lastEventId={}", taskId, lastEventId);
+        return ResponseEntity.ok(emitter);
+    }
+
     /**
      * 获取图片
+     * 容器支持 sendfile 时由 Tomcat 直接从文件发送，否则用 FileChannel 拷贝到响应流；
+     * 支持 ETag / Last-Modified 条件请求和 Range 请求。
+     * 带版本参数 t 的地址（重新生成后前端会追加）可长期缓存，不带版本的地址每次协商。
+     * width 指定期望宽度时返回不小于该宽度的最小衍生图，没有合适的衍生图时返回原图
      */
     @GetMapping("/images/{taskId}/{filename}")
-    public ResponseEntity<byte[]> getImage(@PathVariable String taskId,
-                                           @PathVariable String filename,
-                                           @RequestParam(defaultValue = "true") boolean thumbnail) {
+    public ResponseEntity<StreamingResponseBody> getImage(@PathVariable String taskId,
+                                                          @PathVariable String filename,
+                                                          @RequestParam(defaultValue = "true") boolean thumbnail,
+                                                          @RequestParam(required = false) Integer width,
+                                                          @RequestParam(name = "t", required = false) String version,
+                                                          @RequestHeader HttpHeaders requestHeaders,
+                                                          HttpServletRequest request) {
         try {
-            Path imagePath = Paths.get("history", taskId, filename);
-
-            if (thumbnail) {
-                Path thumbPath = Paths.get("history", taskId, "thumb_" + filename);
-                if (Files.exists(thumbPath)) {
-                    imagePath = thumbPath;
-                }
+            Path historyDir = HISTORY_DIR.toAbsolutePath().normalize();
+            Path imagePath = historyDir.resolve(taskId).resolve(filename).normalize();
+            if (!imagePath.startsWith(historyDir)) {
+                return ResponseEntity.notFound().build();
             }
 
-            if (!Files.exists(imagePath)) {
+            imagePath = imageDerivatives.select(imagePath, width, thumbnail);
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(imagePath, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                return ResponseEntity.notFound().build();
+            }
+            if (!attributes.isRegularFile()) {
                 return ResponseEntity.notFound().build();
             }
 
-            byte[] imageData = Files.readAllBytes(imagePath);
-            return ResponseEntity.ok()
-                    .contentType(MediaType.IMAGE_PNG)
-                    .body(imageData);
+            long length = attributes.size();
+            long lastModified = attributes.lastModifiedTime().toMillis();
+            String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setETag(etag);
+            headers.setLastModified(lastModified);
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            headers.setCacheControl(version != null
+                    ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable()
+                    : CacheControl.noCache().cachePublic());
+
+            if (isNotModified(requestHeaders, etag, lastModified)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+            }
+
+            long[] range;
+            try {
+                range = HttpRanges.resolve(requestHeaders.getFirst(HttpHeaders.RANGE),
+                        requestHeaders.getFirst(HttpHeaders.IF_RANGE), etag, length);
+            } catch (HttpRanges.UnsatisfiableRangeException e) {
+                headers.set(HttpHeaders.CONTENT_RANGE, HttpRanges.unsatisfiedContentRange(length));
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+            }
+
+            long start = range != null ? range[0] : 0;
+            long end = range != null ? range[1] : length - 1;
+            HttpStatus status = range != null ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK;
+            if (range != null) {
+                headers.set(HttpHeaders.CONTENT_RANGE, HttpRanges.contentRange(start, end, length));
+            }
+            headers.setContentType(MediaType.parseMediaType(ImageUtils.detectMimeType(imagePath)));
+            headers.setContentLength(end - start + 1);
+
+            if (length > 0 && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                request.setAttribute(SENDFILE_FILENAME, imagePath.toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end + 1);
+                return ResponseEntity.status(status).headers(headers).build();
+            }
+
+            Path source = imagePath;
+            return ResponseEntity.status(status)
+                    .headers(headers)
+                    .body(out -> transferFile(source, start, end - start + 1, out));
 
         } catch (IOException e) {
             logger.error("获取图片失败: {}/{}", taskId, filename, e);
@@ -177,11 +301,44 @@ public class ApiController {
         }
     }
 
+    /**
+     * 条件请求判断：If-None-Match 优先（弱比较），否则比较 If-Modified-Since
+     */
+    private boolean isNotModified(HttpHeaders requestHeaders, String etag, long lastModified) {
+        List<String> ifNoneMatch = requestHeaders.getIfNoneMatch();
+        if (!ifNoneMatch.isEmpty()) {
+            for (String candidate : ifNoneMatch) {
+                String tag = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = requestHeaders.getIfModifiedSince();
+        return ifModifiedSince >= 0 && lastModified / 1000 * 1000 <= ifModifiedSince;
+    }
+
+    private static void transferFile(Path path, long position, long count, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (count > 0) {
+                long transferred = channel.transferTo(position, count, target);
+                if (transferred <= 0) {
+                    throw new IOException("读取文件失败: " + path);
+                }
+                position += transferred;
+                count -= transferred;
+            }
+        }
+        out.flush();
+    }
+
     /**
      * 重试生成单张图片
      */
     @PostMapping("/retry")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> retrySingleImage(@RequestBody Map<String, Object> request) {
+    public CompletableFuture<ResponseEntity<ApiResponse<Map<String, Object>>>> retrySingleImage(@RequestBody Map<String, Object> request) {
         try {
             String taskId = (String) request.get("taskId");
             @SuppressWarnings("unchecked")
@@ -189,26 +346,26 @@ public class ApiController {
             Boolean useReference = (Boolean) request.getOrDefault("useReference", true);
             String fullOutline = (String) request.getOrDefault("fullOutline", "");
             String userTopic = (String) request.getOrDefault("userTopic", "");
+            Boolean useCache = (Boolean) request.getOrDefault("useCache", true);
 
-            Page page = new Page();
-            page.setIndex((Integer) pageMap.get("index"));
-            page.setType((String) pageMap.get("type"));
-            page.setContent((String) pageMap.get("content"));
+            Page page = ControllerSupport.toPage(pageMap);
 
             logger.info("重试生成图片: taskId={}, page={}", taskId, page.getIndex());
 
-            Map<String, Object> result = imageService.retrySingleImage(taskId, page, useReference, fullOutline, userTopic);
-
-            if ((Boolean) result.get("success")) {
-                return ResponseEntity.ok(ApiResponse.success(result));
-            } else {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ApiResponse.error((String) result.get("error")));
-            }
+            return CompletableFuture
+                    .supplyAsync(() -> imageService.retrySingleImage(taskId, page, useReference, fullOutline, userTopic, useCache),
+                            generationExecutor)
+                    .thenApply(this::toImageResponse)
+                    .exceptionally(e -> {
+                        logger.error("重试图片生成异常", e);
+                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                .body(ApiResponse.error("重试失败: " + e.getMessage()));
+                    });
 
         } catch (Exception e) {
             logger.error("重试图片生成异常", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(ApiResponse.error("重试失败: " + e.getMessage()));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("重试失败: " + e.getMessage())));
         }
     }
 
@@ -216,7 +373,7 @@ public class ApiController {
      * 重新生成图片
      */
     @PostMapping("/regenerate")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> regenerateImage(@RequestBody Map<String, Object> request) {
+    public CompletableFuture<ResponseEntity<ApiResponse<Map<String, Object>>>> regenerateImage(@RequestBody Map<String, Object> request) {
         try {
             String taskId = (String) request.get("taskId");
             @SuppressWarnings("unchecked")
@@ -224,26 +381,38 @@ public class ApiController {
             Boolean useReference = (Boolean) request.getOrDefault("useReference", true);
             String fullOutline = (String) request.getOrDefault("fullOutline", "");
             String userTopic = (String) request.getOrDefault("userTopic", "");
+            // 重新生成默认绕过缓存，得到一张新图片
+            Boolean useCache = (Boolean) request.getOrDefault("useCache", false);
 
-            Page page = new Page();
-            page.setIndex((Integer) pageMap.get("index"));
-            page.setType((String) pageMap.get("type"));
-            page.setContent((String) pageMap.get("content"));
+            Page page = ControllerSupport.toPage(pageMap);
 
             logger.info("重新生成图片: taskId={}, page={}", taskId, page.getIndex());
 
-            Map<String, Object> result = imageService.regenerateImage(taskId, page, useReference, fullOutline, userTopic);
-
-            if ((Boolean) result.get("success")) {
-                return ResponseEntity.ok(ApiResponse.success(result));
-            } else {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ApiResponse.error((String) result.get("error")));
-            }
+            return CompletableFuture
+                    .supplyAsync(() -> imageService.regenerateImage(taskId, page, useReference, fullOutline, userTopic, useCache),
+                            generationExecutor)
+                    .thenApply(this::toImageResponse)
+                    .exceptionally(e -> {
+                        logger.error("重新生成图片异常", e);
+                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                                .body(ApiResponse.error("重新生成失败: " + e.getMessage()));
+                    });
 
         } catch (Exception e) {
             logger.error("重新生成图片异常", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(ApiResponse.error("重新生成失败: " + e.getMessage()));
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("重新生成失败: " + e.getMessage())));
+        }
+    }
+
+    /**
+     * 将单图生成结果转换为响应
+     */
+    private ResponseEntity<ApiResponse<Map<String, Object>>> toImageResponse(Map<String, Object> result) {
+        if ((Boolean) result.get("success")) {
+            return ResponseEntity.ok(ApiResponse.success(result));
+        } else {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ApiResponse.error((String) result.get("error")));
         }
     }
 
@@ -264,7 +433,7 @@ public class ApiController {
             TaskState safeState = new TaskState();
             safeState.setGenerated(state.getGenerated());
             safeState.setFailed(state.getFailed());
-            safeState.setCoverImage(state.getCoverImage() != null ? new byte[1] : null);
+            safeState.setCoverImage(state.hasCoverImage() ? new byte[1] : null);
 
             return ResponseEntity.ok(ApiResponse.success(safeState));
 
@@ -281,65 +450,7 @@ public class ApiController {
     @GetMapping("/config")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getConfig() {
         try {
-            Map<String, Object> imageConfig = configManager.loadImageProvidersConfig();
-            Map<String, Object> textConfig = configManager.loadTextProvidersConfig();
-
-            // 脱敏API密钥
-            Map<String, Object> responseConfig = new HashMap<>();
-
-            // 图片配置
-            Map<String, Object> imageResponse = new HashMap<>();
-            imageResponse.put("activeProvider", imageConfig.getOrDefault("active_provider", ""));
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> imageProviders = (Map<String, Object>) imageConfig.get("providers");
-            Map<String, Object> maskedImageProviders = new HashMap<>();
-
-            if (imageProviders != null) {
-                for (Map.Entry<String, Object> entry : imageProviders.entrySet()) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> provider = (Map<String, Object>) entry.getValue();
-                    Map<String, Object> maskedProvider = new HashMap<>(provider);
-
-                    String apiKey = (String) provider.get("apiKey");
-                    if (apiKey != null && !apiKey.trim().isEmpty()) {
-                        maskedProvider.put("apiKeyMasked", maskApiKey(apiKey));
-                        maskedProvider.put("apiKey", "");
-                    }
-
-                    maskedImageProviders.put(entry.getKey(), maskedProvider);
-                }
-            }
-
-            imageResponse.put("providers", maskedImageProviders);
-            responseConfig.put("imageGeneration", imageResponse);
-
-            // 文本配置
-            Map<String, Object> textResponse = new HashMap<>();
-            textResponse.put("activeProvider", textConfig.getOrDefault("active_provider", ""));
-
-            @SuppressWarnings("unchecked")
-            Map<String, Object> textProviders = (Map<String, Object>) textConfig.get("providers");
-            Map<String, Object> maskedTextProviders = new HashMap<>();
-
-            if (textProviders != null) {
-                for (Map.Entry<String, Object> entry : textProviders.entrySet()) {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> provider = (Map<String, Object>) entry.getValue();
-                    Map<String, Object> maskedProvider = new HashMap<>(provider);
-
-                    String apiKey = (String) provider.get("apiKey");
-                    if (apiKey != null && !apiKey.trim().isEmpty()) {
-                        maskedProvider.put("apiKeyMasked", maskApiKey(apiKey));
-                        maskedProvider.put("apiKey", "");
-                    }
-
-                    maskedTextProviders.put(entry.getKey(), maskedProvider);
-                }
-            }
-
-            textResponse.put("providers", maskedTextProviders);
-            responseConfig.put("textGeneration", textResponse);
+            Map<String, Object> responseConfig = ControllerSupport.maskedConfig(configManager);
 
             return ResponseEntity.ok(ApiResponse.success(responseConfig));
 
@@ -349,14 +460,4 @@ public class ApiController {
                     .body(ApiResponse.error("获取配置失败: " + e.getMessage()));
         }
     }
-
-    /**
-     * 遮盖API密钥
-     */
-    private String maskApiKey(String apiKey) {
-        if (apiKey == null || apiKey.length() <= 8) {
-            return "*".repeat(apiKey != null ? apiKey.length() : 0);
-        }
-        return apiKey.substring(0, 4) + "*".repeat(apiKey.length() - 8) + apiKey.substring(apiKey.length() - 4);
-    }
-}
\ No newline at end of file
+}
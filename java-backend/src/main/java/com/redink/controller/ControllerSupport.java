@@ -0,0 +1,177 @@
+package com.redink.controller;
+
+import com.redink.config.ConfigManager;
+import com.redink.model.HistoryRecord;
+import com.redink.model.OutlineResult;
+import com.redink.model.Page;
+import com.redink.util.ImageUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * servlet 与响应式控制器共用的请求解析和响应组装
+ * 只依赖模型和服务，不依赖 Spring MVC / WebFlux 的类型
+ */
+final class ControllerSupport {
+
+    private static final Logger logger = LoggerFactory.getLogger(ControllerSupport.class);
+
+    private ControllerSupport() {
+    }
+
+    /**
+     * 解析请求中的页面
+     */
+    static Page toPage(Map<String, Object> pageMap) {
+        Page page = new Page();
+        page.setIndex((Integer) pageMap.get("index"));
+        page.setType((String) pageMap.get("type"));
+        page.setContent((String) pageMap.get("content"));
+        return page;
+    }
+
+    /**
+     * 解析请求中的大纲
+     */
+    static OutlineResult toOutline(Map<String, Object> outlineMap) {
+        OutlineResult outline = new OutlineResult();
+        outline.setSuccess((Boolean) outlineMap.get("success"));
+        outline.setOutline((String) outlineMap.get("outline"));
+        outline.setHasImages((Boolean) outlineMap.get("hasImages"));
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> pagesMap = (List<Map<String, Object>>) outlineMap.get("pages");
+        outline.setPages(pagesMap.stream().map(ControllerSupport::toPage).toList());
+        return outline;
+    }
+
+    /**
+     * 解析请求中的图片信息
+     */
+    static HistoryRecord.ImagesInfo toImagesInfo(Map<String, Object> imagesMap) {
+        HistoryRecord.ImagesInfo images = new HistoryRecord.ImagesInfo();
+        images.setTaskId((String) imagesMap.get("taskId"));
+
+        @SuppressWarnings("unchecked")
+        List<String> generatedList = (List<String>) imagesMap.get("generated");
+        images.setGenerated(generatedList.toArray(new String[0]));
+        return images;
+    }
+
+    /**
+     * 解析 Base64 编码的用户图片
+     */
+    static byte[][] decodeUserImages(List<String> userImagesBase64) {
+        if (userImagesBase64 == null || userImagesBase64.isEmpty()) {
+            return null;
+        }
+        byte[][] userImages = new byte[userImagesBase64.size()][];
+        for (int i = 0; i < userImagesBase64.size(); i++) {
+            try {
+                userImages[i] = ImageUtils.base64ToImage(userImagesBase64.get(i));
+            } catch (Exception e) {
+                logger.warn("解析用户图片失败: index={}", i, e);
+                userImages[i] = null;
+            }
+        }
+        return userImages;
+    }
+
+    /**
+     * 系统配置（API密钥脱敏）
+     */
+    static Map<String, Object> maskedConfig(ConfigManager configManager) {
+        Map<String, Object> responseConfig = new HashMap<>();
+        responseConfig.put("imageGeneration", maskedProviders(configManager.loadImageProvidersConfig()));
+        responseConfig.put("textGeneration", maskedProviders(configManager.loadTextProvidersConfig()));
+        return responseConfig;
+    }
+
+    private static Map<String, Object> maskedProviders(Map<String, Object> config) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("activeProvider", config.getOrDefault("active_provider", ""));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> providers = (Map<String, Object>) config.get("providers");
+        Map<String, Object> maskedProviders = new HashMap<>();
+
+        if (providers != null) {
+            for (Map.Entry<String, Object> entry : providers.entrySet()) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> provider = (Map<String, Object>) entry.getValue();
+                Map<String, Object> maskedProvider = new HashMap<>(provider);
+
+                String apiKey = (String) provider.get("apiKey");
+                if (apiKey != null && !apiKey.trim().isEmpty()) {
+                    maskedProvider.put("apiKeyMasked", maskApiKey(apiKey));
+                    maskedProvider.put("apiKey", "");
+                }
+
+                maskedProviders.put(entry.getKey(), maskedProvider);
+            }
+        }
+
+        response.put("providers", maskedProviders);
+        return response;
+    }
+
+    /**
+     * 遮盖API密钥
+     */
+    private static String maskApiKey(String apiKey) {
+        if (apiKey == null || apiKey.length() <= 8) {
+            return "*".repeat(apiKey != null ? apiKey.length() : 0);
+        }
+        return apiKey.substring(0, 4) + "*".repeat(apiKey.length() - 8) + apiKey.substring(apiKey.length() - 4);
+    }
+
+    /**
+     * ZIP 下载文件名
+     */
+    static String archiveFilename(HistoryRecord record) {
+        return record.getTitle() != null ?
+                record.getTitle().replaceAll("[^a-zA-Z0-9\\s\\-_]", "").trim() + ".zip" :
+                "images.zip";
+    }
+
+    /**
+     * 列出任务目录下需要打包的图片（不含缩略图），按页码排序
+     */
+    static List<Map.Entry<String, Path>> listArchiveFiles(Path taskDir) throws IOException {
+        List<Map.Entry<String, Path>> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.list(taskDir)) {
+            paths.filter(path -> {
+                        String filename = path.getFileName().toString();
+                        return !filename.startsWith("thumb_") &&
+                               (filename.endsWith(".png") || filename.endsWith(".jpg") || filename.endsWith(".jpeg"));
+                    })
+                    .sorted(Comparator.comparingInt(ControllerSupport::pageIndex)
+                            .thenComparing(path -> path.getFileName().toString()))
+                    .forEach(path -> {
+                        String filename = path.getFileName().toString();
+                        int index = pageIndex(path);
+                        String archiveName = index != Integer.MAX_VALUE ? "page_" + (index + 1) + ".png" : filename;
+                        files.add(Map.entry(archiveName, path));
+                    });
+        }
+        return files;
+    }
+
+    private static int pageIndex(Path path) {
+        try {
+            return Integer.parseInt(path.getFileName().toString().split("\\.")[0]);
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+}
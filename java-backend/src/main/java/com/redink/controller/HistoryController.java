@@ -1,33 +1,34 @@
 package com.redink.controller;
 
 import com.redink.model.HistoryRecord;
+import com.redink.model.HistorySummary;
 import com.redink.model.OutlineResult;
 import com.redink.model.ApiResponse;
 import com.redink.service.HistoryService;
 import com.redink.service.HistoryStats;
 import com.redink.service.PagedResult;
+import com.redink.util.HttpRanges;
+import com.redink.util.StoredZipArchive;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
- * 历史记录API控制器
+ * 历史记录API控制器（servlet 模式，响应式模式下由 ReactiveHistoryController 提供）
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/history")
 @CrossOrigin(origins = "*")
 public class HistoryController {
@@ -52,23 +53,7 @@ public class HistoryController {
             String taskId = (String) request.get("taskId");
             
             // 转换OutlineResult
-            OutlineResult outline = new OutlineResult();
-            outline.setSuccess((Boolean) outlineMap.get("success"));
-            outline.setOutline((String) outlineMap.get("outline"));
-            outline.setHasImages((Boolean) outlineMap.get("hasImages"));
-            
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> pagesMap = (List<Map<String, Object>>) outlineMap.get("pages");
-            List<com.redink.model.Page> pages = pagesMap.stream()
-                    .map(pageMap -> {
-                        com.redink.model.Page page = new com.redink.model.Page();
-                        page.setIndex((Integer) pageMap.get("index"));
-                        page.setType((String) pageMap.get("type"));
-                        page.setContent((String) pageMap.get("content"));
-                        return page;
-                    })
-                    .toList();
-            outline.setPages(pages);
+            OutlineResult outline = ControllerSupport.toOutline(outlineMap);
             
             String recordId = historyService.createRecord(topic, outline, taskId);
             
@@ -85,13 +70,13 @@ public class HistoryController {
      * 获取历史记录列表
      */
     @GetMapping
-    public ResponseEntity<ApiResponse<PagedResult<HistoryRecord>>> listHistory(
+    public ResponseEntity<ApiResponse<PagedResult<HistorySummary>>> listHistory(
             @RequestParam(defaultValue = "1") int page,
             @RequestParam(defaultValue = "20") int pageSize,
             @RequestParam(required = false) String status) {
         
         try {
-            PagedResult<HistoryRecord> result = historyService.listRecords(page, pageSize, status);
+            PagedResult<HistorySummary> result = historyService.listRecords(page, pageSize, status);
             return ResponseEntity.ok(ApiResponse.success(result));
             
         } catch (Exception e) {
@@ -138,34 +123,13 @@ public class HistoryController {
             if (request.containsKey("outline")) {
                 @SuppressWarnings("unchecked")
                 Map<String, Object> outlineMap = (Map<String, Object>) request.get("outline");
-                outline = new OutlineResult();
-                outline.setSuccess((Boolean) outlineMap.get("success"));
-                outline.setOutline((String) outlineMap.get("outline"));
-                outline.setHasImages((Boolean) outlineMap.get("hasImages"));
-                
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> pagesMap = (List<Map<String, Object>>) outlineMap.get("pages");
-                List<com.redink.model.Page> pages = pagesMap.stream()
-                        .map(pageMap -> {
-                            com.redink.model.Page page = new com.redink.model.Page();
-                            page.setIndex((Integer) pageMap.get("index"));
-                            page.setType((String) pageMap.get("type"));
-                            page.setContent((String) pageMap.get("content"));
-                            return page;
-                        })
-                        .toList();
-                outline.setPages(pages);
+                outline = ControllerSupport.toOutline(outlineMap);
             }
             
             if (request.containsKey("images")) {
                 @SuppressWarnings("unchecked")
                 Map<String, Object> imagesMap = (Map<String, Object>) request.get("images");
-                images = new HistoryRecord.ImagesInfo();
-                images.setTaskId((String) imagesMap.get("taskId"));
-                
-                @SuppressWarnings("unchecked")
-                List<String> generatedList = (List<String>) imagesMap.get("generated");
-                images.setGenerated(generatedList.toArray(new String[0]));
+                images = ControllerSupport.toImagesInfo(imagesMap);
             }
             
             boolean success = historyService.updateRecord(recordId, outline, images, status, thumbnail);
@@ -210,9 +174,12 @@ public class HistoryController {
      * 搜索历史记录
      */
     @GetMapping("/search")
-    public ResponseEntity<ApiResponse<List<HistoryRecord>>> searchHistory(@RequestParam String keyword) {
+    public ResponseEntity<ApiResponse<PagedResult<HistorySummary>>> searchHistory(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int pageSize) {
         try {
-            List<HistoryRecord> results = historyService.searchRecords(keyword);
+            PagedResult<HistorySummary> results = historyService.searchRecords(keyword, page, pageSize);
             return ResponseEntity.ok(ApiResponse.success(results));
             
         } catch (Exception e) {
@@ -240,9 +207,11 @@ public class HistoryController {
     
     /**
      * 下载历史记录ZIP
+     * 边读文件边写响应，图片以 STORED 条目存储；支持 Range / If-Range 断点续传
      */
     @GetMapping("/{recordId}/download")
-    public ResponseEntity<byte[]> downloadHistoryZip(@PathVariable String recordId) {
+    public ResponseEntity<StreamingResponseBody> downloadHistoryZip(@PathVariable String recordId,
+                                                                    @RequestHeader HttpHeaders requestHeaders) {
         try {
             HistoryRecord record = historyService.getRecord(recordId);
             
@@ -260,53 +229,50 @@ public class HistoryController {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
             }
             
-            // 创建内存中的ZIP文件
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            try (ZipOutputStream zos = new ZipOutputStream(baos)) {
-                Files.list(taskDir)
-                        .filter(path -> {
-                            String filename = path.getFileName().toString();
-                            return !filename.startsWith("thumb_") && 
-                                   (filename.endsWith(".png") || filename.endsWith(".jpg") || filename.endsWith(".jpeg"));
-                        })
-                        .forEach(path -> {
-                            try {
-                                String filename = path.getFileName().toString();
-                                String archiveName;
-                                try {
-                                    int index = Integer.parseInt(filename.split("\\.")[0]);
-                                    archiveName = "page_" + (index + 1) + ".png";
-                                } catch (NumberFormatException e) {
-                                    archiveName = filename;
-                                }
-                                
-                                ZipEntry entry = new ZipEntry(archiveName);
-                                zos.putNextEntry(entry);
-                                
-                                byte[] fileBytes = Files.readAllBytes(path);
-                                zos.write(fileBytes);
-                                zos.closeEntry();
-                                
-                            } catch (IOException e) {
-                                logger.warn("添加文件到ZIP失败: {}", path, e);
-                            }
-                        });
+            StoredZipArchive archive = StoredZipArchive.of(ControllerSupport.listArchiveFiles(taskDir));
+            long length = archive.length();
+            String etag = archive.etag();
+            
+            String filename = ControllerSupport.archiveFilename(record);
+            
+            HttpHeaders headers = new HttpHeaders();
+            headers.set(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            headers.setETag(etag);
+            
+            if (etag.equals(requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH))) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
             }
             
-            byte[] zipBytes = baos.toByteArray();
+            long[] range;
+            try {
+                range = HttpRanges.resolve(requestHeaders.getFirst(HttpHeaders.RANGE),
+                        requestHeaders.getFirst(HttpHeaders.IF_RANGE), etag, length);
+            } catch (HttpRanges.UnsatisfiableRangeException e) {
+                headers.set(HttpHeaders.CONTENT_RANGE, HttpRanges.unsatisfiedContentRange(length));
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+            }
             
-            String filename = record.getTitle() != null ? 
-                record.getTitle().replaceAll("[^a-zA-Z0-9\\s\\-_]", "").trim() + ".zip" : 
-                "images.zip";
+            if (range != null) {
+                long start = range[0];
+                long end = range[1];
+                headers.set(HttpHeaders.CONTENT_RANGE, HttpRanges.contentRange(start, end, length));
+                headers.setContentLength(end - start + 1);
+                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                        .headers(headers)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .body(out -> archive.writeTo(out, start, end));
+            }
             
+            headers.setContentLength(length);
             return ResponseEntity.ok()
-                    .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
+                    .headers(headers)
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .body(zipBytes);
+                    .body(out -> archive.writeTo(out, 0, length - 1));
                     
         } catch (Exception e) {
             logger.error("下载历史记录ZIP异常: {}", recordId, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
-}
\ No newline at end of file
+}
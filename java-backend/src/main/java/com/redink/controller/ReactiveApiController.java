@@ -0,0 +1,336 @@
+package com.redink.controller;
+
+import com.redink.config.ConfigManager;
+import com.redink.config.ExecutorConfig;
+import com.redink.model.*;
+import com.redink.service.ImageGenerationService;
+import com.redink.service.OutlineGenerationService;
+import com.redink.util.ImageDerivatives;
+import com.redink.util.ImageUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应式API控制器（spring.main.web-application-type=reactive）
+ * 图片生成和流式大纲返回 Flux<ServerSentEvent>，由少量 Netty 事件循环线程写出，不为每个连接占用线程；
+ * 单次阻塞的服务商调用（大纲、重试、重新生成）放到生成执行器中，以 Mono 返回。
+ * 注意：只有流式大纲通过 WebClient 非阻塞调用服务商；图片服务商调用（OpenAiImageModel.call）仍是阻塞的，
+ * 每张进行中的图片占用生成执行器（redink.executor.pool-size）的一个线程，图片并发受该线程数限制
+ * 历史记录接口由 ReactiveHistoryController 提供
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/api")
+public class ReactiveApiController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveApiController.class);
+
+    private static final Path HISTORY_DIR = Paths.get("history");
+
+    private final OutlineGenerationService outlineService;
+    private final ImageGenerationService imageService;
+    private final ConfigManager configManager;
+    private final ImageDerivatives imageDerivatives;
+    // 阻塞的服务商调用放到生成执行器中，不占用事件循环线程
+    private final Scheduler generationScheduler;
+
+    public ReactiveApiController(OutlineGenerationService outlineService,
+                                 ImageGenerationService imageService,
+                                 ConfigManager configManager,
+                                 ImageDerivatives imageDerivatives,
+                                 @Qualifier(ExecutorConfig.GENERATION_EXECUTOR) ExecutorService generationExecutor) {
+        this.outlineService = outlineService;
+        this.imageService = imageService;
+        this.configManager = configManager;
+        this.imageDerivatives = imageDerivatives;
+        this.generationScheduler = Schedulers.fromExecutorService(generationExecutor);
+    }
+
+    /**
+     * 健康检查
+     */
+    @GetMapping("/health")
+    public ResponseEntity<ApiResponse<String>> healthCheck() {
+        return ResponseEntity.ok(ApiResponse.success("服务正常运行", "服务状态正常"));
+    }
+
+    /**
+     * 生成大纲
+     */
+    @PostMapping("/outline")
+    public Mono<ResponseEntity<OutlineResult>> generateOutline(@RequestBody OutlineRequest topic) {
+        logger.info("开始生成大纲: topic={}", topic);
+
+        return Mono.fromCallable(() -> outlineService.generateOutline(topic.getTopic(), null))
+                .subscribeOn(generationScheduler)
+                .map(result -> {
+                    if (result.isSuccess()) {
+                        logger.info("大纲生成成功: 主题={}, 页数={}", topic, result.getPages().size());
+                        return ResponseEntity.ok(result);
+                    }
+                    logger.error("大纲生成失败: {}", result.getError());
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(result);
+                });
+    }
+
+    /**
+     * 流式生成大纲（SSE）
+     * 每完成一页推送 page 事件，结束时推送 complete 事件；客户端断开时取消模型调用
+     */
+    @PostMapping(value = "/outline/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> generateOutlineStream(@RequestBody OutlineRequest topic) {
+        logger.info("开始流式生成大纲: topic={}", topic);
+        return outlineService.generateOutlineFlux(topic.getTopic(), null);
+    }
+
+    /**
+     * 生成图片（SSE流式响应）
+     */
+    @PostMapping(value = "/generate", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> generateImages(@RequestBody Map<String, Object> request) {
+        try {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> pages = (List<Map<String, Object>>) request.get("pages");
+            String taskId = (String) request.getOrDefault("taskId", UUID.randomUUID().toString());
+            String fullOutline = (String) request.get("fullOutline");
+            String userTopic = (String) request.get("userTopic");
+
+            @SuppressWarnings("unchecked")
+            byte[][] userImages = ControllerSupport.decodeUserImages((List<String>) request.get("userImages"));
+
+            List<Page> pageObjects = pages.stream().map(ControllerSupport::toPage).toList();
+
+            logger.info("开始图片生成任务: taskId={}, pages={}", taskId, pageObjects.size());
+
+            // 任务状态可能写入 Redis，启动任务放到 boundedElastic 线程
+            return Flux.defer(() -> imageService.generateImagesFlux(pageObjects, taskId, fullOutline, userTopic,
+                            userImages))
+                    .subscribeOn(Schedulers.boundedElastic());
+
+        } catch (Exception e) {
+            logger.error("图片生成请求异常", e);
+            return Flux.just(ServerSentEvent.<Object>builder(Map.of("error", "请求异常: " + e.getMessage())).build());
+        }
+    }
+
+    /**
+     * 从主题直接生成图片（SSE流式响应）
+     * 大纲流式生成，每页解析完成即开始渲染，封面与后续大纲生成重叠进行
+     */
+    @PostMapping(value = "/generate/pipeline", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> generateFromTopic(@RequestBody Map<String, Object> request) {
+        String topic = (String) request.get("topic");
+        String taskId = (String) request.getOrDefault("taskId", UUID.randomUUID().toString());
+
+        @SuppressWarnings("unchecked")
+        byte[][] userImages = ControllerSupport.decodeUserImages((List<String>) request.get("userImages"));
+
+        logger.info("开始流水线生成任务: taskId={}, topic={}", taskId, topic);
+        return Flux.defer(() -> imageService.generateFromTopicFlux(topic, taskId, userImages))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 重新订阅图片生成事件（SSE）
+     * 断线后携带 Last-Event-ID 请求头（或 lastEventId 参数）重连，补发错过的事件后继续接收；
+     * 任务不存在或已过保留期时返回 404，客户端应改用任务状态接口
+     */
+    @GetMapping(value = "/generate/{taskId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<Object>>> subscribeEvents(
+            @PathVariable String taskId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(value = "lastEventId", required = false) String lastEventIdParam) {
+        String lastEventId = lastEventIdHeader != null ? lastEventIdHeader : lastEventIdParam;
+        Flux<ServerSentEvent<Object>> events = imageService.subscribeEventsFlux(taskId, lastEventId);
+        if (events == null) {
+            return ResponseEntity.notFound().build();
+        }
+        logger.info("重新订阅任务事件: taskId={}, lastEventId={}", taskId, lastEventId);
+        return ResponseEntity.ok(events);
+    }
+
+    /**
+     * 获取图片
+     * 文件以 Resource 返回，由 WebFlux 处理 Range 请求和零拷贝发送，ETag / Last-Modified 条件请求返回 304；
+     * width 参数与 servlet 接口一致
+     */
+    @GetMapping("/images/{taskId}/{filename}")
+    public Mono<ResponseEntity<Resource>> getImage(@PathVariable String taskId,
+                                                   @PathVariable String filename,
+                                                   @RequestParam(defaultValue = "true") boolean thumbnail,
+                                                   @RequestParam(required = false) Integer width,
+                                                   @RequestParam(name = "t", required = false) String version) {
+        return Mono.<ResponseEntity<Resource>>fromCallable(() -> {
+                    Path historyDir = HISTORY_DIR.toAbsolutePath().normalize();
+                    Path imagePath = historyDir.resolve(taskId).resolve(filename).normalize();
+                    if (!imagePath.startsWith(historyDir)) {
+                        return ResponseEntity.notFound().build();
+                    }
+
+                    imagePath = imageDerivatives.select(imagePath, width, thumbnail);
+
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(imagePath, BasicFileAttributes.class);
+                    } catch (NoSuchFileException e) {
+                        return ResponseEntity.notFound().build();
+                    }
+                    if (!attributes.isRegularFile()) {
+                        return ResponseEntity.notFound().build();
+                    }
+
+                    long length = attributes.size();
+                    long lastModified = attributes.lastModifiedTime().toMillis();
+                    String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+                    return ResponseEntity.ok()
+                            .eTag(etag)
+                            .lastModified(lastModified)
+                            .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                            .cacheControl(version != null
+                                    ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable()
+                                    : CacheControl.noCache().cachePublic())
+                            .contentType(MediaType.parseMediaType(ImageUtils.detectMimeType(imagePath)))
+                            .body(new FileSystemResource(imagePath));
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(IOException.class, e -> {
+                    logger.error("获取图片失败: {}/{}", taskId, filename, e);
+                    return Mono.just(ResponseEntity.notFound().<Resource>build());
+                });
+    }
+
+    /**
+     * 重试生成单张图片
+     */
+    @PostMapping("/retry")
+    public Mono<ResponseEntity<ApiResponse<Map<String, Object>>>> retrySingleImage(@RequestBody Map<String, Object> request) {
+        return Mono.fromCallable(() -> {
+                    String taskId = (String) request.get("taskId");
+                    @SuppressWarnings("unchecked")
+                    Page page = ControllerSupport.toPage((Map<String, Object>) request.get("page"));
+                    Boolean useReference = (Boolean) request.getOrDefault("useReference", true);
+                    String fullOutline = (String) request.getOrDefault("fullOutline", "");
+                    String userTopic = (String) request.getOrDefault("userTopic", "");
+                    Boolean useCache = (Boolean) request.getOrDefault("useCache", true);
+
+                    logger.info("重试生成图片: taskId={}, page={}", taskId, page.getIndex());
+                    return imageService.retrySingleImage(taskId, page, useReference, fullOutline, userTopic, useCache);
+                })
+                .subscribeOn(generationScheduler)
+                .map(this::toImageResponse)
+                .onErrorResume(e -> {
+                    logger.error("重试图片生成异常", e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(ApiResponse.<Map<String, Object>>error("重试失败: " + e.getMessage())));
+                });
+    }
+
+    /**
+     * 重新生成图片
+     */
+    @PostMapping("/regenerate")
+    public Mono<ResponseEntity<ApiResponse<Map<String, Object>>>> regenerateImage(@RequestBody Map<String, Object> request) {
+        return Mono.fromCallable(() -> {
+                    String taskId = (String) request.get("taskId");
+                    @SuppressWarnings("unchecked")
+                    Page page = ControllerSupport.toPage((Map<String, Object>) request.get("page"));
+                    Boolean useReference = (Boolean) request.getOrDefault("useReference", true);
+                    String fullOutline = (String) request.getOrDefault("fullOutline", "");
+                    String userTopic = (String) request.getOrDefault("userTopic", "");
+                    // 重新生成默认绕过缓存，得到一张新图片
+                    Boolean useCache = (Boolean) request.getOrDefault("useCache", false);
+
+                    logger.info("重新生成图片: taskId={}, page={}", taskId, page.getIndex());
+                    return imageService.regenerateImage(taskId, page, useReference, fullOutline, userTopic, useCache);
+                })
+                .subscribeOn(generationScheduler)
+                .map(this::toImageResponse)
+                .onErrorResume(e -> {
+                    logger.error("重新生成图片异常", e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(ApiResponse.<Map<String, Object>>error("重新生成失败: " + e.getMessage())));
+                });
+    }
+
+    /**
+     * 获取任务状态
+     */
+    @GetMapping("/task/{taskId}")
+    public Mono<ResponseEntity<ApiResponse<TaskState>>> getTaskState(@PathVariable String taskId) {
+        return Mono.<ResponseEntity<ApiResponse<TaskState>>>fromCallable(() -> {
+                    TaskState state = imageService.getTaskState(taskId);
+
+                    if (state == null) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                                .body(ApiResponse.<TaskState>error("任务不存在: " + taskId));
+                    }
+
+                    // 不返回封面图片数据（太大）
+                    TaskState safeState = new TaskState();
+                    safeState.setGenerated(state.getGenerated());
+                    safeState.setFailed(state.getFailed());
+                    safeState.setCoverImage(state.hasCoverImage() ? new byte[1] : null);
+
+                    return ResponseEntity.ok(ApiResponse.success(safeState));
+                })
+                // 任务状态可能在 Redis 或溢写文件中
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    logger.error("获取任务状态异常: {}", taskId, e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(ApiResponse.<TaskState>error("获取任务状态失败: " + e.getMessage())));
+                });
+    }
+
+    /**
+     * 获取系统配置
+     */
+    @GetMapping("/config")
+    public Mono<ResponseEntity<ApiResponse<Map<String, Object>>>> getConfig() {
+        return Mono.<ResponseEntity<ApiResponse<Map<String, Object>>>>fromCallable(
+                        () -> ResponseEntity.ok(ApiResponse.success(ControllerSupport.maskedConfig(configManager))))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    logger.error("获取配置异常", e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(ApiResponse.<Map<String, Object>>error("获取配置失败: " + e.getMessage())));
+                });
+    }
+
+    /**
+     * 将单图生成结果转换为响应
+     */
+    private ResponseEntity<ApiResponse<Map<String, Object>>> toImageResponse(Map<String, Object> result) {
+        if ((Boolean) result.get("success")) {
+            return ResponseEntity.ok(ApiResponse.success(result));
+        } else {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(ApiResponse.error((String) result.get("error")));
+        }
+    }
+}
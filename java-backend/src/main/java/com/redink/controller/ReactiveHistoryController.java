@@ -0,0 +1,254 @@
+package com.redink.controller;
+
+import com.redink.model.ApiResponse;
+import com.redink.model.HistoryRecord;
+import com.redink.model.HistorySummary;
+import com.redink.model.OutlineResult;
+import com.redink.service.HistoryService;
+import com.redink.service.HistoryStats;
+import com.redink.service.PagedResult;
+import com.redink.util.HttpRanges;
+import com.redink.util.StoredZipArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * 历史记录API控制器（响应式模式，接口与 HistoryController 一致）
+ * 历史记录的读写涉及文件 IO，放到 boundedElastic 线程执行，不占用事件循环线程
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/api/history")
+@CrossOrigin(origins = "*")
+public class ReactiveHistoryController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveHistoryController.class);
+
+    private final HistoryService historyService;
+
+    public ReactiveHistoryController(HistoryService historyService) {
+        this.historyService = historyService;
+    }
+
+    /**
+     * 创建历史记录
+     */
+    @PostMapping
+    public Mono<ResponseEntity<ApiResponse<String>>> createHistory(@RequestBody Map<String, Object> request) {
+        return blocking(() -> {
+            String topic = (String) request.get("topic");
+            @SuppressWarnings("unchecked")
+            OutlineResult outline = ControllerSupport.toOutline((Map<String, Object>) request.get("outline"));
+            String taskId = (String) request.get("taskId");
+
+            String recordId = historyService.createRecord(topic, outline, taskId);
+            return ResponseEntity.ok(ApiResponse.success(recordId));
+        }, "创建失败", "创建历史记录异常");
+    }
+
+    /**
+     * 获取历史记录列表
+     */
+    @GetMapping
+    public Mono<ResponseEntity<ApiResponse<PagedResult<HistorySummary>>>> listHistory(
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int pageSize,
+            @RequestParam(required = false) String status) {
+        return blocking(() -> ResponseEntity.ok(ApiResponse.success(historyService.listRecords(page, pageSize, status))),
+                "获取列表失败", "获取历史记录列表异常");
+    }
+
+    /**
+     * 获取历史记录详情
+     */
+    @GetMapping("/{recordId}")
+    public Mono<ResponseEntity<ApiResponse<HistoryRecord>>> getHistory(@PathVariable String recordId) {
+        return blocking(() -> {
+            HistoryRecord record = historyService.getRecord(recordId);
+            if (record == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.<HistoryRecord>error("历史记录不存在: " + recordId));
+            }
+            return ResponseEntity.ok(ApiResponse.success(record));
+        }, "获取详情失败", "获取历史记录详情异常: " + recordId);
+    }
+
+    /**
+     * 更新历史记录
+     */
+    @PutMapping("/{recordId}")
+    public Mono<ResponseEntity<ApiResponse<Void>>> updateHistory(@PathVariable String recordId,
+                                                                 @RequestBody Map<String, Object> request) {
+        return blocking(() -> {
+            OutlineResult outline = null;
+            HistoryRecord.ImagesInfo images = null;
+            String status = (String) request.get("status");
+            String thumbnail = (String) request.get("thumbnail");
+
+            if (request.containsKey("outline")) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> outlineMap = (Map<String, Object>) request.get("outline");
+                outline = ControllerSupport.toOutline(outlineMap);
+            }
+
+            if (request.containsKey("images")) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> imagesMap = (Map<String, Object>) request.get("images");
+                images = ControllerSupport.toImagesInfo(imagesMap);
+            }
+
+            if (!historyService.updateRecord(recordId, outline, images, status, thumbnail)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.<Void>error("更新失败: 记录不存在"));
+            }
+            return ResponseEntity.ok(ApiResponse.<Void>success(null, "更新成功"));
+        }, "更新失败", "更新历史记录异常: " + recordId);
+    }
+
+    /**
+     * 删除历史记录
+     */
+    @DeleteMapping("/{recordId}")
+    public Mono<ResponseEntity<ApiResponse<Void>>> deleteHistory(@PathVariable String recordId) {
+        return blocking(() -> {
+            if (!historyService.deleteRecord(recordId)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.<Void>error("删除失败: 记录不存在"));
+            }
+            return ResponseEntity.ok(ApiResponse.<Void>success(null, "删除成功"));
+        }, "删除失败", "删除历史记录异常: " + recordId);
+    }
+
+    /**
+     * 搜索历史记录
+     */
+    @GetMapping("/search")
+    public Mono<ResponseEntity<ApiResponse<PagedResult<HistorySummary>>>> searchHistory(
+            @RequestParam String keyword,
+            @RequestParam(defaultValue = "1") int page,
+            @RequestParam(defaultValue = "20") int pageSize) {
+        return blocking(() -> ResponseEntity.ok(ApiResponse.success(historyService.searchRecords(keyword, page, pageSize))),
+                "搜索失败", "搜索历史记录异常: keyword=" + keyword);
+    }
+
+    /**
+     * 获取统计信息
+     */
+    @GetMapping("/stats")
+    public Mono<ResponseEntity<ApiResponse<HistoryStats>>> getHistoryStats() {
+        return blocking(() -> ResponseEntity.ok(ApiResponse.success(historyService.getStatistics())),
+                "获取统计失败", "获取历史记录统计异常");
+    }
+
+    /**
+     * 下载历史记录ZIP
+     * 归档内容在 boundedElastic 线程中写入 DataBuffer 流；支持 Range / If-Range 断点续传
+     */
+    @GetMapping("/{recordId}/download")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> downloadHistoryZip(@PathVariable String recordId,
+                                                                     @RequestHeader HttpHeaders requestHeaders) {
+        return Mono.<ResponseEntity<Flux<DataBuffer>>>fromCallable(() -> {
+                    HistoryRecord record = historyService.getRecord(recordId);
+                    if (record == null) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+                    }
+
+                    String taskId = record.getImages() != null ? record.getImages().getTaskId() : null;
+                    if (taskId == null) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+                    }
+
+                    Path taskDir = Paths.get("history", taskId);
+                    if (!Files.exists(taskDir)) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+                    }
+
+                    StoredZipArchive archive = StoredZipArchive.of(ControllerSupport.listArchiveFiles(taskDir));
+                    long length = archive.length();
+                    String etag = archive.etag();
+
+                    HttpHeaders headers = new HttpHeaders();
+                    headers.set(HttpHeaders.CONTENT_DISPOSITION,
+                            "attachment; filename=\"" + ControllerSupport.archiveFilename(record) + "\"");
+                    headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+                    headers.setETag(etag);
+
+                    if (etag.equals(requestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH))) {
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+                    }
+
+                    long[] range;
+                    try {
+                        range = HttpRanges.resolve(requestHeaders.getFirst(HttpHeaders.RANGE),
+                                requestHeaders.getFirst(HttpHeaders.IF_RANGE), etag, length);
+                    } catch (HttpRanges.UnsatisfiableRangeException e) {
+                        headers.set(HttpHeaders.CONTENT_RANGE, HttpRanges.unsatisfiedContentRange(length));
+                        return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+                    }
+
+                    long start = range != null ? range[0] : 0;
+                    long end = range != null ? range[1] : length - 1;
+                    if (range != null) {
+                        headers.set(HttpHeaders.CONTENT_RANGE, HttpRanges.contentRange(start, end, length));
+                    }
+                    headers.setContentLength(end - start + 1);
+
+                    return ResponseEntity.status(range != null ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
+                            .headers(headers)
+                            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                            .body(archiveBody(archive, start, end));
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    logger.error("下载历史记录ZIP异常: {}", recordId, e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).<Flux<DataBuffer>>build());
+                });
+    }
+
+    /**
+     * 归档的 [start, end] 区间，按下游请求量写出，客户端断开时停止读取文件
+     */
+    private Flux<DataBuffer> archiveBody(StoredZipArchive archive, long start, long end) {
+        return Flux.from(DataBufferUtils.outputStreamPublisher(out -> {
+            try {
+                archive.writeTo(out, start, end);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, DefaultDataBufferFactory.sharedInstance, task -> Schedulers.boundedElastic().schedule(task)));
+    }
+
+    /**
+     * 在 boundedElastic 线程执行阻塞的历史记录操作，异常时返回 500
+     */
+    private <T> Mono<ResponseEntity<ApiResponse<T>>> blocking(Callable<ResponseEntity<ApiResponse<T>>> action,
+                                                             String errorPrefix, String logMessage) {
+        return Mono.fromCallable(action)
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(e -> {
+                    logger.error(logMessage, e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(ApiResponse.<T>error(errorPrefix + ": " + e.getMessage())));
+                });
+    }
+}
@@ -0,0 +1,21 @@
+package com.redink.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * 服务商暂不可用：熔断中或等待并发许可超时
+ * 调用方应立即回退（如使用备用大纲），而不是重试
+ */
+public class ProviderUnavailableException extends BusinessException {
+
+    private final String provider;
+
+    public ProviderUnavailableException(String provider, String reason) {
+        super("服务商暂不可用: " + provider + "（" + reason + "）", HttpStatus.SERVICE_UNAVAILABLE);
+        this.provider = provider;
+    }
+
+    public String getProvider() {
+        return provider;
+    }
+}
@@ -0,0 +1,21 @@
+package com.redink.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+/**
+ * 历史记录摘要（索引条目）
+ * 列表和搜索直接返回摘要，完整记录通过详情接口获取
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class HistorySummary {
+    private String id;
+    private String title;
+    private String createdAt;
+    private String updatedAt;
+    private String status;
+    private String thumbnail;
+    private int pageCount;
+    private String taskId;
+}
@@ -14,4 +14,11 @@ public class TaskState {
     private String fullOutline;
     private String userTopic;
     private byte[][] userImages;
+
+    /**
+     * 是否有封面参考图；存储实现可以不加载图片数据直接判断
+     */
+    public boolean hasCoverImage() {
+        return getCoverImage() != null;
+    }
 }
\ No newline at end of file
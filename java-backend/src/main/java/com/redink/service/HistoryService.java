@@ -1,6 +1,7 @@
 package com.redink.service;
 
 import com.redink.model.HistoryRecord;
+import com.redink.model.HistorySummary;
 import com.redink.model.OutlineResult;
 
 /**
@@ -44,20 +45,22 @@ public interface HistoryService {
     boolean deleteRecord(String recordId);
     
     /**
-     * 获取历史记录列表
+     * 获取历史记录列表（索引摘要，不读取记录文件）
      * @param page 页码
      * @param pageSize 页大小
      * @param status 状态筛选
      * @return 分页结果
      */
-    PagedResult<HistoryRecord> listRecords(int page, int pageSize, String status);
+    PagedResult<HistorySummary> listRecords(int page, int pageSize, String status);
     
     /**
-     * 搜索历史记录
+     * 全文搜索历史记录（标题及大纲内容），按相关度排序
      * @param keyword 关键词
-     * @return 搜索结果
+     * @param page 页码
+     * @param pageSize 页大小
+     * @return 分页结果
      */
-    java.util.List<HistoryRecord> searchRecords(String keyword);
+    PagedResult<HistorySummary> searchRecords(String keyword, int page, int pageSize);
     
     /**
      * 获取统计信息
@@ -1,7 +1,9 @@
 package com.redink.service;
 
 import com.redink.model.TaskState;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 import java.util.Map;
@@ -23,29 +25,72 @@ public interface ImageGenerationService {
     SseEmitter generateImages(List<com.redink.model.Page> pages, String taskId, 
                               String fullOutline, String userTopic, byte[][] userImages);
     
+    /**
+     * 从主题开始生成：流式生成大纲，每解析出一页立即进入图片生成流水线
+     * 除图片事件外，还推送 outline_page（每页大纲）和 outline_complete（完整大纲）事件
+     * @param topic 用户主题
+     * @param taskId 任务ID
+     * @param userImages 用户图片
+     * @return SSE发射器
+     */
+    SseEmitter generateFromTopic(String topic, String taskId, byte[][] userImages);
+    
+    /**
+     * 生成图片（响应式），事件与 generateImages 一致
+     * @return SSE 事件流；取消订阅只断开事件流，不影响生成
+     */
+    Flux<ServerSentEvent<Object>> generateImagesFlux(List<com.redink.model.Page> pages, String taskId,
+                                                     String fullOutline, String userTopic, byte[][] userImages);
+    
+    /**
+     * 从主题开始生成（响应式），事件与 generateFromTopic 一致
+     * @return SSE 事件流；取消订阅只断开事件流，不影响生成
+     */
+    Flux<ServerSentEvent<Object>> generateFromTopicFlux(String topic, String taskId, byte[][] userImages);
+    
     /**
      * 重试生成单张图片
      * @param taskId 任务ID
      * @param page 页面数据
-     * @param useReference 是否使用参考图
+     * @param useReference 是否使用参考图（图片接口只接收文本提示词，参考图暂不发送给服务商，不影响结果）
      * @param fullOutline 完整大纲
      * @param userTopic 用户主题
+     * @param useCache 是否复用相同输入已生成的图片
      * @return 生成结果
      */
     Map<String, Object> retrySingleImage(String taskId, com.redink.model.Page page, 
-                                        boolean useReference, String fullOutline, String userTopic);
+                                        boolean useReference, String fullOutline, String userTopic,
+                                        boolean useCache);
     
     /**
      * 重新生成图片
      * @param taskId 任务ID
      * @param page 页面数据
-     * @param useReference 是否使用参考图
+     * @param useReference 是否使用参考图（图片接口只接收文本提示词，参考图暂不发送给服务商，不影响结果）
      * @param fullOutline 完整大纲
      * @param userTopic 用户主题
+     * @param useCache 是否复用相同输入已生成的图片，为 false 时强制重新生成
      * @return 生成结果
      */
     Map<String, Object> regenerateImage(String taskId, com.redink.model.Page page,
-                                      boolean useReference, String fullOutline, String userTopic);
+                                      boolean useReference, String fullOutline, String userTopic,
+                                      boolean useCache);
+    
+    /**
+     * 重新订阅任务事件（断线重连）
+     * 先补发 lastEventId 之后的事件，任务进行中时继续推送后续事件；
+     * 错过的事件已不在回放缓冲区时先推送 resync 事件
+     * @param taskId 任务ID
+     * @param lastEventId 客户端收到的最后一个事件 id，可为 null
+     * @return SSE发射器，任务不存在或事件已过期时返回 null
+     */
+    SseEmitter subscribeEvents(String taskId, String lastEventId);
+    
+    /**
+     * 重新订阅任务事件（响应式），语义与 subscribeEvents 一致
+     * @return SSE 事件流，任务不存在或事件已过期时返回 null
+     */
+    Flux<ServerSentEvent<Object>> subscribeEventsFlux(String taskId, String lastEventId);
     
     /**
      * 获取任务状态
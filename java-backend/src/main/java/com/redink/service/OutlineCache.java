@@ -0,0 +1,22 @@
+package com.redink.service;
+
+/**
+ * 大纲结果缓存接口
+ * 由 redink.outline.cache.store 选择实现：memory（默认）或 redis
+ */
+public interface OutlineCache {
+
+    /**
+     * 获取缓存的大纲文本
+     * @param key 缓存键
+     * @return 大纲文本，不存在或已过期时返回 null
+     */
+    String get(String key);
+
+    /**
+     * 写入大纲文本
+     * @param key 缓存键
+     * @param outline 大纲文本
+     */
+    void put(String key, String outline);
+}
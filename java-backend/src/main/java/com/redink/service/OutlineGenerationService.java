@@ -1,6 +1,13 @@
 package com.redink.service;
 
 import com.redink.model.OutlineResult;
+import com.redink.model.Page;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Consumer;
 
 /**
  * 大纲生成服务接口
@@ -14,4 +21,43 @@ public interface OutlineGenerationService {
      * @return 大纲生成结果
      */
     OutlineResult generateOutline(String topic, byte[][] images);
-}
\ No newline at end of file
+    
+    /**
+     * 流式生成大纲
+     * 每解析出一页推送一次 page 事件，结束时推送 complete 事件（内容与 generateOutline 的结果一致）
+     * @param topic 主题
+     * @param images 图片数据
+     * @return SSE发射器
+     */
+    SseEmitter generateOutlineStream(String topic, byte[][] images);
+    
+    /**
+     * 流式生成大纲（响应式），事件与 generateOutlineStream 一致；取消订阅时中止模型调用
+     * @param topic 主题
+     * @param images 图片数据
+     * @return SSE 事件流
+     */
+    Flux<ServerSentEvent<Object>> generateOutlineFlux(String topic, byte[][] images);
+    
+    /**
+     * 流式生成大纲，在调用线程中阻塞直到生成结束
+     * 每解析出一页立即回调（与 streamOutlineAsync 相同，回调在 boundedElastic 线程中按顺序执行）；
+     * 回调抛出的运行时异常会中止生成并原样抛出
+     * @param topic 主题
+     * @param images 图片数据
+     * @param onPage 页面回调
+     * @return 大纲生成结果，页面与回调顺序一致
+     */
+    OutlineResult streamOutline(String topic, byte[][] images, Consumer<Page> onPage);
+    
+    /**
+     * 流式生成大纲，不阻塞调用线程
+     * 模型输出通过 WebClient 非阻塞读取，页面回调在 boundedElastic 线程中按顺序执行；
+     * 回调抛出的运行时异常会中止生成并作为错误结束
+     * @param topic 主题
+     * @param images 图片数据
+     * @param onPage 页面回调
+     * @return 大纲生成结果
+     */
+    Mono<OutlineResult> streamOutlineAsync(String topic, byte[][] images, Consumer<Page> onPage);
+}
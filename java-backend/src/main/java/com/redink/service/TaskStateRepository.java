@@ -0,0 +1,54 @@
+package com.redink.service;
+
+import com.redink.model.TaskState;
+
+/**
+ * 任务状态存储接口
+ * 由 redink.task-state.store 选择实现：memory（默认）或 redis
+ */
+public interface TaskStateRepository {
+
+    /**
+     * 获取任务状态
+     * @param taskId 任务ID
+     * @return 任务状态，不存在时返回 null
+     */
+    TaskState get(String taskId);
+
+    /**
+     * 保存完整任务状态（上下文、封面、用户图片），generated/failed 以 state 中的内容整体替换
+     * @param taskId 任务ID
+     * @param state 任务状态
+     */
+    void put(String taskId, TaskState state);
+
+    /**
+     * 更新任务上下文和图片数据（大纲、主题、封面、用户图片），不改变 generated/failed；
+     * 任务进行中由 markGenerated / markFailed 记录的结果不会被覆盖
+     * @param taskId 任务ID
+     * @param state 含最新上下文的任务状态
+     */
+    void updateContext(String taskId, TaskState state);
+
+    /**
+     * 记录页面生成成功，同时清除该页的失败记录
+     * @param taskId 任务ID
+     * @param index 页面索引
+     * @param filename 图片文件名
+     */
+    void markGenerated(String taskId, int index, String filename);
+
+    /**
+     * 记录页面生成失败
+     * @param taskId 任务ID
+     * @param index 页面索引
+     * @param error 错误信息
+     */
+    void markFailed(String taskId, int index, String error);
+
+    /**
+     * 移除任务状态
+     * @param taskId 任务ID
+     */
+    void remove(String taskId);
+}
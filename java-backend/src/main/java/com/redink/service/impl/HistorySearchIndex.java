@@ -0,0 +1,460 @@
+package com.redink.service.impl;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 历史记录全文倒排索引
+ * 中日韩字符按二元组切分（标题额外索引单字以支持单字查询），其余字母数字按单词切分，
+ * 查询中的字母数字词按前缀匹配（"java" 命中 "javascript"）；
+ * 标题命中权重高于大纲内容，按 tf-idf 排序。
+ * 倒排表使用按文档序号排序的 int 数组，求交集时从最短的表开始逐个推进；
+ * 已删除文档的序号超过一半（且不少于 COMPACT_MIN_TOMBSTONES）时重新编号，回收序号和空倒排表
+ */
+class HistorySearchIndex {
+
+    // 标题词频权重
+    private static final int TITLE_WEIGHT = 3;
+    // 大纲内容词频权重
+    private static final int CONTENT_WEIGHT = 1;
+    // 触发重新编号的最少已删除序号数
+    private static final int COMPACT_MIN_TOMBSTONES = 1024;
+
+    // 词 -> 词编号
+    private final Map<String, Integer> termIds = new HashMap<>();
+    // 字母数字词的有序词典，用于前缀查询
+    private final TreeSet<String> latinTerms = new TreeSet<>();
+    // 词编号 -> 倒排表
+    private final List<Posting> postings = new ArrayList<>();
+    // 记录ID -> 文档序号（同一记录重建索引时序号不变）
+    private final Map<String, Integer> documentOrdinals = new HashMap<>();
+    // 文档序号 -> 文档，已删除为 null
+    private final List<Document> documents = new ArrayList<>();
+    private int liveDocuments;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 索引（或重建）一条记录，标题和内容未变化时直接返回
+     * @param id 记录ID
+     * @param title 标题
+     * @param content 大纲页面内容，可为 null
+     */
+    void index(String id, String title, String content) {
+        long hash = contentHash(title, content);
+
+        lock.readLock().lock();
+        try {
+            Integer ordinal = documentOrdinals.get(id);
+            if (ordinal != null && documents.get(ordinal).hash == hash) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<String, Integer> termFrequencies = new HashMap<>();
+        if (title != null) {
+            tokenize(title, termFrequencies, TITLE_WEIGHT, true);
+        }
+        if (content != null) {
+            tokenize(content, termFrequencies, CONTENT_WEIGHT, false);
+        }
+
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = documentOrdinals.get(id);
+            if (ordinal == null) {
+                ordinal = documents.size();
+                documents.add(null);
+                documentOrdinals.put(id, ordinal);
+                liveDocuments++;
+            } else {
+                removeTerms(ordinal);
+            }
+
+            int[] terms = new int[termFrequencies.size()];
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : termFrequencies.entrySet()) {
+                int termId = termIds.computeIfAbsent(entry.getKey(), k -> {
+                    postings.add(new Posting());
+                    if (!isCjk(k.codePointAt(0))) {
+                        latinTerms.add(k);
+                    }
+                    return postings.size() - 1;
+                });
+                postings.get(termId).put(ordinal, entry.getValue());
+                terms[i++] = termId;
+            }
+            documents.set(ordinal, new Document(id, terms, hash));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 从索引中移除记录
+     */
+    void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer ordinal = documentOrdinals.remove(id);
+            if (ordinal != null) {
+                removeTerms(ordinal);
+                documents.set(ordinal, null);
+                liveDocuments--;
+                int tombstones = documents.size() - liveDocuments;
+                if (tombstones >= COMPACT_MIN_TOMBSTONES && tombstones > liveDocuments) {
+                    compactOrdinals();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return documentOrdinals.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索：所有查询词都命中的记录，按得分从高到低排列
+     * 只用容量为 limit 的最小堆保留得分最高的记录，只对这部分排序；得分相同时按索引顺序
+     * @param query 查询字符串
+     * @param limit 需要的前 N 条（分页时为 offset + pageSize）
+     * @return 命中总数和前 limit 条记录ID及得分
+     */
+    Hits search(String query, int limit) {
+        Map<String, Integer> queryTerms = new LinkedHashMap<>();
+        if (query != null) {
+            tokenize(query, queryTerms, 1, false);
+        }
+        if (queryTerms.isEmpty()) {
+            return Hits.EMPTY;
+        }
+
+        lock.readLock().lock();
+        try {
+            Posting[] lists = new Posting[queryTerms.size()];
+            int n = 0;
+            for (String term : queryTerms.keySet()) {
+                Posting posting = isCjk(term.codePointAt(0)) ? exactPosting(term) : prefixPosting(term);
+                if (posting == null || posting.size == 0) {
+                    return Hits.EMPTY;
+                }
+                lists[n++] = posting;
+            }
+            // 从最短的倒排表开始求交集
+            Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+
+            double[] idf = new double[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                idf[i] = Math.log(1.0 + (double) Math.max(liveDocuments, 1) / lists[i].size);
+            }
+
+            int[] cursors = new int[lists.length];
+            int total = 0;
+            Posting shortest = lists[0];
+            // 堆顶是当前保留的最低分（同分时序号最大）的记录
+            PriorityQueue<Hit> top = new PriorityQueue<>(Math.max(1, Math.min(limit, shortest.size)), Hit.ORDER);
+            outer:
+            for (int k = 0; k < shortest.size; k++) {
+                int doc = shortest.docs[k];
+                double score = shortest.tf[k] * idf[0];
+                for (int i = 1; i < lists.length; i++) {
+                    int pos = lists[i].advance(cursors[i], doc);
+                    cursors[i] = pos;
+                    if (pos >= lists[i].size || lists[i].docs[pos] != doc) {
+                        continue outer;
+                    }
+                    score += lists[i].tf[pos] * idf[i];
+                }
+                total++;
+                if (limit <= 0) {
+                    continue;
+                }
+                Hit hit = new Hit(doc, score);
+                if (top.size() < limit) {
+                    top.add(hit);
+                } else if (Hit.ORDER.compare(hit, top.peek()) > 0) {
+                    top.poll();
+                    top.add(hit);
+                }
+            }
+
+            List<Hit> sorted = new ArrayList<>(top);
+            sorted.sort(Hit.ORDER.reversed());
+            List<Map.Entry<String, Double>> ranked = new ArrayList<>(sorted.size());
+            for (Hit hit : sorted) {
+                ranked.add(new AbstractMap.SimpleImmutableEntry<>(documents.get(hit.doc()).id, hit.score()));
+            }
+            return new Hits(total, ranked);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 搜索结果
+     * @param total 命中总数
+     * @param top 得分最高的记录ID及得分，已排序
+     */
+    record Hits(int total, List<Map.Entry<String, Double>> top) {
+        static final Hits EMPTY = new Hits(0, List.of());
+    }
+
+    /**
+     * 候选记录；ORDER 按得分升序，同分时序号大的在前（排名靠后）
+     */
+    private record Hit(int doc, double score) {
+        static final Comparator<Hit> ORDER = Comparator.comparingDouble(Hit::score)
+                .thenComparing(Comparator.comparingInt(Hit::doc).reversed());
+    }
+
+    private Posting exactPosting(String term) {
+        Integer termId = termIds.get(term);
+        return termId != null ? postings.get(termId) : null;
+    }
+
+    /**
+     * 以 prefix 开头的所有词的倒排表合并，同一文档的词频相加；只有一个词时直接返回其倒排表
+     */
+    private Posting prefixPosting(String prefix) {
+        List<Posting> matched = new ArrayList<>();
+        for (String term : latinTerms.subSet(prefix, true, prefix + Character.MAX_VALUE, false)) {
+            Posting posting = postings.get(termIds.get(term));
+            if (posting.size > 0) {
+                matched.add(posting);
+            }
+        }
+        if (matched.size() <= 1) {
+            return matched.isEmpty() ? null : matched.get(0);
+        }
+        Map<Integer, Integer> frequencies = new HashMap<>();
+        for (Posting posting : matched) {
+            for (int k = 0; k < posting.size; k++) {
+                frequencies.merge(posting.docs[k], (int) posting.tf[k], Integer::sum);
+            }
+        }
+        int[] docs = new int[frequencies.size()];
+        int i = 0;
+        for (int doc : frequencies.keySet()) {
+            docs[i++] = doc;
+        }
+        Arrays.sort(docs);
+        Posting merged = new Posting();
+        merged.docs = docs;
+        merged.tf = new short[docs.length];
+        for (int k = 0; k < docs.length; k++) {
+            merged.tf[k] = (short) Math.min(frequencies.get(docs[k]), Short.MAX_VALUE);
+        }
+        merged.size = docs.length;
+        return merged;
+    }
+
+    /**
+     * 重新编号：存活文档按原顺序取连续序号，空倒排表和只属于已删除文档的词一并移除，调用方需持有写锁
+     * 序号映射保持单调，倒排表重写后仍然有序
+     */
+    private void compactOrdinals() {
+        int[] ordinalMap = new int[documents.size()];
+        List<Document> liveDocs = new ArrayList<>(liveDocuments);
+        for (int old = 0; old < documents.size(); old++) {
+            Document document = documents.get(old);
+            ordinalMap[old] = document != null ? liveDocs.size() : -1;
+            if (document != null) {
+                liveDocs.add(document);
+            }
+        }
+
+        int[] termMap = new int[postings.size()];
+        List<Posting> livePostings = new ArrayList<>();
+        for (int termId = 0; termId < postings.size(); termId++) {
+            Posting posting = postings.get(termId);
+            if (posting.size == 0) {
+                termMap[termId] = -1;
+                continue;
+            }
+            for (int k = 0; k < posting.size; k++) {
+                posting.docs[k] = ordinalMap[posting.docs[k]];
+            }
+            termMap[termId] = livePostings.size();
+            livePostings.add(posting);
+        }
+
+        Iterator<Map.Entry<String, Integer>> terms = termIds.entrySet().iterator();
+        while (terms.hasNext()) {
+            Map.Entry<String, Integer> entry = terms.next();
+            int mapped = termMap[entry.getValue()];
+            if (mapped < 0) {
+                terms.remove();
+                latinTerms.remove(entry.getKey());
+            } else {
+                entry.setValue(mapped);
+            }
+        }
+
+        documents.clear();
+        for (Document document : liveDocs) {
+            int[] remapped = new int[document.terms.length];
+            int n = 0;
+            for (int termId : document.terms) {
+                if (termMap[termId] >= 0) {
+                    remapped[n++] = termMap[termId];
+                }
+            }
+            documents.add(new Document(document.id, Arrays.copyOf(remapped, n), document.hash));
+            documentOrdinals.put(document.id, documents.size() - 1);
+        }
+        postings.clear();
+        postings.addAll(livePostings);
+    }
+
+    private void removeTerms(int ordinal) {
+        Document document = documents.get(ordinal);
+        if (document == null) {
+            return;
+        }
+        for (int termId : document.terms) {
+            postings.get(termId).remove(ordinal);
+        }
+    }
+
+    private static long contentHash(String title, String content) {
+        long titleHash = title != null ? title.hashCode() : 0;
+        long contentHash = content != null ? content.hashCode() : 0;
+        return (titleHash << 32) ^ (contentHash & 0xffffffffL) ^ (content != null ? content.length() : -1);
+    }
+
+    /**
+     * 切分文本
+     * @param includeUnigrams 是否为多字中日韩片段同时输出单字
+     */
+    static void tokenize(String text, Map<String, Integer> out, int weight, boolean includeUnigrams) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int cp = text.codePointAt(i);
+            if (isCjk(cp)) {
+                int start = i;
+                while (i < length && isCjk(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                emitCjk(text.substring(start, i), out, weight, includeUnigrams);
+            } else if (Character.isLetterOrDigit(cp)) {
+                int start = i;
+                while (i < length) {
+                    int c = text.codePointAt(i);
+                    if (!Character.isLetterOrDigit(c) || isCjk(c)) {
+                        break;
+                    }
+                    i += Character.charCount(c);
+                }
+                out.merge(text.substring(start, i).toLowerCase(Locale.ROOT), weight, Integer::sum);
+            } else {
+                i += Character.charCount(cp);
+            }
+        }
+    }
+
+    private static void emitCjk(String run, Map<String, Integer> out, int weight, boolean includeUnigrams) {
+        int[] cps = run.codePoints().toArray();
+        if (cps.length == 1) {
+            out.merge(new String(cps, 0, 1), weight, Integer::sum);
+            return;
+        }
+        for (int j = 0; j < cps.length; j++) {
+            if (includeUnigrams) {
+                out.merge(new String(cps, j, 1), weight, Integer::sum);
+            }
+            if (j + 1 < cps.length) {
+                out.merge(new String(cps, j, 2), weight, Integer::sum);
+            }
+        }
+    }
+
+    private static boolean isCjk(int cp) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * 已索引的文档
+     */
+    private static final class Document {
+        final String id;
+        final int[] terms;
+        final long hash;
+
+        Document(String id, int[] terms, long hash) {
+            this.id = id;
+            this.terms = terms;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * 倒排表：按文档序号升序的文档数组及对应词频
+     */
+    private static final class Posting {
+        int[] docs = new int[4];
+        short[] tf = new short[4];
+        int size;
+
+        void put(int doc, int frequency) {
+            short value = (short) Math.min(frequency, Short.MAX_VALUE);
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos >= 0) {
+                tf[pos] = value;
+                return;
+            }
+            pos = -pos - 1;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                tf = Arrays.copyOf(tf, size * 2);
+            }
+            System.arraycopy(docs, pos, docs, pos + 1, size - pos);
+            System.arraycopy(tf, pos, tf, pos + 1, size - pos);
+            docs[pos] = doc;
+            tf[pos] = value;
+            size++;
+        }
+
+        void remove(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos < 0) {
+                return;
+            }
+            System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+            System.arraycopy(tf, pos + 1, tf, pos, size - pos - 1);
+            size--;
+        }
+
+        /**
+         * 从 from 开始倍增查找第一个不小于 target 的位置
+         */
+        int advance(int from, int target) {
+            if (from >= size || docs[from] >= target) {
+                return from;
+            }
+            int step = 1;
+            int low = from;
+            int high = from + 1;
+            while (high < size && docs[high] < target) {
+                low = high;
+                step <<= 1;
+                high = from + step;
+            }
+            int pos = Arrays.binarySearch(docs, low + 1, Math.min(high + 1, size), target);
+            return pos >= 0 ? pos : -pos - 1;
+        }
+    }
+}
@@ -3,26 +3,39 @@ package com.redink.service.impl;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.redink.model.HistoryRecord;
+import com.redink.model.HistorySummary;
 import com.redink.model.OutlineResult;
 import com.redink.service.HistoryService;
 import com.redink.service.PagedResult;
 import com.redink.service.HistoryStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * 历史记录服务实现
+ * 索引由快照 index.json 和追加日志 index.log 组成：
+ * 每次变更只追加一行日志，后台定期把内存索引压缩为新快照；
+ * 压缩时在写锁内把日志轮转为 index.log.compacting，快照在锁外写入，完成后删除轮转出的日志段。
+ * 启动时加载快照后依次重放 index.log.compacting 和 index.log
  */
 @Service
 public class HistoryServiceImpl implements HistoryService {
@@ -30,18 +43,64 @@ public class HistoryServiceImpl implements HistoryService {
     private static final Logger logger = LoggerFactory.getLogger(HistoryServiceImpl.class);
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
     
-    private final Path historyDir = Paths.get("history");
-    private final Path indexFile = historyDir.resolve("index.json");
+    private final Path historyDir;
+    private final Path indexFile;
+    private final Path indexLogFile;
+    // 压缩中的日志段，快照写入完成后删除
+    private final Path compactingLogFile;
     
     private final ObjectMapper objectMapper = new ObjectMapper()
             .findAndRegisterModules()
             .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
     
-    // 内存索引缓存
-    private volatile Map<String, Object> indexCache;
+    // 以下内存索引由 indexLock 保护
+    // 记录ID -> 摘要
+    private final Map<String, HistorySummary> index = new HashMap<>();
+    // 更新序号 -> 摘要，序号越大越新；分页时从最新开始遍历，不复制整个索引
+    private final TreeMap<Long, HistorySummary> byRecency = new TreeMap<>();
+    // 记录ID -> 更新序号
+    private final Map<String, Long> sequences = new HashMap<>();
+    // 状态 -> 记录数（状态可为 null），列表总数和统计不再逐条计数
+    private final Map<String, Integer> statusCounts = new HashMap<>();
+    private long nextSequence;
+    // 索引单写者锁：日志追加、日志轮转在写锁内完成
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    // 串行化压缩（定时任务与关闭时的压缩），获取顺序先于 indexLock
+    private final Object compactLock = new Object();
+    // 记录文件读改写的分段锁
+    private final Object[] recordLocks = new Object[64];
+    // 标题及大纲内容的全文索引
+    private final HistorySearchIndex searchIndex = new HistorySearchIndex();
+    // 启动时补充大纲内容索引的后台线程
+    private volatile Thread searchIndexer;
     
-    public HistoryServiceImpl() {
+    // 以下字段由 indexLock 写锁保护
+    private BufferedWriter indexLogWriter;
+    private int pendingLogEntries;
+    
+    // 日志条数达到阈值后触发压缩
+    private final int compactThreshold;
+    
+    @Autowired
+    public HistoryServiceImpl(@Value("${redink.history.compact-threshold:1000}") int compactThreshold) {
+        this(Paths.get("history"), compactThreshold);
+    }
+    
+    /**
+     * 指定历史记录目录（基准测试使用临时目录）
+     */
+    HistoryServiceImpl(Path historyDir, int compactThreshold) {
+        this.historyDir = historyDir;
+        this.indexFile = historyDir.resolve("index.json");
+        this.indexLogFile = historyDir.resolve("index.log");
+        this.compactingLogFile = historyDir.resolve("index.log.compacting");
+        this.compactThreshold = Math.max(1, compactThreshold);
+        for (int i = 0; i < recordLocks.length; i++) {
+            recordLocks[i] = new Object();
+        }
         initializeHistoryDirectory();
+        loadIndex();
+        buildSearchIndex();
     }
     
     @Override
@@ -67,6 +126,7 @@ public class HistoryServiceImpl implements HistoryService {
         
         // 更新索引
         updateIndex(record, "create");
+        searchIndex.index(recordId, topic, outlineText(outline));
         
         logger.info("创建历史记录: id={}, topic={}", recordId, topic);
         return recordId;
@@ -90,103 +150,111 @@ public class HistoryServiceImpl implements HistoryService {
     @Override
     public boolean updateRecord(String recordId, OutlineResult outline, HistoryRecord.ImagesInfo images,
                               String status, String thumbnail) {
-        HistoryRecord record = getRecord(recordId);
-        if (record == null) {
-            return false;
-        }
-        
-        String now = LocalDateTime.now().format(DATE_FORMATTER);
-        record.setUpdatedAt(now);
-        
-        if (outline != null) {
-            record.setOutline(outline);
-        }
-        if (images != null) {
-            record.setImages(images);
-        }
-        if (status != null) {
-            record.setStatus(status);
-        }
-        if (thumbnail != null) {
-            record.setThumbnail(thumbnail);
+        synchronized (recordLock(recordId)) {
+            HistoryRecord record = getRecord(recordId);
+            if (record == null) {
+                return false;
+            }
+            
+            String now = LocalDateTime.now().format(DATE_FORMATTER);
+            record.setUpdatedAt(now);
+            
+            if (outline != null) {
+                record.setOutline(outline);
+            }
+            if (images != null) {
+                record.setImages(images);
+            }
+            if (status != null) {
+                record.setStatus(status);
+            }
+            if (thumbnail != null) {
+                record.setThumbnail(thumbnail);
+            }
+            
+            saveRecord(record);
+            updateIndex(record, "update");
+            searchIndex.index(recordId, record.getTitle(), outlineText(record.getOutline()));
+            
+            return true;
         }
-        
-        saveRecord(record);
-        updateIndex(record, "update");
-        
-        return true;
     }
     
     @Override
     public boolean deleteRecord(String recordId) {
-        HistoryRecord record = getRecord(recordId);
-        if (record == null) {
-            return false;
-        }
+        synchronized (recordLock(recordId)) {
+            HistoryRecord record = getRecord(recordId);
+            if (record == null) {
+                return false;
+            }
         
-        try {
-            // 删除任务目录
-            if (record.getImages() != null && record.getImages().getTaskId() != null) {
-                Path taskDir = historyDir.resolve(record.getImages().getTaskId());
-                if (Files.exists(taskDir)) {
-                    Files.walk(taskDir)
-                            .sorted(Comparator.reverseOrder())
-                            .forEach(path -> {
-                                try {
-                                    Files.delete(path);
-                                } catch (IOException e) {
-                                    logger.warn("删除文件失败: {}", path, e);
-                                }
-                            });
+            try {
+                // 删除任务目录
+                if (record.getImages() != null && record.getImages().getTaskId() != null) {
+                    Path taskDir = historyDir.resolve(record.getImages().getTaskId());
+                    if (Files.exists(taskDir)) {
+                        Files.walk(taskDir)
+                                .sorted(Comparator.reverseOrder())
+                                .forEach(path -> {
+                                    try {
+                                        Files.delete(path);
+                                    } catch (IOException e) {
+                                        logger.warn("删除文件失败: {}", path, e);
+                                    }
+                                });
+                    }
                 }
-            }
             
-            // 删除记录文件
-            Path recordFile = historyDir.resolve(recordId + ".json");
-            Files.delete(recordFile);
+                // 删除记录文件
+                Path recordFile = historyDir.resolve(recordId + ".json");
+                Files.delete(recordFile);
             
-            // 从索引中移除
-            updateIndex(record, "delete");
+                // 从索引中移除
+                updateIndex(record, "delete");
+                searchIndex.remove(recordId);
             
-            logger.info("删除历史记录: {}", recordId);
-            return true;
+                logger.info("删除历史记录: {}", recordId);
+                return true;
             
-        } catch (IOException e) {
-            logger.error("删除历史记录失败: {}", recordId, e);
-            return false;
+            } catch (IOException e) {
+                logger.error("删除历史记录失败: {}", recordId, e);
+                return false;
+            }
         }
     }
     
     @Override
-    public PagedResult<HistoryRecord> listRecords(int page, int pageSize, String status) {
-        Map<String, Object> index = loadIndex();
-        List<Map<String, Object>> records = (List<Map<String, Object>>) index.get("records");
+    public PagedResult<HistorySummary> listRecords(int page, int pageSize, String status) {
+        boolean filtered = status != null && !status.trim().isEmpty();
+        long offset = (long) Math.max(page - 1, 0) * Math.max(pageSize, 0);
+        int total;
+        List<HistorySummary> pageRecords = new ArrayList<>();
         
-        if (records == null) {
-            records = new ArrayList<>();
-        }
-        
-        // 状态筛选
-        if (status != null && !status.trim().isEmpty()) {
-            records = records.stream()
-                    .filter(r -> status.equals(r.get("status")))
-                    .collect(Collectors.toList());
-        }
-        
-        int total = records.size();
-        int from = (page - 1) * pageSize;
-        int to = Math.min(from + pageSize, total);
-        
-        List<HistoryRecord> pageRecords = new ArrayList<>();
-        for (int i = from; i < to; i++) {
-            String recordId = (String) records.get(i).get("id");
-            HistoryRecord record = getRecord(recordId);
-            if (record != null) {
-                pageRecords.add(record);
+        // 从最新开始遍历，跳过 offset 条符合条件的记录后取一页；直接返回索引中的摘要，不读取记录文件
+        indexLock.readLock().lock();
+        try {
+            total = filtered ? statusCounts.getOrDefault(status, 0) : index.size();
+            long skipped = 0;
+            if (offset < total && pageSize > 0) {
+                for (HistorySummary record : byRecency.descendingMap().values()) {
+                    if (filtered && !status.equals(record.getStatus())) {
+                        continue;
+                    }
+                    if (skipped < offset) {
+                        skipped++;
+                        continue;
+                    }
+                    pageRecords.add(record);
+                    if (pageRecords.size() >= pageSize) {
+                        break;
+                    }
+                }
             }
+        } finally {
+            indexLock.readLock().unlock();
         }
         
-        PagedResult<HistoryRecord> result = new PagedResult<>();
+        PagedResult<HistorySummary> result = new PagedResult<>();
         result.setRecords(pageRecords);
         result.setTotal(total);
         result.setPage(page);
@@ -197,42 +265,53 @@ public class HistoryServiceImpl implements HistoryService {
     }
     
     @Override
-    public List<HistoryRecord> searchRecords(String keyword) {
-        Map<String, Object> index = loadIndex();
-        List<Map<String, Object>> records = (List<Map<String, Object>>) index.get("records");
+    public PagedResult<HistorySummary> searchRecords(String keyword, int page, int pageSize) {
+        // 只取到当前页末尾的前 N 条
+        long offset = (long) Math.max(page - 1, 0) * Math.max(pageSize, 0);
+        int limit = (int) Math.min(offset + Math.max(pageSize, 0), Integer.MAX_VALUE);
+        HistorySearchIndex.Hits hits = keyword == null || keyword.trim().isEmpty()
+                ? HistorySearchIndex.Hits.EMPTY : searchIndex.search(keyword, limit);
+        List<Map.Entry<String, Double>> ranked = hits.top();
+        
+        int total = hits.total();
+        int from = (int) Math.min(offset, ranked.size());
+        int to = Math.min(from + Math.max(pageSize, 0), ranked.size());
         
-        if (records == null || keyword == null || keyword.trim().isEmpty()) {
-            return new ArrayList<>();
+        List<HistorySummary> pageRecords = new ArrayList<>(to - from);
+        indexLock.readLock().lock();
+        try {
+            for (int i = from; i < to; i++) {
+                HistorySummary summary = index.get(ranked.get(i).getKey());
+                if (summary != null) {
+                    pageRecords.add(summary);
+                }
+            }
+        } finally {
+            indexLock.readLock().unlock();
         }
         
-        String lowerKeyword = keyword.toLowerCase();
+        PagedResult<HistorySummary> result = new PagedResult<>();
+        result.setRecords(pageRecords);
+        result.setTotal(total);
+        result.setPage(page);
+        result.setPageSize(pageSize);
+        result.setTotalPages((total + pageSize - 1) / pageSize);
         
-        return records.stream()
-                .filter(r -> {
-                    String title = (String) r.get("title");
-                    return title != null && title.toLowerCase().contains(lowerKeyword);
-                })
-                .map(r -> {
-                    String recordId = (String) r.get("id");
-                    return getRecord(recordId);
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        return result;
     }
     
     @Override
     public HistoryStats getStatistics() {
-        Map<String, Object> index = loadIndex();
-        List<Map<String, Object>> records = (List<Map<String, Object>>) index.get("records");
-        
-        int total = records != null ? records.size() : 0;
+        int total;
         Map<String, Integer> statusCount = new HashMap<>();
         
-        if (records != null) {
-            for (Map<String, Object> record : records) {
-                String status = (String) record.getOrDefault("status", "draft");
-                statusCount.put(status, statusCount.getOrDefault(status, 0) + 1);
-            }
+        indexLock.readLock().lock();
+        try {
+            total = index.size();
+            statusCounts.forEach((status, count) ->
+                    statusCount.merge(status != null ? status : "draft", count, Integer::sum));
+        } finally {
+            indexLock.readLock().unlock();
         }
         
         HistoryStats stats = new HistoryStats();
@@ -259,27 +338,126 @@ public class HistoryServiceImpl implements HistoryService {
     }
     
     /**
-     * 加载索引
+     * 加载索引：读取快照并重放追加日志（先重放上次未完成压缩的日志段）
+     * 日志末尾的半行（写入时崩溃）会被丢弃，随后立即压缩以清理损坏的日志
      */
-    private Map<String, Object> loadIndex() {
-        if (indexCache != null) {
-            return indexCache;
-        }
-        
+    @SuppressWarnings("unchecked")
+    private void loadIndex() {
+        boolean needsCompact = false;
+        indexLock.writeLock().lock();
         try {
             if (Files.exists(indexFile)) {
-                indexCache = objectMapper.readValue(indexFile.toFile(), Map.class);
+                try {
+                    Map<String, Object> snapshot = objectMapper.readValue(indexFile.toFile(), Map.class);
+                    List<Map<String, Object>> records = (List<Map<String, Object>>) snapshot.get("records");
+                    if (records != null) {
+                        // 快照按最新在前保存，倒序插入使最新的序号最大
+                        for (int i = records.size() - 1; i >= 0; i--) {
+                            HistorySummary record = objectMapper.convertValue(records.get(i), HistorySummary.class);
+                            putSummary(record);
+                        }
+                    }
+                } catch (IOException e) {
+                    logger.error("加载索引快照失败", e);
+                }
+            }
+            
+            boolean corrupted = replayIndexLog(compactingLogFile);
+            corrupted |= replayIndexLog(indexLogFile);
+            
+            logger.info("历史索引加载完成: records={}, replayed={}", index.size(), pendingLogEntries);
+            
+            if (corrupted || pendingLogEntries >= compactThreshold || Files.exists(compactingLogFile)) {
+                needsCompact = true;
             } else {
-                indexCache = new HashMap<>();
-                indexCache.put("records", new ArrayList<>());
+                openIndexLog(StandardOpenOption.APPEND);
             }
         } catch (IOException e) {
-            logger.error("加载索引失败", e);
-            indexCache = new HashMap<>();
-            indexCache.put("records", new ArrayList<>());
+            logger.error("加载索引日志失败", e);
+        } finally {
+            indexLock.writeLock().unlock();
         }
         
-        return indexCache;
+        if (needsCompact) {
+            compact();
+        }
+    }
+    
+    /**
+     * 重放一个日志文件，调用方需持有写锁
+     * @return 日志是否损坏（损坏行及其后的内容被丢弃）
+     */
+    @SuppressWarnings("unchecked")
+    private boolean replayIndexLog(Path logFile) throws IOException {
+        if (!Files.exists(logFile)) {
+            return false;
+        }
+        // 按字节读取后解码，半行中的非法字符不会导致整体读取失败
+        String[] lines = new String(Files.readAllBytes(logFile), StandardCharsets.UTF_8).split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                Map<String, Object> entry = objectMapper.readValue(line, Map.class);
+                HistorySummary record = entry.get("record") != null ?
+                        objectMapper.convertValue(entry.get("record"), HistorySummary.class) : null;
+                applyLogEntry((String) entry.get("op"), (String) entry.get("id"), record);
+                pendingLogEntries++;
+            } catch (IOException e) {
+                logger.warn("索引日志 {} 第 {} 行损坏，丢弃其后的内容", logFile.getFileName(), i + 1);
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void applyLogEntry(String op, String id, HistorySummary record) {
+        if ("delete".equals(op)) {
+            removeSummary(id);
+        } else {
+            putSummary(record);
+        }
+    }
+    
+    /**
+     * 插入或替换摘要，并作为最新的记录，调用方需持有写锁
+     */
+    private void putSummary(HistorySummary record) {
+        removeSummary(record.getId());
+        long sequence = nextSequence++;
+        index.put(record.getId(), record);
+        byRecency.put(sequence, record);
+        sequences.put(record.getId(), sequence);
+        statusCounts.merge(record.getStatus(), 1, Integer::sum);
+    }
+    
+    /**
+     * 移除摘要，调用方需持有写锁
+     */
+    private void removeSummary(String id) {
+        HistorySummary previous = index.remove(id);
+        if (previous == null) {
+            return;
+        }
+        Long sequence = sequences.remove(id);
+        if (sequence != null) {
+            byRecency.remove(sequence);
+        }
+        statusCounts.computeIfPresent(previous.getStatus(), (status, count) -> count > 1 ? count - 1 : null);
+    }
+    
+    /**
+     * 按最新在前返回索引记录副本（只用于启动时构建全文索引）
+     */
+    private List<HistorySummary> indexRecords() {
+        indexLock.readLock().lock();
+        try {
+            return new ArrayList<>(byRecency.descendingMap().values());
+        } finally {
+            indexLock.readLock().unlock();
+        }
     }
     
     /**
@@ -295,40 +473,239 @@ public class HistoryServiceImpl implements HistoryService {
     }
     
     /**
-     * 更新索引
+     * 更新索引：修改内存索引并追加一行日志
      */
-    @SuppressWarnings("unchecked")
     private void updateIndex(HistoryRecord record, String operation) {
-        Map<String, Object> index = loadIndex();
-        List<Map<String, Object>> records = (List<Map<String, Object>>) index.get("records");
+        HistorySummary indexRecord = new HistorySummary();
+        indexRecord.setId(record.getId());
+        indexRecord.setTitle(record.getTitle());
+        indexRecord.setCreatedAt(record.getCreatedAt());
+        indexRecord.setUpdatedAt(record.getUpdatedAt());
+        indexRecord.setStatus(record.getStatus());
+        indexRecord.setThumbnail(record.getThumbnail());
+        indexRecord.setPageCount(record.getOutline() != null && record.getOutline().getPages() != null ?
+                record.getOutline().getPages().size() : 0);
+        indexRecord.setTaskId(record.getImages() != null ? record.getImages().getTaskId() : null);
         
-        Map<String, Object> indexRecord = Map.of(
-                "id", record.getId(),
-                "title", record.getTitle(),
-                "createdAt", record.getCreatedAt(),
-                "updatedAt", record.getUpdatedAt(),
-                "status", record.getStatus(),
-                "thumbnail", record.getThumbnail(),
-                "pageCount", record.getOutline() != null && record.getOutline().getPages() != null ? 
-                    record.getOutline().getPages().size() : 0,
-                "taskId", record.getImages() != null ? record.getImages().getTaskId() : null
-        );
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("op", operation);
+        if ("delete".equals(operation)) {
+            entry.put("id", record.getId());
+        } else {
+            entry.put("record", indexRecord);
+        }
         
-        switch (operation) {
-            case "create":
-                records.add(0, indexRecord); // 添加到开头
-                break;
-            case "update":
-                records.removeIf(r -> record.getId().equals(r.get("id")));
-                records.add(0, indexRecord);
-                break;
-            case "delete":
-                records.removeIf(r -> record.getId().equals(r.get("id")));
-                break;
+        indexLock.writeLock().lock();
+        try {
+            applyLogEntry(operation, record.getId(), indexRecord);
+            appendIndexLog(entry);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 追加日志，调用方需持有写锁
+     */
+    private void appendIndexLog(Map<String, Object> entry) {
+        try {
+            if (indexLogWriter == null) {
+                openIndexLog(StandardOpenOption.APPEND);
+            }
+            indexLogWriter.write(objectMapper.writeValueAsString(entry));
+            indexLogWriter.newLine();
+            indexLogWriter.flush();
+            pendingLogEntries++;
+        } catch (IOException e) {
+            logger.error("追加索引日志失败", e);
+        }
+    }
+    
+    private void openIndexLog(StandardOpenOption mode) throws IOException {
+        if (indexLogWriter != null) {
+            indexLogWriter.close();
+        }
+        indexLogWriter = Files.newBufferedWriter(indexLogFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode);
+    }
+    
+    /**
+     * 定期检查，日志条数达到阈值时压缩
+     */
+    @Scheduled(fixedDelayString = "${redink.history.compact-interval:60000}")
+    public void compactIfNeeded() {
+        int pending;
+        indexLock.readLock().lock();
+        try {
+            pending = pendingLogEntries;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        if (pending >= compactThreshold) {
+            compact();
+        }
+    }
+    
+    /**
+     * 压缩：写锁内只复制索引并轮转日志，快照序列化和写入在锁外完成，不阻塞查询和变更
+     * 快照写入临时文件后原子替换 index.json，再删除轮转出的日志段；
+     * 替换后、删除前崩溃时，重放的日志是幂等的。调用方不能持有 indexLock
+     */
+    private void compact() {
+        synchronized (compactLock) {
+            List<HistorySummary> records;
+            int compacted;
+            indexLock.writeLock().lock();
+            try {
+                // 摘要对象在变更时整体替换，不会原地修改，浅拷贝即为一致的快照（最新在前）
+                records = new ArrayList<>(byRecency.descendingMap().values());
+                compacted = pendingLogEntries;
+                rotateIndexLog();
+                pendingLogEntries = 0;
+            } catch (IOException e) {
+                logger.error("轮转索引日志失败", e);
+                return;
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            
+            try {
+                Map<String, Object> snapshot = new HashMap<>();
+                snapshot.put("records", records);
+                
+                Path tmpFile = historyDir.resolve("index.json.tmp");
+                objectMapper.writeValue(tmpFile.toFile(), snapshot);
+                Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(compactingLogFile);
+                logger.info("历史索引压缩完成: records={}, compactedEntries={}", records.size(), compacted);
+            } catch (IOException e) {
+                // 轮转出的日志段保留，下次压缩时并入，条数计回待压缩数
+                logger.error("历史索引压缩失败", e);
+                indexLock.writeLock().lock();
+                try {
+                    pendingLogEntries += compacted;
+                } finally {
+                    indexLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+    
+    /**
+     * 把当前日志移到压缩中的日志段并打开新的空日志，调用方需持有写锁
+     * 上次压缩失败遗留的日志段存在时，把当前日志追加到其后
+     */
+    private void rotateIndexLog() throws IOException {
+        if (indexLogWriter != null) {
+            indexLogWriter.close();
+            indexLogWriter = null;
+        }
+        if (Files.exists(indexLogFile)) {
+            if (Files.exists(compactingLogFile)) {
+                Files.write(compactingLogFile, Files.readAllBytes(indexLogFile), StandardOpenOption.APPEND);
+                Files.delete(indexLogFile);
+            } else {
+                Files.move(indexLogFile, compactingLogFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        openIndexLog(StandardOpenOption.TRUNCATE_EXISTING);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        Thread indexer = searchIndexer;
+        if (indexer != null) {
+            indexer.interrupt();
+        }
+        synchronized (compactLock) {
+            boolean pending;
+            indexLock.readLock().lock();
+            try {
+                pending = pendingLogEntries > 0 || Files.exists(compactingLogFile);
+            } finally {
+                indexLock.readLock().unlock();
+            }
+            if (pending) {
+                compact();
+            }
+            indexLock.writeLock().lock();
+            try {
+                if (indexLogWriter != null) {
+                    indexLogWriter.close();
+                    indexLogWriter = null;
+                }
+            } catch (IOException e) {
+                logger.warn("关闭索引日志失败", e);
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+        }
+    }
+    
+    /**
+     * 构建全文索引
+     * 标题在内存索引中，同步建立；大纲内容需读取记录文件，在后台线程中补充
+     */
+    private void buildSearchIndex() {
+        List<HistorySummary> summaries = indexRecords();
+        for (HistorySummary summary : summaries) {
+            searchIndex.index(summary.getId(), summary.getTitle(), null);
         }
         
-        saveIndex(index);
-        indexCache = index; // 更新缓存
+        Thread indexer = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            for (HistorySummary summary : summaries) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                String recordId = summary.getId();
+                synchronized (recordLock(recordId)) {
+                    // 期间被删除或已由更新重建的记录跳过
+                    HistoryRecord record = searchIndex.contains(recordId) ? getRecord(recordId) : null;
+                    if (record != null) {
+                        searchIndex.index(recordId, record.getTitle(), outlineText(record.getOutline()));
+                    }
+                }
+            }
+            logger.info("历史全文索引构建完成: records={}, 耗时={}ms", summaries.size(),
+                    System.currentTimeMillis() - start);
+        }, "history-search-indexer");
+        indexer.setDaemon(true);
+        searchIndexer = indexer;
+        indexer.start();
+    }
+    
+    /**
+     * 等待后台全文索引构建完成
+     */
+    void awaitSearchIndex() throws InterruptedException {
+        Thread indexer = searchIndexer;
+        if (indexer != null) {
+            indexer.join();
+        }
+    }
+    
+    /**
+     * 拼接大纲各页内容用于全文索引
+     */
+    private String outlineText(OutlineResult outline) {
+        if (outline == null) {
+            return null;
+        }
+        if (outline.getPages() == null || outline.getPages().isEmpty()) {
+            return outline.getOutline();
+        }
+        StringBuilder text = new StringBuilder();
+        for (com.redink.model.Page page : outline.getPages()) {
+            if (page.getContent() != null) {
+                text.append(page.getContent()).append('\n');
+            }
+        }
+        return text.toString();
+    }
+    
+    private Object recordLock(String recordId) {
+        return recordLocks[(recordId.hashCode() & 0x7fffffff) % recordLocks.length];
     }
     
     /**
@@ -0,0 +1,167 @@
+package com.redink.service.impl;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 图片服务商当天费用账本
+ * 按服务商名称记录当天已预占的费用，独立于路由对象：配置重新加载重建路由后已花费的额度仍然有效；
+ * 定期及关闭时写入文件（默认 history/image_costs.json），重启后继续累计当天费用。
+ * 进程异常退出时最多丢失最近一个写入周期内的费用
+ */
+@Component
+public class ImageCostLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageCostLedger.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Path costFile;
+
+    // 服务商名称 -> 当天费用
+    private final Map<String, DailyCost> costs = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    public ImageCostLedger(@Value("${redink.image.routing.cost-file:history/image_costs.json}") String costFile) {
+        this.costFile = Paths.get(costFile);
+        load();
+    }
+
+    /**
+     * 当天费用加上一张图片后是否仍在上限内
+     * @param cap 当天上限，不大于 0 表示不限制
+     */
+    boolean withinCap(String provider, double costPerImage, double cap) {
+        return cap <= 0 || cost(provider).spent(LocalDate.now()) + costPerImage <= cap;
+    }
+
+    /**
+     * 预占一张图片的费用
+     * @return 费用所属日期，超出当天上限时返回 null
+     */
+    LocalDate reserve(String provider, double costPerImage, double cap) {
+        LocalDate day = cost(provider).reserve(LocalDate.now(), costPerImage, cap);
+        if (day != null && costPerImage > 0) {
+            dirty.set(true);
+        }
+        return day;
+    }
+
+    /**
+     * 退还预占的费用（跨天后不再退还）
+     */
+    void refund(String provider, LocalDate day, double costPerImage) {
+        if (cost(provider).refund(day, costPerImage)) {
+            dirty.set(true);
+        }
+    }
+
+    private DailyCost cost(String provider) {
+        return costs.computeIfAbsent(provider, name -> new DailyCost(LocalDate.now(), 0));
+    }
+
+    @Scheduled(fixedDelayString = "${redink.image.routing.cost-flush-interval:5000}")
+    public void flush() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+        costs.forEach((provider, cost) -> snapshot.put(provider, cost.toMap()));
+        try {
+            Files.createDirectories(costFile.toAbsolutePath().getParent());
+            TaskPayloadFiles.writeAtomically(costFile, objectMapper.writeValueAsBytes(snapshot));
+        } catch (IOException e) {
+            dirty.set(true);
+            logger.warn("写入图片服务商费用失败: {}", costFile, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void load() {
+        if (!Files.exists(costFile)) {
+            return;
+        }
+        try {
+            Map<String, Map<String, Object>> stored = objectMapper.readValue(costFile.toFile(),
+                    new TypeReference<Map<String, Map<String, Object>>>() {});
+            LocalDate today = LocalDate.now();
+            stored.forEach((provider, value) -> {
+                LocalDate day = LocalDate.parse(String.valueOf(value.get("day")));
+                if (day.equals(today) && value.get("spent") instanceof Number spent) {
+                    costs.put(provider, new DailyCost(day, spent.doubleValue()));
+                }
+            });
+            logger.info("加载图片服务商当天费用: {}", costs.keySet());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("读取图片服务商费用失败，从 0 开始计算: {}", costFile, e);
+        }
+    }
+
+    /**
+     * 单个服务商的当天费用，跨天后清零
+     */
+    private static final class DailyCost {
+        private LocalDate day;
+        private double spent;
+
+        DailyCost(LocalDate day, double spent) {
+            this.day = day;
+            this.spent = spent;
+        }
+
+        synchronized double spent(LocalDate today) {
+            roll(today);
+            return spent;
+        }
+
+        synchronized LocalDate reserve(LocalDate today, double costPerImage, double cap) {
+            roll(today);
+            if (cap > 0 && spent + costPerImage > cap) {
+                return null;
+            }
+            spent += costPerImage;
+            return day;
+        }
+
+        synchronized boolean refund(LocalDate costDay, double costPerImage) {
+            if (!costDay.equals(day) || costPerImage <= 0) {
+                return false;
+            }
+            spent = Math.max(0, spent - costPerImage);
+            return true;
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("day", day.toString());
+            map.put("spent", spent);
+            return map;
+        }
+
+        private void roll(LocalDate today) {
+            if (!today.equals(day)) {
+                day = today;
+                spent = 0;
+            }
+        }
+    }
+}
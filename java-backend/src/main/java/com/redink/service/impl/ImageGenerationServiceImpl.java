@@ -2,194 +2,784 @@ package com.redink.service.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.redink.config.ConfigManager;
+import com.redink.config.ExecutorConfig;
+import com.redink.exception.ProviderUnavailableException;
+import com.redink.model.OutlineResult;
 import com.redink.model.TaskState;
 import com.redink.service.ImageGenerationService;
+import com.redink.service.OutlineGenerationService;
+import com.redink.service.TaskStateRepository;
+import com.redink.util.Digests;
+import com.redink.util.ImageDerivatives;
 import com.redink.util.ImageUtils;
+import com.redink.util.SingleFlight;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import net.coobird.thumbnailator.Thumbnails;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.ai.openai.OpenAiImageModel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.redink.util.ImageUtils.compressImage;
 
 /**
- * 图片生成服务实现（简化版）
- * 暂时返回错误提示，等待AI服务配置
+ * 图片生成服务实现
+ * 封面和其余页面并发生成，封面保存在任务状态中（图片接口只接收文本提示词，封面不作为参考图发送）；
+ * 也可以直接从主题开始，大纲边生成边把页面送入渲染流水线（大纲流式输出期间不占用执行器线程）。
+ * 事件经 TaskEventHub 推送，SseEmitter 和 Flux 两种订阅方式共用同一个任务
  */
 @Service
 public class ImageGenerationServiceImpl implements ImageGenerationService {
-    
+
     private static final Logger logger = LoggerFactory.getLogger(ImageGenerationServiceImpl.class);
-    
+
     private final ConfigManager configManager;
-    private final OpenAiImageModel openAiImageModel;
-    
-    private final ExecutorService executorService = Executors.newFixedThreadPool(15);
-    private final Map<String, TaskState> taskStates = new ConcurrentHashMap<>();
-    
+    private final ImageProviderRouter imageRouter;
+    private final OutlineGenerationService outlineService;
+    private final ImageResultCache resultCache;
+    private final RenderJobJournal jobJournal;
+    private final ImageDerivatives imageDerivatives;
+    private final TaskEventHub eventHub;
+
+    // 单个任务同时在途的页面数上限
+    private final int perTaskConcurrent;
+    // 单页自动重试次数
+    private final int autoRetry;
+
+    private final ExecutorService executorService;
+    private final Scheduler executorScheduler;
+    private final TaskStateRepository taskStates;
+
+    // 按 (taskId, 页面索引, 提示词摘要) 合并重复的重试/重新生成请求
+    private final SingleFlight<String, Map<String, Object>> retryFlight = new SingleFlight<>();
+
+    private final Path historyDir = Paths.get("history");
+
+    // 应用关闭中：生成执行器只 shutdown 不中断线程，进行中的页面据此判断是否因退出而中断
+    private volatile boolean stopping;
+
     // 默认宽高比
     private static final String DEFAULT_ASPECT_RATIO = "3:4";
-    
+
     public ImageGenerationServiceImpl(ConfigManager configManager,
-                                     OpenAiImageModel openAiImageModel) {
+                                     ImageProviderRouter imageRouter,
+                                     OutlineGenerationService outlineService,
+                                     ImageResultCache resultCache,
+                                     RenderJobJournal jobJournal,
+                                     ImageDerivatives imageDerivatives,
+                                     TaskEventHub eventHub,
+                                     TaskStateRepository taskStates,
+                                     MeterRegistry meterRegistry,
+                                     @Qualifier(ExecutorConfig.GENERATION_EXECUTOR) ExecutorService executorService,
+                                     @Value("${redink.image.per-task-concurrent:4}") int perTaskConcurrent,
+                                     @Value("${redink.image.auto-retry:3}") int autoRetry) {
         this.configManager = configManager;
-        this.openAiImageModel = openAiImageModel;
+        this.imageRouter = imageRouter;
+        this.outlineService = outlineService;
+        this.resultCache = resultCache;
+        this.jobJournal = jobJournal;
+        this.imageDerivatives = imageDerivatives;
+        this.eventHub = eventHub;
+        this.taskStates = taskStates;
+        this.executorService = executorService;
+        this.executorScheduler = Schedulers.fromExecutorService(executorService);
+        this.perTaskConcurrent = Math.max(1, perTaskConcurrent);
+        this.autoRetry = Math.max(1, autoRetry);
+
+        FunctionCounter.builder("redink.image.retry.requests", retryFlight, SingleFlight::executedCount)
+                .tag("result", "executed")
+                .description("单页重试/重新生成请求数")
+                .register(meterRegistry);
+        FunctionCounter.builder("redink.image.retry.requests", retryFlight, SingleFlight::coalescedCount)
+                .tag("result", "coalesced")
+                .description("单页重试/重新生成请求数")
+                .register(meterRegistry);
+        Gauge.builder("redink.image.retry.in.flight", retryFlight, SingleFlight::inFlightCount)
+                .description("进行中的单页重试/重新生成调用数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 先于生成执行器关闭执行（本服务依赖执行器），此后结束的页面不记为失败也不记为完成，重启后继续生成
+     */
+    @PreDestroy
+    public void stop() {
+        stopping = true;
     }
-    
+
     @Override
-    public SseEmitter generateImages(List<com.redink.model.Page> pages, String taskId, 
+    public SseEmitter generateImages(List<com.redink.model.Page> pages, String taskId,
                                     String fullOutline, String userTopic, byte[][] userImages) {
-        SseEmitter emitter = new SseEmitter(300000L); // 5分钟超时
-        
+        eventHub.open(taskId);
+        SseEmitter emitter = eventHub.subscribe(taskId, null);
+        startImages(pages, taskId, fullOutline, userTopic, userImages);
+        return emitter;
+    }
+
+    @Override
+    public Flux<ServerSentEvent<Object>> generateImagesFlux(List<com.redink.model.Page> pages, String taskId,
+                                                            String fullOutline, String userTopic,
+                                                            byte[][] userImages) {
+        eventHub.open(taskId);
+        Flux<ServerSentEvent<Object>> events = eventHub.subscribeFlux(taskId, null);
+        startImages(pages, taskId, fullOutline, userTopic, userImages);
+        return events;
+    }
+
+    @Override
+    public SseEmitter generateFromTopic(String topic, String taskId, byte[][] userImages) {
+        eventHub.open(taskId);
+        SseEmitter emitter = eventHub.subscribe(taskId, null);
+        startFromTopic(topic, taskId, userImages);
+        return emitter;
+    }
+
+    @Override
+    public Flux<ServerSentEvent<Object>> generateFromTopicFlux(String topic, String taskId, byte[][] userImages) {
+        eventHub.open(taskId);
+        Flux<ServerSentEvent<Object>> events = eventHub.subscribeFlux(taskId, null);
+        startFromTopic(topic, taskId, userImages);
+        return events;
+    }
+
+    /**
+     * 开始按给定页面生成，事件流需已打开
+     */
+    private void startImages(List<com.redink.model.Page> pages, String taskId,
+                             String fullOutline, String userTopic, byte[][] userImages) {
+        TaskState state = new TaskState();
+        state.setGenerated(new ConcurrentHashMap<>());
+        state.setFailed(new ConcurrentHashMap<>());
+        state.setFullOutline(fullOutline);
+        state.setUserTopic(userTopic);
+        taskStates.put(taskId, state);
+
+        RenderPipeline pipeline = new RenderPipeline(taskId, state);
+
         CompletableFuture.runAsync(() -> {
             try {
-                executeImageGeneration(pages, taskId, fullOutline, userTopic, userImages, emitter);
+                state.setUserImages(compressUserImages(userImages));
+                taskStates.updateContext(taskId, state);
+                journalTaskStarted(taskId, state);
+
+                // 没有封面类型时，使用第一页作为封面
+                com.redink.model.Page cover = pages.stream()
+                        .filter(p -> "cover".equals(p.getType()))
+                        .findFirst()
+                        .orElse(pages.isEmpty() ? null : pages.get(0));
+                if (cover != null) {
+                    pipeline.offer(cover, true);
+                }
+                for (com.redink.model.Page page : pages) {
+                    if (page != cover) {
+                        pipeline.offer(page, false);
+                    }
+                }
             } catch (Exception e) {
                 logger.error("图片生成任务失败: taskId={}", taskId, e);
-                try {
-                    emitter.complete();
-                } catch (Exception ex) {
-                    logger.warn("SSE发射器完成失败", ex);
-                }
+                pipeline.safeSend("error", Map.of("message", "生成失败: " + e.getMessage()));
+            } finally {
+                pipeline.close();
             }
         }, executorService);
-        
-        return emitter;
     }
-    
-    private void executeImageGeneration(List<com.redink.model.Page> pages, String taskId,
-                                       String fullOutline, String userTopic, byte[][] userImages,
-                                       SseEmitter emitter) {
-        try {
-            // 发送开始事件
-            sendSseEvent(emitter, "progress", createProgressData(0, pages.size(), "AI服务暂时不可用"));
-            
-            // 发送完成事件，提示需要配置AI服务
-            sendSseEvent(emitter, "finish", Map.of(
-                "success", false,
-                "taskId", taskId,
-                "total", pages.size(),
-                "completed", 0,
-                "failed", pages.size(),
-                "failedIndices", new ArrayList<>(Arrays.asList(0, 1, 2, 3, 4, 5)),
-                "error", "AI图片生成服务未配置。请设置 OPENAI_API_KEY 环境变量以启用 OpenAI 图片生成功能。"
-            ));
-            
-        } catch (Exception e) {
-            logger.error("图片生成异常", e);
-            try {
-                sendSseEvent(emitter, "error", Map.of("message", "生成失败: " + e.getMessage()));
-            } catch (IOException ex) {
-                logger.warn("发送SSE事件失败", ex);
+
+    /**
+     * 从主题开始生成，事件流需已打开
+     * 用户图片压缩和任务日志在执行器中完成；大纲流式输出期间不占用线程，
+     * 每解析出一页立即进入渲染流水线：第一页作为封面，与其余页面并发生成
+     */
+    private void startFromTopic(String topic, String taskId, byte[][] userImages) {
+        TaskState state = new TaskState();
+        state.setGenerated(new ConcurrentHashMap<>());
+        state.setFailed(new ConcurrentHashMap<>());
+        state.setUserTopic(topic);
+        taskStates.put(taskId, state);
+
+        RenderPipeline pipeline = new RenderPipeline(taskId, state);
+        AtomicBoolean coverAssigned = new AtomicBoolean();
+
+        Mono.fromRunnable(() -> {
+                    state.setUserImages(compressUserImages(userImages));
+                    taskStates.updateContext(taskId, state);
+                    journalTaskStarted(taskId, state);
+                })
+                .subscribeOn(executorScheduler)
+                .then(Mono.defer(() -> outlineService.streamOutlineAsync(topic, userImages, page -> {
+                    pipeline.safeSend("outline_page", page);
+                    pipeline.offer(page, coverAssigned.compareAndSet(false, true));
+                })))
+                // 已进入流水线的页面继续生成，全部结束后推送 finish
+                .doFinally(signal -> pipeline.close())
+                .subscribe(outline -> {
+                    state.setFullOutline(outline.getOutline());
+                    taskStates.updateContext(taskId, state);
+
+                    Map<String, Object> data = new LinkedHashMap<>();
+                    data.put("taskId", taskId);
+                    data.put("outline", outline);
+                    pipeline.safeSend("outline_complete", data);
+                }, e -> {
+                    logger.error("大纲生成失败: taskId={}", taskId, e);
+                    pipeline.safeSend("error", Map.of("message", "生成失败: " + e.getMessage()));
+                });
+    }
+
+    @Override
+    public Map<String, Object> retrySingleImage(String taskId, com.redink.model.Page page,
+                                              boolean useReference, String fullOutline, String userTopic,
+                                              boolean useCache) {
+        TaskState state = taskStates.get(taskId);
+        byte[][] userImages = null;
+
+        // 优先使用任务状态中的上下文
+        if (state != null) {
+            if (fullOutline == null || fullOutline.isEmpty()) {
+                fullOutline = state.getFullOutline();
             }
-        } finally {
-            try {
-                emitter.complete();
-            } catch (Exception e) {
-                logger.warn("SSE发射器完成失败", e);
+            if (userTopic == null || userTopic.isEmpty()) {
+                userTopic = state.getUserTopic();
             }
+            userImages = state.getUserImages();
         }
+
+        // 重复点击或客户端重连导致的并发重复请求共享同一次生成；
+        // 是否使用缓存也是键的一部分，强制重新生成的请求不会拿到走缓存的结果。
+        // 参考图不会发送给服务商（见 generateSingleImage），useReference 不影响结果，不参与键
+        String prompt = buildPrompt(page, fullOutline, userTopic);
+        String flightKey = taskId + ":" + page.getIndex() + ":" + useCache + ":" + Digests.sha256Hex(prompt);
+        String outline = fullOutline;
+        String topic = userTopic;
+        byte[][] images = userImages;
+        return retryFlight.execute(flightKey,
+                () -> regenerate(taskId, page, state, outline, topic, images, useCache));
     }
-    
-    @Override
-    public Map<String, Object> retrySingleImage(String taskId, com.redink.model.Page page, 
-                                              boolean useReference, String fullOutline, String userTopic) {
+
+    /**
+     * 生成单页并记录到任务状态
+     */
+    private Map<String, Object> regenerate(String taskId, com.redink.model.Page page, TaskState state,
+                                           String fullOutline, String userTopic,
+                                           byte[][] userImages, boolean useCache) {
+        GenerateResult result = generateSingleImage(page, taskId, fullOutline, userTopic, userImages, useCache);
+
+        if (result.success) {
+            if (state != null) {
+                taskStates.markGenerated(taskId, result.index, result.filename);
+            }
+            return Map.of(
+                "success", true,
+                "index", result.index,
+                "imageUrl", imageUrl(taskId, result.filename)
+            );
+        }
+
         return Map.of(
             "success", false,
-            "index", page.getIndex(),
-            "error", "AI服务不可用，请配置 OPENAI_API_KEY",
+            "index", result.index,
+            "error", result.error,
             "retryable", true
         );
     }
-    
+
     @Override
     public Map<String, Object> regenerateImage(String taskId, com.redink.model.Page page,
-                                             boolean useReference, String fullOutline, String userTopic) {
-        return retrySingleImage(taskId, page, useReference, fullOutline, userTopic);
+                                             boolean useReference, String fullOutline, String userTopic,
+                                             boolean useCache) {
+        return retrySingleImage(taskId, page, useReference, fullOutline, userTopic, useCache);
+    }
+
+    @Override
+    public SseEmitter subscribeEvents(String taskId, String lastEventId) {
+        return eventHub.subscribe(taskId, lastEventId);
+    }
+
+    @Override
+    public Flux<ServerSentEvent<Object>> subscribeEventsFlux(String taskId, String lastEventId) {
+        return eventHub.subscribeFlux(taskId, lastEventId);
     }
-    
+
     @Override
     public TaskState getTaskState(String taskId) {
         return taskStates.get(taskId);
     }
-    
+
     @Override
     public void cleanupTask(String taskId) {
         taskStates.remove(taskId);
     }
-    
+
     /**
-     * 生成单张图片（简化版）
+     * 启动后继续生成上次进程退出时未完成的任务
+     * 原 SSE 连接已断开，结果写入任务状态和 history 目录，客户端可重新订阅事件
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeJournaledTasks() {
+        for (RenderJobJournal.Job job : jobJournal.takeRecoveredJobs()) {
+            try {
+                resume(job);
+            } catch (Exception e) {
+                logger.error("恢复图片生成任务失败: taskId={}", job.taskId, e);
+            }
+        }
+    }
+
+    private void resume(RenderJobJournal.Job job) throws IOException {
+        String taskId = job.taskId;
+        TaskState state = taskStates.get(taskId);
+        if (state == null) {
+            state = new TaskState();
+            state.setGenerated(new ConcurrentHashMap<>());
+            state.setFailed(new ConcurrentHashMap<>());
+        }
+        state.setFullOutline(job.fullOutline);
+        state.setUserTopic(job.userTopic);
+        state.setUserImages(TaskPayloadFiles.readUserImages(taskId, job.userImageCount));
+
+        // 恢复时没有订阅者：事件全部保留，重启前的客户端重新订阅后从头接收
+        eventHub.openRecovered(taskId);
+        RenderPipeline pipeline = new RenderPipeline(taskId, state);
+        Integer coverIndex = job.coverIndex;
+        if (coverIndex == null || job.done.contains(coverIndex) || imageSaved(taskId, coverIndex)) {
+            if (coverIndex != null) {
+                state.setCoverImage(loadCoverImage(taskId, coverIndex + ".png"));
+            }
+        }
+        taskStates.put(taskId, state);
+
+        int resumed = 0;
+        for (com.redink.model.Page page : job.pages.values()) {
+            int index = page.getIndex();
+            if (imageSaved(taskId, index)) {
+                // 已生成的页面不再调用服务商（可能是 done 写入日志前进程退出）
+                taskStates.markGenerated(taskId, index, index + ".png");
+                if (!job.done.contains(index)) {
+                    jobJournal.pageDone(taskId, index);
+                }
+            } else if (!job.done.contains(index)) {
+                pipeline.offer(page, coverIndex != null && index == coverIndex);
+                resumed++;
+            }
+        }
+        if (!job.closed) {
+            logger.warn("任务中断时大纲尚未生成完，只继续生成已解析的页面: taskId={}", taskId);
+        }
+        logger.info("恢复图片生成任务: taskId={}, pages={}, resumed={}", taskId, job.pages.size(), resumed);
+        pipeline.close();
+    }
+
+    private boolean imageSaved(String taskId, int index) {
+        return Files.exists(historyDir.resolve(taskId).resolve(index + ".png"));
+    }
+
+    /**
+     * 记录任务开始；用户图片写入文件，恢复时读取
+     */
+    private void journalTaskStarted(String taskId, TaskState state) {
+        if (!jobJournal.isEnabled()) {
+            return;
+        }
+        byte[][] images = state.getUserImages();
+        try {
+            TaskPayloadFiles.writeUserImages(taskId, images);
+        } catch (IOException e) {
+            logger.warn("保存用户图片失败，恢复任务时将不使用用户图片: taskId={}", taskId, e);
+        }
+        jobJournal.taskStarted(taskId, state.getFullOutline(), state.getUserTopic(),
+                images != null ? images.length : 0);
+    }
+
+    /**
+     * 单个任务的渲染流水线
+     * 页面可以一次性加入，也可以随大纲流式解析逐页加入：
+     * 封面排在队首，与其余页面一起以 perTaskConcurrent 为窗口提交到共享执行器（图片接口不接收参考图，
+     * 内容页不依赖封面，无需等待封面完成；封面也占用窗口，单任务在途的服务商调用不超过窗口），
+     * 每页完成即推送 complete/error 事件；close 之后最后一页完成时推送 finish。
+     * 页面在提交前写入任务日志，进程退出导致中断的页面不记为结束，重启后继续生成
+     */
+    private class RenderPipeline {
+        final String taskId;
+        final TaskState state;
+        // 等待提交的页面，封面在队首
+        final Deque<Slot> pending = new ConcurrentLinkedDeque<>();
+        // 已加入的页数，close 之后即总页数
+        final AtomicInteger offered = new AtomicInteger();
+        // 已加入但尚未结束的页数
+        final AtomicInteger remaining = new AtomicInteger();
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicBoolean finished = new AtomicBoolean();
+        // 有页面因进程退出被中断，任务留在日志中等待恢复
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final List<String> generatedImages = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> failedIndices = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean closed;
+        final AtomicBoolean batchStarted = new AtomicBoolean();
+        // 由 this 保护
+        int inFlight;
+
+        RenderPipeline(String taskId, TaskState state) {
+            this.taskId = taskId;
+            this.state = state;
+        }
+
+        /**
+         * 加入一页；封面排在队首，其余页面按加入顺序排队
+         * @param cover 是否作为封面（每个任务只应有一页）
+         */
+        void offer(com.redink.model.Page page, boolean cover) {
+            offered.incrementAndGet();
+            remaining.incrementAndGet();
+            jobJournal.pageQueued(taskId, page, cover);
+            if (cover) {
+                pending.addFirst(new Slot(page, "cover"));
+            } else {
+                if (batchStarted.compareAndSet(false, true)) {
+                    safeSend("progress", Map.of(
+                        "status", "batch_start",
+                        "message", "开始并发生成内容页...",
+                        "current", generatedImages.size(),
+                        "total", offered.get(),
+                        "phase", "content"
+                    ));
+                }
+                pending.addLast(new Slot(page, "content"));
+            }
+            pump();
+        }
+
+        /**
+         * 不再有新页面加入；所有页面结束后推送 finish
+         */
+        void close() {
+            closed = true;
+            jobJournal.pagesClosed(taskId, state.getFullOutline());
+            if (remaining.get() == 0) {
+                finish();
+            }
+        }
+
+        /**
+         * 按窗口提交排队的页面；每页结束后再补位，保证单任务在途数不超过窗口
+         */
+        void pump() {
+            while (true) {
+                Slot slot;
+                synchronized (this) {
+                    if (inFlight >= perTaskConcurrent || (slot = pending.pollFirst()) == null) {
+                        return;
+                    }
+                    inFlight++;
+                }
+                try {
+                    executorService.execute(() -> {
+                        try {
+                            render(slot.page(), slot.phase());
+                        } finally {
+                            synchronized (this) {
+                                inFlight--;
+                            }
+                            pump();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    rejected(slot);
+                }
+            }
+        }
+
+        /**
+         * 执行器已关闭（应用退出）：撤销计数并推送错误，页面留在任务日志中，重启后继续生成
+         */
+        void rejected(Slot slot) {
+            int index = slot.page().getIndex();
+            synchronized (this) {
+                inFlight--;
+            }
+            interrupted.set(true);
+            failedIndices.add(index);
+            logger.warn("执行器已关闭，页面未提交: taskId={}, index={}", taskId, index);
+            safeSend("error", Map.of(
+                "index", index,
+                "status", "error",
+                "message", "服务正在关闭，页面将在重启后继续生成",
+                "retryable", true,
+                "phase", slot.phase()
+            ));
+            if (remaining.decrementAndGet() == 0 && closed) {
+                finish();
+            }
+        }
+
+        void render(com.redink.model.Page page, String phase) {
+            int index = page.getIndex();
+            try {
+                safeSend("progress", Map.of(
+                    "index", index,
+                    "status", "generating",
+                    "current", started.incrementAndGet(),
+                    "total", offered.get(),
+                    "phase", phase
+                ));
+
+                GenerateResult result = generateSingleImage(page, taskId,
+                        state.getFullOutline(), state.getUserTopic(), state.getUserImages(), true);
+
+                if (result.success) {
+                    taskStates.markGenerated(taskId, index, result.filename);
+                    generatedImages.add(result.filename);
+                    if ("cover".equals(phase)) {
+                        // 封面压缩后只保存在任务状态中（封面状态），不会发送给服务商
+                        state.setCoverImage(loadCoverImage(taskId, result.filename));
+                        taskStates.updateContext(taskId, state);
+                    }
+                    safeSend("complete", Map.of(
+                        "index", index,
+                        "status", "done",
+                        "imageUrl", imageUrl(taskId, result.filename),
+                        "phase", phase
+                    ));
+                } else if (!halted()) {
+                    markFailed(index, result.error, phase);
+                }
+            } catch (Exception e) {
+                if (!halted()) {
+                    logger.error("页面生成异常: taskId={}, index={}", taskId, index, e);
+                    markFailed(index, e.getMessage(), phase);
+                }
+            } finally {
+                if (halted()) {
+                    interrupted.set(true);
+                } else {
+                    jobJournal.pageDone(taskId, index);
+                }
+                if (remaining.decrementAndGet() == 0 && closed) {
+                    finish();
+                }
+            }
+        }
+
+        /**
+         * 应用正在关闭或线程被中断：页面留在任务日志中等待恢复
+         */
+        boolean halted() {
+            return stopping || Thread.currentThread().isInterrupted();
+        }
+
+        void markFailed(int index, String error, String phase) {
+            String message = error != null ? error : "未知错误";
+            taskStates.markFailed(taskId, index, message);
+            failedIndices.add(index);
+            safeSend("error", Map.of(
+                "index", index,
+                "status", "error",
+                "message", message,
+                "retryable", true,
+                "phase", phase
+            ));
+        }
+
+        void finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            int total = offered.get();
+            List<Integer> failed;
+            List<String> images;
+            synchronized (failedIndices) {
+                failed = new ArrayList<>(failedIndices);
+            }
+            synchronized (generatedImages) {
+                images = new ArrayList<>(generatedImages);
+            }
+            safeSend("finish", Map.of(
+                "success", failed.isEmpty(),
+                "taskId", taskId,
+                "images", images,
+                "total", total,
+                "completed", images.size(),
+                "failed", failed.size(),
+                "failedIndices", failed
+            ));
+            if (!interrupted.get()) {
+                jobJournal.taskFinished(taskId);
+            }
+            eventHub.complete(taskId);
+            logger.info("图片生成任务完成: taskId={}, completed={}, failed={}", taskId, images.size(), failed.size());
+        }
+
+        /**
+         * 事件经 TaskEventHub 编号并缓存，客户端断开不影响生成，图片仍会落盘
+         */
+        void safeSend(String event, Object data) {
+            eventHub.publish(taskId, event, data);
+        }
+    }
+
+    /**
+     * 等待提交的页面及其阶段（cover / content）
+     */
+    private record Slot(com.redink.model.Page page, String phase) {
+    }
+
+    /**
+     * 生成单张图片（带自动重试）
+     * 图片接口（ImagePrompt）只接收文本提示词，不发送参考图，缓存键也不包含参考图：
+     * 首次生成和使用参考图的重试得到同一个键，命中同一份缓存
+     * @param useCache 是否复用相同输入已生成的图片；为 false 时强制调用模型重新生成
      */
     private GenerateResult generateSingleImage(com.redink.model.Page page, String taskId,
-                                              byte[] referenceImage, String fullOutline, 
-                                              String userTopic, byte[][] userImages) {
-        return new GenerateResult(page.getIndex(), false, null, "AI服务不可用");
+                                              String fullOutline, String userTopic,
+                                              byte[][] userImages, boolean useCache) {
+        int index = page.getIndex();
+        String prompt = buildPrompt(page, fullOutline, userTopic);
+        String filename = index + ".png";
+
+        if (useCache) {
+            // 图片可能由路由中的任一服务商生成，按路由优先级查询各服务商的缓存键
+            List<String> cacheKeys = new ArrayList<>();
+            for (ImageProviderRouter.RouteId route : imageRouter.routeIds()) {
+                cacheKeys.add(resultCache.key(prompt, null, route.provider(), route.model()));
+            }
+            byte[] cached = resultCache.getAny(cacheKeys);
+            if (cached != null) {
+                try {
+                    saveImage(cached, filename, taskId);
+                    logger.info("图片 [{}] 命中缓存: taskId={}", index, taskId);
+                    return new GenerateResult(index, true, filename, null);
+                } catch (IOException e) {
+                    logger.warn("保存缓存图片失败，改为重新生成: taskId={}, index={}", taskId, index, e);
+                }
+            }
+        }
+
+        String lastError = "超过最大重试次数";
+        for (int attempt = 0; attempt < autoRetry; attempt++) {
+            try {
+                logger.debug("生成图片 [{}]: type={}, attempt={}/{}", index, page.getType(), attempt + 1, autoRetry);
+
+                ImageProviderRouter.RoutedImage image = imageRouter.generate(prompt);
+                saveImage(image.data(), filename, taskId);
+                // 以实际返回结果的服务商和模型作为缓存键
+                resultCache.put(resultCache.key(prompt, null, image.provider(), image.model()), image.data());
+
+                logger.info("图片 [{}] 生成成功: taskId={}", index, taskId);
+                return new GenerateResult(index, true, filename, null);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lastError = "任务被中断";
+                break;
+            } catch (ProviderUnavailableException e) {
+                // 熔断或排队超时，重试只会继续等待
+                lastError = e.getMessage();
+                logger.warn("图片 [{}] 生成失败: {}", index, lastError);
+                break;
+            } catch (Exception e) {
+                lastError = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                logger.warn("图片 [{}] 生成失败 (尝试 {}/{}): {}", index, attempt + 1, autoRetry, lastError);
+
+                if (attempt < autoRetry - 1) {
+                    try {
+                        Thread.sleep(1000L << attempt);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+
+        return new GenerateResult(index, false, null, lastError);
     }
-    
+
+    /**
+     * 保存图片，缩略图等衍生图在后台生成
+     */
+    private void saveImage(byte[] imageData, String filename, String taskId) throws IOException {
+        Path taskDir = historyDir.resolve(taskId);
+        Files.createDirectories(taskDir);
+        // 先写临时文件再原子替换，恢复任务时已存在的图片文件都是完整的
+        Path tmp = taskDir.resolve(filename + ".tmp");
+        Files.write(tmp, imageData);
+        Files.move(tmp, taskDir.resolve(filename), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        imageDerivatives.submit(taskDir.resolve(filename), imageData);
+    }
+
     /**
-     * 生成缩略图
+     * 读取封面并压缩到200KB以内，作为参考图
      */
-    private void generateThumbnail(byte[] imageData, String filename, Path taskDir) {
+    private byte[] loadCoverImage(String taskId, String filename) {
+        Path coverPath = historyDir.resolve(taskId).resolve(filename);
+        if (!Files.exists(coverPath)) {
+            return null;
+        }
         try {
-            byte[] thumbnailData = compressImage(imageData, 50); // 50KB缩略图
-            String thumbnailFilename = "thumb_" + filename;
-            Path thumbnailPath = Paths.get(taskDir.toString(), thumbnailFilename);
-            Files.write(thumbnailPath, thumbnailData);
-        } catch (Exception e) {
-            logger.warn("生成缩略图失败: {}", filename, e);
+            return compressImage(Files.readAllBytes(coverPath), 200);
+        } catch (IOException e) {
+            logger.warn("读取封面失败: {}", coverPath, e);
+            return null;
         }
     }
-    
+
+    private String imageUrl(String taskId, String filename) {
+        return "/api/images/" + taskId + "/" + filename;
+    }
+
     /**
      * 构建提示词
      */
     private String buildPrompt(com.redink.model.Page page, String fullOutline, String userTopic) {
-        return String.format("请生成一张小红书风格的图文内容图片。页面内容：%s，页面类型：%s，用户需求：%s", 
-            page.getContent(), page.getType(), 
+        return String.format("请生成一张小红书风格的图文内容图片。页面内容：%s，页面类型：%s，用户需求：%s",
+            page.getContent(), page.getType(),
             userTopic != null ? userTopic : "未提供");
     }
-    
+
     /**
      * 压缩用户图片
      */
     private byte[][] compressUserImages(byte[][] userImages) {
         if (userImages == null) return null;
-        
+
         byte[][] compressed = new byte[userImages.length][];
         for (int i = 0; i < userImages.length; i++) {
             compressed[i] = compressImage(userImages[i], 200);
         }
         return compressed;
     }
-    
-    /**
-     * 发送SSE事件
-     */
-    private void sendSseEvent(SseEmitter emitter, String event, Object data) throws IOException {
-        emitter.send(SseEmitter.event()
-                .name(event)
-                .data(data));
-    }
-    
+
     private Map<String, Object> createProgressData(int current, int total, String message) {
         return Map.of("current", current, "total", total, "message", message);
     }
-    
+
     /**
      * 图片生成结果
      */
@@ -198,7 +788,7 @@ public class ImageGenerationServiceImpl implements ImageGenerationService {
         final boolean success;
         final String filename;
         final String error;
-        
+
         GenerateResult(int index, boolean success, String filename, String error) {
             this.index = index;
             this.success = success;
@@ -206,4 +796,4 @@ public class ImageGenerationServiceImpl implements ImageGenerationService {
             this.error = error;
         }
     }
-}
\ No newline at end of file
+}
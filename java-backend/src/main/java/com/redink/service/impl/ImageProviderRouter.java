@@ -0,0 +1,427 @@
+package com.redink.service.impl;
+
+import com.redink.config.ConfigManager;
+import com.redink.config.ExecutorConfig;
+import com.redink.config.ProvidersSnapshot;
+import com.redink.util.ImageUtils;
+import com.redink.util.ProviderConcurrencyLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.image.Image;
+import org.springframework.ai.image.ImagePrompt;
+import org.springframework.ai.image.ImageResponse;
+import org.springframework.ai.openai.OpenAiImageModel;
+import org.springframework.ai.openai.OpenAiImageOptions;
+import org.springframework.ai.openai.api.OpenAiImageApi;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 图片服务商路由
+ * 按权重选择主服务商；主服务商失败时切换到下一个，超过 hedge-after 仍未返回时
+ * 同时向下一个服务商发出对冲请求，先成功的结果生效，其余请求取消。
+ *
+ * 参与路由的服务商：
+ * - 当前激活的服务商，使用 spring.ai.openai 配置的图片模型
+ * - image_providers.yaml 中配置了 weight 的 OpenAI 兼容服务商（type: image_api，需要 base_url 和 api_key），
+ *   weight 为 0 时只作为备用
+ * 配置了 cost_per_image 和 daily_cost_cap 的服务商在发出请求前预占当天费用，达到上限后不再参与路由；
+ * 只有确定没有发到服务商的请求（排队时被取消、熔断或等待许可超时）才退还预占的费用。
+ * 当天费用记录在 ImageCostLedger 中，配置重新加载和重启都不会清零
+ */
+@Component
+public class ImageProviderRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageProviderRouter.class);
+
+    private final ConfigManager configManager;
+    private final OpenAiImageModel defaultImageModel;
+    private final ProviderConcurrencyLimiter providerLimiter;
+    private final ObjectProvider<RestClient.Builder> restClientBuilder;
+    private final ExecutorService providerExecutor;
+    private final MeterRegistry meterRegistry;
+    private final ImageCostLedger costLedger;
+    // URL 形式返回的图片通过服务商连接池下载，读超时避免下载卡住占用服务商调用线程
+    private final RestClient downloadClient;
+    // 激活的服务商使用的模型（spring.ai.openai.image.options.model），用于结果缓存键
+    private final String defaultModel;
+
+    // 主服务商超过该耗时未返回时发出对冲请求，0 表示只在失败时切换
+    private final Duration hedgeAfter;
+    // 单张图片最多请求的服务商数
+    private final int maxAttempts;
+
+    // 按配置文件内容构建的服务商列表，配置对象变化时重建
+    private volatile ProvidersSnapshot loadedConfig;
+    private volatile Map<String, ProviderRoute> routes = Map.of();
+
+    private final Counter hedgedRequests;
+    private final Counter failoverRequests;
+
+    public ImageProviderRouter(ConfigManager configManager,
+                               OpenAiImageModel openAiImageModel,
+                               ProviderConcurrencyLimiter providerLimiter,
+                               ObjectProvider<RestClient.Builder> restClientBuilder,
+                               @Qualifier(ExecutorConfig.PROVIDER_CALL_EXECUTOR) ExecutorService providerExecutor,
+                               MeterRegistry meterRegistry,
+                               ImageCostLedger costLedger,
+                               HttpClient providerHttpClient,
+                               @Value("${spring.ai.openai.image.options.model:}") String defaultModel,
+                               @Value("${redink.image.routing.download-timeout:60s}") Duration downloadTimeout,
+                               @Value("${redink.image.routing.hedge-after:40s}") Duration hedgeAfter,
+                               @Value("${redink.image.routing.max-attempts:2}") int maxAttempts) {
+        this.configManager = configManager;
+        this.defaultImageModel = openAiImageModel;
+        this.providerLimiter = providerLimiter;
+        this.restClientBuilder = restClientBuilder;
+        this.providerExecutor = providerExecutor;
+        this.meterRegistry = meterRegistry;
+        this.costLedger = costLedger;
+        this.defaultModel = defaultModel;
+        ReactorClientHttpRequestFactory downloadFactory = new ReactorClientHttpRequestFactory(providerHttpClient);
+        downloadFactory.setReadTimeout(downloadTimeout);
+        this.downloadClient = RestClient.builder().requestFactory(downloadFactory).build();
+        this.hedgeAfter = hedgeAfter;
+        this.maxAttempts = Math.max(1, maxAttempts);
+
+        this.hedgedRequests = Counter.builder("redink.image.routing.requests")
+                .tag("outcome", "hedged")
+                .description("发出对冲或故障切换请求的图片数")
+                .register(meterRegistry);
+        this.failoverRequests = Counter.builder("redink.image.routing.requests")
+                .tag("outcome", "failover")
+                .description("发出对冲或故障切换请求的图片数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 生成图片，按路由计划依次（或对冲）调用服务商
+     * @param prompt 完整提示词
+     * @return 图片数据及实际返回结果的服务商和模型
+     * @throws Exception 所有服务商都失败时抛出最后一个错误
+     */
+    public RoutedImage generate(String prompt) throws Exception {
+        Deque<ProviderRoute> plan = new ArrayDeque<>(plan());
+        ExecutorCompletionService<byte[]> completion = new ExecutorCompletionService<>(providerExecutor);
+        Map<Future<byte[]>, Attempt> running = new HashMap<>();
+        if (!launchNext(plan, prompt, completion, running)) {
+            throw new IOException("没有可用的图片服务商（费用已达上限）");
+        }
+        int attempts = 1;
+        Exception lastError = null;
+
+        try {
+            while (!running.isEmpty()) {
+                boolean canHedge = attempts < maxAttempts && !plan.isEmpty() && !hedgeAfter.isZero();
+                Future<byte[]> done = canHedge
+                        ? completion.poll(hedgeAfter.toMillis(), TimeUnit.MILLISECONDS)
+                        : completion.take();
+
+                if (done == null) {
+                    if (launchNext(plan, prompt, completion, running)) {
+                        logger.info("图片服务商超过 {} 未返回，已发出对冲请求", hedgeAfter);
+                        hedgedRequests.increment();
+                        attempts++;
+                    }
+                    continue;
+                }
+
+                Attempt attempt = running.remove(done);
+                ProviderRoute route = attempt.route;
+                try {
+                    byte[] data = done.get();
+                    route.successes.increment();
+                    return new RoutedImage(data, route.name, route.modelName);
+                } catch (ExecutionException e) {
+                    lastError = e.getCause() instanceof Exception cause ? cause : e;
+                    // 请求没有发到服务商（熔断、等待许可超时）时退还预占的费用
+                    attempt.abandon();
+                    route.failures.increment();
+                    logger.warn("图片服务商 {} 调用失败: {}", route.name, lastError.getMessage());
+                    if (attempts < maxAttempts && launchNext(plan, prompt, completion, running)) {
+                        failoverRequests.increment();
+                        attempts++;
+                    }
+                }
+            }
+        } finally {
+            // 已有结果或调用方被中断时取消其余请求；还在排队的请求退还预占的费用
+            running.forEach((future, attempt) -> {
+                future.cancel(true);
+                attempt.abandon();
+            });
+        }
+        if (lastError == null) {
+            throw new IOException("没有可用的图片服务商（费用已达上限）");
+        }
+        throw lastError;
+    }
+
+    /**
+     * 当前参与路由的服务商和模型，按路由优先级排列（用于查询结果缓存）
+     */
+    public List<RouteId> routeIds() {
+        List<RouteId> ids = new ArrayList<>();
+        for (ProviderRoute route : currentRoutes().values()) {
+            ids.add(new RouteId(route.name, route.modelName));
+        }
+        return ids;
+    }
+
+    /**
+     * 服务商名称和模型
+     */
+    public record RouteId(String provider, String model) {
+    }
+
+    /**
+     * 生成结果及实际返回结果的服务商和模型
+     */
+    public record RoutedImage(byte[] data, String provider, String model) {
+    }
+
+    /**
+     * 路由计划：按权重随机选出主服务商，其余按权重从高到低作为备用
+     * 这里只排除当天费用已达上限的服务商，费用在发出请求时预占
+     */
+    private List<ProviderRoute> plan() {
+        List<ProviderRoute> candidates = new ArrayList<>();
+        for (ProviderRoute route : currentRoutes().values()) {
+            if (route.withinCostCap()) {
+                candidates.add(route);
+            }
+        }
+        candidates.sort(Comparator.comparingDouble((ProviderRoute r) -> r.weight).reversed());
+
+        double totalWeight = candidates.stream().mapToDouble(r -> r.weight).sum();
+        if (totalWeight > 0 && candidates.size() > 1) {
+            double pick = ThreadLocalRandom.current().nextDouble(totalWeight);
+            for (int i = 0; i < candidates.size(); i++) {
+                pick -= candidates.get(i).weight;
+                if (pick < 0) {
+                    candidates.add(0, candidates.remove(i));
+                    break;
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * 按计划顺序发出下一个请求，跳过预占费用失败（并发请求已用完当天额度）的服务商
+     * @return 是否发出了请求
+     */
+    private boolean launchNext(Deque<ProviderRoute> plan, String prompt, ExecutorCompletionService<byte[]> completion,
+                               Map<Future<byte[]>, Attempt> running) {
+        while (!plan.isEmpty()) {
+            ProviderRoute route = plan.poll();
+            LocalDate costDay = route.reserveCost();
+            if (costDay == null) {
+                logger.info("图片服务商 {} 当天费用已达上限，跳过", route.name);
+                continue;
+            }
+            Attempt attempt = new Attempt(route, costDay);
+            route.attempts.increment();
+            running.put(completion.submit(() -> providerLimiter.call("image", route.name, () -> {
+                if (!attempt.dispatch()) {
+                    throw new CancellationException("请求已取消");
+                }
+                return route.call(prompt);
+            })), attempt);
+            return true;
+        }
+        return false;
+    }
+
+    private Map<String, ProviderRoute> currentRoutes() {
+        // 配置重新加载后快照对象变化，据此重建路由
+        ProvidersSnapshot config = configManager.getImageProviders();
+        Map<String, ProviderRoute> current = routes;
+        if (config != loadedConfig) {
+            synchronized (this) {
+                if (config != loadedConfig) {
+                    routes = buildRoutes(config);
+                    loadedConfig = config;
+                }
+                current = routes;
+            }
+        }
+        return current;
+    }
+
+    private Map<String, ProviderRoute> buildRoutes(ProvidersSnapshot config) {
+        String active = config.getActiveProvider();
+        Map<String, ProviderRoute> built = new LinkedHashMap<>();
+
+        ProvidersSnapshot.Provider activeConfig = config.getProvider(active);
+        built.put(active, new ProviderRoute(active, defaultImageModel, defaultModel,
+                activeConfig != null && activeConfig.weight() != null ? activeConfig.weight() : 1, activeConfig));
+
+        for (ProvidersSnapshot.Provider provider : config.getProviders().values()) {
+            if (provider.name().equals(active) || provider.weight() == null) {
+                continue;
+            }
+            if (!"image_api".equals(provider.type()) || provider.validationError() != null) {
+                logger.warn("图片服务商 {} 不是 OpenAI 兼容接口或缺少 base_url/api_key，不参与路由", provider.name());
+                continue;
+            }
+            built.put(provider.name(), new ProviderRoute(provider.name(), createImageModel(provider),
+                    provider.model() != null ? provider.model() : "", provider.weight(), provider));
+        }
+
+        logger.info("图片服务商路由: {}", built.keySet());
+        return built;
+    }
+
+    private OpenAiImageModel createImageModel(ProvidersSnapshot.Provider provider) {
+        OpenAiImageApi api = OpenAiImageApi.builder()
+                .baseUrl(provider.baseUrl())
+                .apiKey(provider.apiKey())
+                .restClientBuilder(restClientBuilder.getIfAvailable(RestClient::builder))
+                .build();
+        OpenAiImageOptions.Builder options = OpenAiImageOptions.builder();
+        if (provider.model() != null) {
+            options.model(provider.model());
+        }
+        // 失败由路由层切换服务商，不在单个服务商上重试
+        return new OpenAiImageModel(api, options.build(), RetryTemplate.builder().maxAttempts(1).build());
+    }
+
+    /**
+     * 一次服务商请求的费用状态
+     * 请求发到服务商前置为已发出；在此之前被放弃（取消或获取许可失败）时退还预占的费用
+     */
+    private static final class Attempt {
+        private static final int PENDING = 0;
+        private static final int DISPATCHED = 1;
+        private static final int ABANDONED = 2;
+
+        final ProviderRoute route;
+        final LocalDate costDay;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        Attempt(ProviderRoute route, LocalDate costDay) {
+            this.route = route;
+            this.costDay = costDay;
+        }
+
+        boolean dispatch() {
+            return state.compareAndSet(PENDING, DISPATCHED);
+        }
+
+        void abandon() {
+            if (state.compareAndSet(PENDING, ABANDONED)) {
+                route.refundCost(costDay);
+            }
+        }
+    }
+
+    /**
+     * 单个服务商的路由信息，当天费用由 costLedger 按服务商名称记录
+     */
+    private final class ProviderRoute {
+        final String name;
+        final OpenAiImageModel model;
+        final String modelName;
+        final double weight;
+        final double costPerImage;
+        final double dailyCostCap;
+
+        final Counter attempts;
+        final Counter successes;
+        final Counter failures;
+
+        ProviderRoute(String name, OpenAiImageModel model, String modelName, double weight,
+                      ProvidersSnapshot.Provider config) {
+            this.name = name;
+            this.model = model;
+            this.modelName = modelName;
+            this.weight = Math.max(0, weight);
+            this.costPerImage = config != null ? config.costPerImage() : 0;
+            this.dailyCostCap = config != null ? config.dailyCostCap() : 0;
+            this.attempts = attemptCounter("started");
+            this.successes = attemptCounter("success");
+            this.failures = attemptCounter("failure");
+        }
+
+        private Counter attemptCounter(String result) {
+            return Counter.builder("redink.image.provider.attempts")
+                    .tag("provider", name)
+                    .tag("result", result)
+                    .description("图片服务商调用次数")
+                    .register(meterRegistry);
+        }
+
+        byte[] call(String prompt) throws IOException {
+            OpenAiImageOptions options = OpenAiImageOptions.builder()
+                    .responseFormat("b64_json")
+                    .build();
+            ImageResponse response = model.call(new ImagePrompt(prompt, options));
+
+            if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+                throw new IOException("AI 服务返回空结果");
+            }
+
+            Image image = response.getResult().getOutput();
+            if (image.getB64Json() != null && !image.getB64Json().isEmpty()) {
+                return ImageUtils.base64ToImage(image.getB64Json());
+            }
+            if (image.getUrl() != null && !image.getUrl().isEmpty()) {
+                byte[] data = downloadClient.get().uri(URI.create(image.getUrl())).retrieve().body(byte[].class);
+                if (data == null || data.length == 0) {
+                    throw new IOException("下载图片失败: " + image.getUrl());
+                }
+                return data;
+            }
+            throw new IOException("AI 服务未返回图片数据");
+        }
+
+        boolean withinCostCap() {
+            return costLedger.withinCap(name, costPerImage, dailyCostCap);
+        }
+
+        /**
+         * 预占一张图片的费用，失败、被取消的请求服务商也可能计费，因此发出请求前即计入
+         * @return 费用所属日期，超出当天上限时返回 null
+         */
+        LocalDate reserveCost() {
+            return costLedger.reserve(name, costPerImage, dailyCostCap);
+        }
+
+        /**
+         * 退还确定没有发到服务商的请求预占的费用（跨天后不再退还）
+         */
+        void refundCost(LocalDate day) {
+            costLedger.refund(name, day, costPerImage);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.redink.service.impl;
+
+import com.redink.util.Digests;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 图片生成结果缓存（按内容寻址）
+ * 键为完整提示词、参考图摘要、服务商和模型的 SHA-256，相同输入直接复用已生成的图片；
+ * 图片保存在磁盘上，按最近访问顺序淘汰，总大小不超过预算
+ */
+@Component
+public class ImageResultCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageResultCache.class);
+
+    private static final String FILE_SUFFIX = ".img";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final boolean enabled;
+    private final Path cacheDir;
+    private final long maxBytes;
+
+    // 键 -> 文件大小，按访问顺序排列，最久未访问的在前；由 this 保护
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long totalBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bytesSaved;
+
+    public ImageResultCache(MeterRegistry meterRegistry,
+                            @Value("${redink.image.cache.enabled:true}") boolean enabled,
+                            @Value("${redink.image.cache.dir:cache/images}") String cacheDir,
+                            @Value("${redink.image.cache.max-bytes:1073741824}") long maxBytes) {
+        this.enabled = enabled;
+        this.cacheDir = Paths.get(cacheDir);
+        this.maxBytes = maxBytes;
+
+        this.hits = Counter.builder("redink.image.cache.requests")
+                .tag("result", "hit")
+                .description("图片结果缓存查询次数")
+                .register(meterRegistry);
+        this.misses = Counter.builder("redink.image.cache.requests")
+                .tag("result", "miss")
+                .description("图片结果缓存查询次数")
+                .register(meterRegistry);
+        this.bytesSaved = Counter.builder("redink.image.cache.bytes.saved")
+                .description("命中缓存省去的图片生成字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("redink.image.cache.hit.ratio", this, ImageResultCache::hitRatio)
+                .description("图片结果缓存命中率")
+                .register(meterRegistry);
+        Gauge.builder("redink.image.cache.size.bytes", this, ImageResultCache::sizeBytes)
+                .description("图片结果缓存占用字节数")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        if (enabled) {
+            loadEntries();
+        }
+        logger.info("图片结果缓存: enabled={}, dir={}, maxBytes={}, entries={}",
+                enabled, this.cacheDir, maxBytes, entries.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算缓存键
+     * @param prompt 完整提示词
+     * @param referenceImage 参考图，可为 null
+     * @param provider 服务商名称
+     * @param model 模型名称
+     */
+    public String key(String prompt, byte[] referenceImage, String provider, String model) {
+        String referenceDigest = referenceImage != null ? Digests.sha256Hex(referenceImage) : "";
+        return Digests.sha256Hex(provider, model, referenceDigest, prompt);
+    }
+
+    /**
+     * 查询缓存
+     * @return 图片数据，未命中返回 null
+     */
+    public byte[] get(String key) {
+        return getAny(List.of(key));
+    }
+
+    /**
+     * 按顺序查询多个键，返回第一个命中的结果（只计一次命中或未命中）
+     * @return 图片数据，均未命中返回 null
+     */
+    public byte[] getAny(List<String> keys) {
+        if (!enabled) {
+            return null;
+        }
+        String key = null;
+        synchronized (this) {
+            for (String candidate : keys) {
+                if (entries.get(candidate) != null) {
+                    key = candidate;
+                    break;
+                }
+            }
+            if (key == null) {
+                misses.increment();
+                return null;
+            }
+        }
+
+        Path file = file(key);
+        try {
+            byte[] data = Files.readAllBytes(file);
+            // 记录访问时间，重启后按此恢复淘汰顺序
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.increment();
+            bytesSaved.increment(data.length);
+            return data;
+        } catch (NoSuchFileException e) {
+            // 与淘汰并发或文件被外部删除
+            remove(key);
+        } catch (IOException e) {
+            logger.warn("读取图片缓存失败: {}", key, e);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 写入缓存，超出预算时淘汰最久未访问的条目
+     */
+    public void put(String key, byte[] data) {
+        if (!enabled || data == null || data.length > maxBytes) {
+            return;
+        }
+        Path file = file(key);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+            Files.write(tmp, data);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("写入图片缓存失败: {}", key, e);
+            return;
+        }
+
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = entries.put(key, (long) data.length);
+            totalBytes += data.length - (previous != null ? previous : 0);
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                totalBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                iterator.remove();
+            }
+        }
+        for (String victim : evicted) {
+            deleteFile(victim);
+        }
+    }
+
+    public synchronized long sizeBytes() {
+        return totalBytes;
+    }
+
+    public double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total > 0 ? hits.count() / total : 0;
+    }
+
+    private void remove(String key) {
+        synchronized (this) {
+            Long size = entries.remove(key);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+    }
+
+    /**
+     * 启动时扫描缓存目录，按最后访问时间恢复 LRU 顺序，清理残留的临时文件
+     */
+    private void loadEntries() {
+        if (!Files.isDirectory(cacheDir)) {
+            return;
+        }
+        List<Object[]> found = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(cacheDir, 2)) {
+            files.filter(Files::isRegularFile).forEach(path -> {
+                String name = path.getFileName().toString();
+                try {
+                    if (name.endsWith(TMP_SUFFIX)) {
+                        Files.deleteIfExists(path);
+                    } else if (name.endsWith(FILE_SUFFIX)) {
+                        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                        found.add(new Object[]{name.substring(0, name.length() - FILE_SUFFIX.length()),
+                                attributes.size(), attributes.lastModifiedTime().toMillis()});
+                    }
+                } catch (IOException e) {
+                    logger.warn("读取缓存文件失败: {}", path, e);
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("扫描图片缓存目录失败: {}", cacheDir, e);
+            return;
+        }
+
+        found.sort(Comparator.comparingLong(entry -> (Long) entry[2]));
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            for (Object[] entry : found) {
+                entries.put((String) entry[0], (Long) entry[1]);
+                totalBytes += (Long) entry[1];
+            }
+            // 预算调小后，启动时先淘汰超出部分
+            Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                totalBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                iterator.remove();
+            }
+        }
+        evicted.forEach(this::deleteFile);
+    }
+
+    private void deleteFile(String key) {
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            logger.warn("删除图片缓存失败: {}", key, e);
+        }
+    }
+
+    /**
+     * 按键的前两位分目录，避免单个目录文件过多
+     */
+    private Path file(String key) {
+        return cacheDir.resolve(key.substring(0, 2)).resolve(key + FILE_SUFFIX);
+    }
+}
@@ -0,0 +1,45 @@
+package com.redink.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.redink.service.OutlineCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 内存大纲缓存
+ * 写入后按 TTL 过期，条目数超过上限时按 Caffeine 的频率策略淘汰
+ */
+@Component
+@ConditionalOnProperty(name = "redink.outline.cache.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryOutlineCache implements OutlineCache {
+
+    private final Cache<String, String> cache;
+
+    public InMemoryOutlineCache(MeterRegistry meterRegistry,
+                                @Value("${redink.outline.cache.ttl:1h}") Duration ttl,
+                                @Value("${redink.outline.cache.max-entries:1000}") long maxEntries) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "outlines");
+    }
+
+    @Override
+    public String get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public void put(String key, String outline) {
+        cache.put(key, outline);
+    }
+}
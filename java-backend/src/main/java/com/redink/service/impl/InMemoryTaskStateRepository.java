@@ -0,0 +1,297 @@
+package com.redink.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.redink.model.TaskState;
+import com.redink.service.TaskStateRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 内存任务状态存储
+ * 按字节数加权限制常驻内存，并在长时间未访问后过期；
+ * 被淘汰的任务状态溢写到 history/{taskId} 下，再次访问时从磁盘恢复；
+ * 超过 spill-retention 未更新且不在内存中的溢写文件由定时任务删除（放弃的任务不会调用 remove）
+ */
+@Component
+@ConditionalOnProperty(name = "redink.task-state.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryTaskStateRepository implements TaskStateRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryTaskStateRepository.class);
+
+    // 每个任务状态的固定开销（两个 Map 及字符串字段）
+    private static final int BASE_WEIGHT = 1024;
+
+    private static final String STATE_FILE = "task_state.json";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Cache<String, TaskState> cache;
+    private final Duration spillRetention;
+
+    public InMemoryTaskStateRepository(MeterRegistry meterRegistry,
+                                       @Value("${redink.task-state.max-bytes:268435456}") long maxBytes,
+                                       @Value("${redink.task-state.expire-after-access:2h}") Duration expireAfterAccess,
+                                       @Value("${redink.task-state.spill-retention:24h}") Duration spillRetention) {
+        this.spillRetention = spillRetention;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String taskId, TaskState state) -> weigh(state))
+                .expireAfterAccess(expireAfterAccess)
+                .evictionListener((String taskId, TaskState state, RemovalCause cause) -> spill(taskId, state, cause))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "taskStates");
+        Gauge.builder("redink.task.state.resident.bytes", this, InMemoryTaskStateRepository::residentBytes)
+                .description("任务状态常驻内存字节数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取任务状态，内存未命中时尝试从溢写文件恢复
+     */
+    @Override
+    public TaskState get(String taskId) {
+        if (taskId == null) {
+            return null;
+        }
+        return cache.get(taskId, this::restore);
+    }
+
+    /**
+     * 写入任务状态
+     * 任务进行中封面、用户图片等变化时使用 updateContext，以更新权重并保留已记录的结果
+     */
+    @Override
+    public void put(String taskId, TaskState state) {
+        cache.put(taskId, state);
+    }
+
+    /**
+     * 更新上下文和图片数据；条目被淘汰后恢复为另一个对象时，把上下文复制到当前对象上，
+     * 不用调用方的对象整体替换，以免丢失期间记录的 generated/failed
+     */
+    @Override
+    public void updateContext(String taskId, TaskState state) {
+        cache.asMap().compute(taskId, (key, current) -> {
+            if (current == null) {
+                current = restore(key);
+            }
+            if (current == null || current == state) {
+                // 同一对象重新写入以更新权重
+                return state;
+            }
+            current.setFullOutline(state.getFullOutline());
+            current.setUserTopic(state.getUserTopic());
+            current.setCoverImage(state.getCoverImage());
+            current.setUserImages(state.getUserImages());
+            return current;
+        });
+    }
+
+    @Override
+    public void markGenerated(String taskId, int index, String filename) {
+        update(taskId, state -> {
+            state.getGenerated().put(index, filename);
+            state.getFailed().remove(index);
+        });
+    }
+
+    @Override
+    public void markFailed(String taskId, int index, String error) {
+        update(taskId, state -> state.getFailed().put(index, error));
+    }
+
+    /**
+     * 在缓存条目的原子计算内修改状态（被淘汰时先从溢写文件恢复），
+     * 避免与淘汰、恢复并发时基于过期副本写回而丢失其他线程的更新
+     */
+    private void update(String taskId, Consumer<TaskState> mutation) {
+        if (taskId == null) {
+            return;
+        }
+        cache.asMap().compute(taskId, (key, state) -> {
+            TaskState current = state != null ? state : restore(key);
+            if (current != null) {
+                mutation.accept(current);
+            }
+            return current;
+        });
+    }
+
+    /**
+     * 移除任务状态及其溢写文件
+     */
+    @Override
+    public void remove(String taskId) {
+        cache.invalidate(taskId);
+        deleteSpilled(taskId);
+    }
+
+    /**
+     * 删除过期的溢写文件：状态文件超过 spill-retention 未更新且任务不在内存中
+     * 删除在缓存条目的原子计算内进行，不会与同一任务的恢复并发
+     */
+    @Scheduled(fixedDelayString = "${redink.task-state.spill-sweep-interval:3600000}")
+    public void sweepSpilled() {
+        Path historyDir = TaskPayloadFiles.historyDir();
+        if (!Files.isDirectory(historyDir)) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(spillRetention);
+        int swept = 0;
+        try (Stream<Path> dirs = Files.list(historyDir)) {
+            for (Path dir : (Iterable<Path>) dirs::iterator) {
+                Path stateFile = dir.resolve(STATE_FILE);
+                if (!Files.isRegularFile(stateFile) || !isOlderThan(stateFile, cutoff)) {
+                    continue;
+                }
+                String taskId = dir.getFileName().toString();
+                boolean[] deleted = {false};
+                cache.asMap().compute(taskId, (key, state) -> {
+                    if (state == null) {
+                        deleteSpilled(key);
+                        deleted[0] = true;
+                    }
+                    return state;
+                });
+                if (deleted[0]) {
+                    swept++;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("清理溢写文件失败", e);
+        }
+        if (swept > 0) {
+            logger.info("已清理过期的任务状态溢写文件: count={}", swept);
+        }
+    }
+
+    private static boolean isOlderThan(Path file, Instant cutoff) {
+        try {
+            return Files.getLastModifiedTime(file).toInstant().isBefore(cutoff);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void deleteSpilled(String taskId) {
+        try {
+            Files.deleteIfExists(TaskPayloadFiles.taskDir(taskId).resolve(STATE_FILE));
+        } catch (IOException e) {
+            logger.warn("删除溢写文件失败: {}", taskId, e);
+        }
+        TaskPayloadFiles.delete(taskId);
+    }
+
+    /**
+     * 当前常驻内存的字节数
+     */
+    public long residentBytes() {
+        return cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    private int weigh(TaskState state) {
+        long weight = BASE_WEIGHT;
+        if (state.getCoverImage() != null) {
+            weight += state.getCoverImage().length;
+        }
+        if (state.getUserImages() != null) {
+            for (byte[] image : state.getUserImages()) {
+                weight += image != null ? image.length : 0;
+            }
+        }
+        if (state.getFullOutline() != null) {
+            weight += state.getFullOutline().length() * 2L;
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 淘汰时把图片数据和上下文写到任务目录
+     */
+    private void spill(String taskId, TaskState state, RemovalCause cause) {
+        if (taskId == null || state == null) {
+            return;
+        }
+        try {
+            SpilledState spilled = new SpilledState();
+            spilled.generated = state.getGenerated();
+            spilled.failed = state.getFailed();
+            spilled.fullOutline = state.getFullOutline();
+            spilled.userTopic = state.getUserTopic();
+            spilled.userImageCount = state.getUserImages() != null ? state.getUserImages().length : 0;
+
+            // 图片数据和状态文件都先写临时文件再原子替换，并发恢复不会读到写了一半的文件
+            if (state.getCoverImage() != null) {
+                TaskPayloadFiles.writeCover(taskId, state.getCoverImage());
+            }
+            TaskPayloadFiles.writeUserImages(taskId, state.getUserImages());
+            Files.createDirectories(TaskPayloadFiles.taskDir(taskId));
+            TaskPayloadFiles.writeAtomically(TaskPayloadFiles.taskDir(taskId).resolve(STATE_FILE),
+                    objectMapper.writeValueAsBytes(spilled));
+
+            logger.debug("任务状态已溢写: taskId={}, cause={}", taskId, cause);
+        } catch (IOException e) {
+            logger.warn("任务状态溢写失败: taskId={}", taskId, e);
+        }
+    }
+
+    /**
+     * 从溢写文件恢复任务状态，不存在时返回 null（不缓存）
+     */
+    private TaskState restore(String taskId) {
+        Path stateFile = TaskPayloadFiles.taskDir(taskId).resolve(STATE_FILE);
+        if (!Files.exists(stateFile)) {
+            return null;
+        }
+        try {
+            SpilledState spilled = objectMapper.readValue(stateFile.toFile(), SpilledState.class);
+
+            TaskState state = new TaskState();
+            state.setGenerated(new ConcurrentHashMap<>(spilled.generated != null ? spilled.generated : Map.of()));
+            state.setFailed(new ConcurrentHashMap<>(spilled.failed != null ? spilled.failed : Map.of()));
+            state.setFullOutline(spilled.fullOutline);
+            state.setUserTopic(spilled.userTopic);
+            state.setCoverImage(TaskPayloadFiles.readCover(taskId));
+            state.setUserImages(TaskPayloadFiles.readUserImages(taskId, spilled.userImageCount));
+
+            logger.debug("任务状态已从磁盘恢复: taskId={}", taskId);
+            return state;
+        } catch (IOException e) {
+            logger.warn("任务状态恢复失败: taskId={}", taskId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 溢写文件内容（不含图片数据）
+     */
+    static class SpilledState {
+        public Map<Integer, String> generated;
+        public Map<Integer, String> failed;
+        public String fullOutline;
+        public String userTopic;
+        public int userImageCount;
+    }
+}
@@ -3,8 +3,18 @@ package com.redink.service.impl;
 import com.redink.config.ConfigManager;
 import com.redink.model.OutlineResult;
 import com.redink.model.Page;
+import com.redink.service.OutlineCache;
 import com.redink.service.OutlineGenerationService;
+import com.redink.util.Digests;
 import com.redink.util.ImageUtils;
+import com.redink.util.OutlineParser;
+import com.redink.util.ProviderConcurrencyLimiter;
+import com.redink.util.SingleFlight;
+import com.redink.util.SseWriter;
+import com.redink.util.StreamingOutlineParser;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
@@ -13,15 +23,23 @@ import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.util.Arrays;
+import java.text.Normalizer;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * 大纲生成服务实现（简化版）
@@ -33,6 +51,19 @@ public class OutlineGenerationServiceImpl implements OutlineGenerationService {
     
     private final ConfigManager configManager;
     private final ChatModel openAiChatModel;
+    private final ProviderConcurrencyLimiter providerLimiter;
+    private final OutlineCache outlineCache;
+    private final SseWriter sseWriter;
+    private final boolean cacheEnabled;
+
+    // 按缓存键合并进行中的模型调用，相同主题的并发请求共享同一次调用
+    private final SingleFlight<String, String> outlineFlight = new SingleFlight<>();
+    // 流式接口按缓存键共享进行中的模型输出，后加入的订阅者先收到已输出的文本
+    private final Map<String, Flux<String>> streamFlights = new ConcurrentHashMap<>();
+    private final LongAdder streamCoalesced = new LongAdder();
+
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
 
     // 提示词模板
     private static final String OUTLINE_PROMPT = """
@@ -67,10 +98,30 @@ public class OutlineGenerationServiceImpl implements OutlineGenerationService {
 
         【特别的！！注意】直接给出大纲内容（不要有任何多余的说明，也就是你直接从[封面]开始，不要有针对用户的回应对话），请输出：
         """;
+
+    // 提示词模板版本，参与缓存键计算，模板修改后旧缓存自动失效
+    private static final String PROMPT_VERSION = Integer.toHexString(OUTLINE_PROMPT.hashCode());
     
-    public OutlineGenerationServiceImpl(ConfigManager configManager, ChatModel chatModel) {
+    public OutlineGenerationServiceImpl(ConfigManager configManager, ChatModel chatModel,
+                                        ProviderConcurrencyLimiter providerLimiter,
+                                        OutlineCache outlineCache,
+                                        SseWriter sseWriter,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${redink.outline.cache.enabled:true}") boolean cacheEnabled) {
         this.configManager = configManager;
         this.openAiChatModel = chatModel;
+        this.providerLimiter = providerLimiter;
+        this.outlineCache = outlineCache;
+        this.sseWriter = sseWriter;
+        this.cacheEnabled = cacheEnabled;
+
+        this.cacheHits = cacheCounter(meterRegistry, "hit");
+        this.cacheMisses = cacheCounter(meterRegistry, "miss");
+        FunctionCounter.builder("redink.outline.cache.requests", this,
+                        service -> service.outlineFlight.coalescedCount() + service.streamCoalesced.sum())
+                .tag("result", "coalesced")
+                .description("大纲缓存查询次数")
+                .register(meterRegistry);
     }
     
     @Override
@@ -83,15 +134,16 @@ public class OutlineGenerationServiceImpl implements OutlineGenerationService {
                         .build();
             }
             
-            // 调用 AI 服务生成大纲
-            String generatedOutline = generateOutlineWithAI(topic);
-            List<Page> pages = parseOutline(generatedOutline);
+            // 调用 AI 服务生成大纲，带参考图的请求不走缓存
+            boolean hasImages = images != null && images.length > 0;
+            String generatedOutline = generateOutlineWithAI(topic, !hasImages);
+            List<Page> pages = OutlineParser.parseOutline(generatedOutline);
             
             return OutlineResult.builder()
                     .success(true)
                     .outline(generatedOutline)
                     .pages(pages)
-                    .hasImages(images != null && images.length > 0)
+                    .hasImages(hasImages)
                     .build();
             
         } catch (Exception e) {
@@ -103,10 +155,291 @@ public class OutlineGenerationServiceImpl implements OutlineGenerationService {
         }
     }
 
+    @Override
+    public SseEmitter generateOutlineStream(String topic, byte[][] images) {
+        SseEmitter emitter = new SseEmitter(300000L); // 5分钟超时
+        SseWriter.Connection connection = sseWriter.open(emitter);
+        
+        // 直接订阅异步流，模型输出期间不占用执行器线程；任何异常都推送 error 并结束连接
+        Disposable generation = streamOutlineAsync(topic, images, page -> {
+                    if (!connection.send(null, "page", page, null)) {
+                        // 抛出异常以取消上游请求，避免继续消耗 token
+                        throw new ClientDisconnectedException();
+                    }
+                })
+                .subscribe(result -> {
+                    try {
+                        if (result.isSuccess()) {
+                            connection.send(null, "complete", result, null);
+                        } else {
+                            connection.send(null, "error", Map.of("error", result.getError()), null);
+                        }
+                    } finally {
+                        connection.complete();
+                    }
+                }, e -> {
+                    try {
+                        if (e instanceof ClientDisconnectedException) {
+                            logger.info("客户端已断开，停止流式大纲生成: topic={}", topic);
+                        } else {
+                            logger.error("流式大纲生成异常: topic={}", topic, e);
+                            connection.send(null, "error", Map.of("error", String.valueOf(e.getMessage())), null);
+                        }
+                    } finally {
+                        connection.complete();
+                    }
+                });
+        // 客户端断开或超时时取消订阅，上游模型请求随之取消
+        connection.onClose(generation::dispose);
+        
+        return emitter;
+    }
+    
+    @Override
+    public Flux<ServerSentEvent<Object>> generateOutlineFlux(String topic, byte[][] images) {
+        return Flux.create(sink -> {
+            Disposable generation = streamOutlineAsync(topic, images,
+                    page -> sink.next(ServerSentEvent.<Object>builder(page).event("page").build()))
+                    .subscribe(result -> {
+                        if (result.isSuccess()) {
+                            sink.next(ServerSentEvent.<Object>builder(result).event("complete").build());
+                        } else {
+                            sink.next(ServerSentEvent.<Object>builder(Map.of("error", result.getError()))
+                                    .event("error").build());
+                        }
+                        sink.complete();
+                    }, e -> {
+                        logger.error("流式大纲生成异常: topic={}", topic, e);
+                        sink.next(ServerSentEvent.<Object>builder(Map.of("error", String.valueOf(e.getMessage())))
+                                .event("error").build());
+                        sink.complete();
+                    });
+            // 客户端断开时取消订阅，上游模型请求随之取消，避免继续消耗 token
+            sink.onDispose(generation);
+        });
+    }
+    
+    @Override
+    public OutlineResult streamOutline(String topic, byte[][] images, Consumer<Page> onPage) {
+        return streamOutlineAsync(topic, images, onPage).block();
+    }
+    
+    @Override
+    public Mono<OutlineResult> streamOutlineAsync(String topic, byte[][] images, Consumer<Page> onPage) {
+        if (topic == null || topic.trim().isEmpty()) {
+            return Mono.just(OutlineResult.builder()
+                    .success(false)
+                    .error("主题不能为空")
+                    .build());
+        }
+        
+        return Mono.defer(() -> {
+            boolean hasImages = images != null && images.length > 0;
+            String cacheKey = cacheEnabled && !hasImages ? cacheKey(topic) : null;
+            StreamingOutlineParser parser = new StreamingOutlineParser();
+            // 缓存可能是 Redis，查询放到 boundedElastic 线程
+            Mono<String> cached = cacheKey != null
+                    ? Mono.fromCallable(() -> lookupCache(cacheKey)).subscribeOn(Schedulers.boundedElastic())
+                    : Mono.empty();
+            return cached
+                    .map(outline -> {
+                        // 命中缓存时一次性交付全部页面
+                        deliver(parser.append(outline), onPage);
+                        deliver(parser.finish(), onPage);
+                        return completeOutline(topic, parser, hasImages, null, false, onPage);
+                    })
+                    .switchIfEmpty(Mono.defer(() -> {
+                        // 只有发起模型调用的请求写入缓存
+                        boolean[] leader = {cacheKey == null};
+                        Flux<String> text = cacheKey != null
+                                ? sharedOutlineText(topic, cacheKey, leader)
+                                : outlineText(topic);
+                        return streamOutlineWithAI(text, parser, onPage)
+                            .then(Mono.fromCallable(() -> {
+                                deliver(parser.finish(), onPage);
+                                return completeOutline(topic, parser, hasImages,
+                                        leader[0] ? cacheKey : null, false, onPage);
+                            }))
+                            .onErrorResume(e -> !(e instanceof PageConsumerException),
+                                    e -> Mono.fromCallable(() -> failedOutline(topic, parser, hasImages, e, onPage)));
+                    }))
+                    .onErrorMap(PageConsumerException.class, PageConsumerException::getCause);
+        });
+    }
+    
+    /**
+     * 模型输出结束：写入缓存，没有内容时改用备用大纲
+     * 最终结果以完整文本重新解析，与非流式接口完全一致
+     * @param cacheKey 需要写入的缓存键，为 null 时不写入
+     * @param failed 模型调用失败且未交付任何页面
+     */
+    private OutlineResult completeOutline(String topic, StreamingOutlineParser parser, boolean hasImages,
+                                          String cacheKey, boolean failed, Consumer<Page> onPage) {
+        String outline = parser.getText();
+        if (cacheKey != null && !failed && !outline.trim().isEmpty()) {
+            outlineCache.put(cacheKey, outline);
+        }
+        if (failed || outline.trim().isEmpty()) {
+            // 与非流式一致：AI 调用失败或返回空内容时使用备用大纲
+            StreamingOutlineParser fallback = new StreamingOutlineParser();
+            fallback.append(generateFallbackOutline(topic));
+            deliver(fallback.finish(), onPage);
+            outline = fallback.getText();
+        }
+        
+        OutlineResult result = OutlineResult.builder()
+                .success(true)
+                .outline(outline)
+                .pages(OutlineParser.parseOutline(outline))
+                .hasImages(hasImages)
+                .build();
+        logger.info("AI 流式生成大纲成功，主题: {}, 页数: {}", topic, result.getPages().size());
+        return result;
+    }
+    
+    /**
+     * 模型调用失败：已交付部分页面时返回失败结果（不能再替换为备用大纲），否则使用备用大纲
+     */
+    private OutlineResult failedOutline(String topic, StreamingOutlineParser parser, boolean hasImages,
+                                        Throwable error, Consumer<Page> onPage) {
+        logger.error("AI 流式大纲生成失败: {}", error.getMessage(), error);
+        if (parser.getPageCount() > 0) {
+            String outline = parser.getText();
+            return OutlineResult.builder()
+                    .success(false)
+                    .outline(outline)
+                    .pages(OutlineParser.parseOutline(outline))
+                    .hasImages(hasImages)
+                    .error(analyzeError(String.valueOf(error.getMessage())))
+                    .build();
+        }
+        return completeOutline(topic, parser, hasImages, null, true, onPage);
+    }
+    
+    /**
+     * 流式调用 AI，每收到一段输出就增量解析并交付完成的页面
+     * WebClient 非阻塞读取输出，等待并发许可也不占用线程；解析和回调在 boundedElastic 线程中按顺序执行
+     */
+    private Mono<Void> streamOutlineWithAI(Flux<String> text, StreamingOutlineParser parser, Consumer<Page> onPage) {
+        return text
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(chunk -> deliver(parser.append(chunk), onPage))
+                .then();
+    }
+    
+    /**
+     * 模型的流式文本输出
+     */
+    private Flux<String> outlineText(String topic) {
+        String prompt = OUTLINE_PROMPT.replace("{topic}", topic);
+        Prompt aiPrompt = new Prompt(new UserMessage(prompt));
+        
+        return providerLimiter.stream("text", configManager.getActiveTextProvider(),
+                        () -> openAiChatModel.stream(aiPrompt))
+                .filter(response -> response != null && response.getResult() != null
+                        && response.getResult().getOutput() != null
+                        && response.getResult().getOutput().getText() != null)
+                .map(response -> response.getResult().getOutput().getText());
+    }
+    
+    /**
+     * 相同缓存键的并发未命中共享一次模型调用：第一个请求发起调用，其余请求订阅同一输出，
+     * 各自用自己的解析器解析并交付页面；所有订阅者都断开时取消模型请求，结束后移除
+     * @param leader 输出参数，当前请求发起了模型调用时置为 true
+     */
+    private Flux<String> sharedOutlineText(String topic, String cacheKey, boolean[] leader) {
+        Flux<String> flight = streamFlights.computeIfAbsent(cacheKey, key -> {
+            leader[0] = true;
+            AtomicReference<Flux<String>> self = new AtomicReference<>();
+            Flux<String> shared = outlineText(topic)
+                    .doFinally(signal -> streamFlights.remove(key, self.get()))
+                    .replay()
+                    .refCount();
+            self.set(shared);
+            return shared;
+        });
+        if (!leader[0]) {
+            streamCoalesced.increment();
+        }
+        return flight;
+    }
+    
+    /**
+     * 交付页面；回调抛出的异常包装为 PageConsumerException，与模型调用异常区分
+     */
+    private static void deliver(List<Page> pages, Consumer<Page> onPage) {
+        for (Page page : pages) {
+            try {
+                onPage.accept(page);
+            } catch (RuntimeException e) {
+                throw new PageConsumerException(e);
+            }
+        }
+    }
+    
+    /**
+     * 使用 AI 生成大纲，失败时返回备用大纲
+     * @param useCache 是否使用大纲缓存并合并相同主题的并发请求
+     */
+    private String generateOutlineWithAI(String topic, boolean useCache) {
+        String outline = useCache && cacheEnabled ? cachedOutline(topic) : callOutlineModel(topic);
+        return outline != null ? outline : generateFallbackOutline(topic);
+    }
+    
+    /**
+     * 先查缓存；未命中时由第一个请求调用模型，同一主题的并发请求等待其结果
+     * 备用大纲不写入缓存
+     */
+    private String cachedOutline(String topic) {
+        String key = cacheKey(topic);
+        String cached = lookupCache(key);
+        if (cached != null) {
+            return cached;
+        }
+        
+        return outlineFlight.execute(key, () -> {
+            // 抢到调用权前可能已有请求完成并写入缓存
+            String outline = outlineCache.get(key);
+            if (outline == null) {
+                outline = callOutlineModel(topic);
+                if (outline != null) {
+                    outlineCache.put(key, outline);
+                }
+            }
+            return outline;
+        });
+    }
+    
+    private String lookupCache(String key) {
+        String cached = outlineCache.get(key);
+        if (cached != null) {
+            cacheHits.increment();
+        } else {
+            cacheMisses.increment();
+        }
+        return cached;
+    }
+    
     /**
-     * 使用 AI 生成大纲
+     * 缓存键：提示词模板版本、文本服务商和规范化后的主题
+     * 规范化只做 NFKC、去除首尾空白和合并连续空白，保证语义不变
      */
-    private String generateOutlineWithAI(String topic) {
+    private String cacheKey(String topic) {
+        String normalized = Normalizer.normalize(topic, Normalizer.Form.NFKC).strip().replaceAll("\\s+", " ");
+        return Digests.sha256Hex(PROMPT_VERSION, configManager.getActiveTextProvider(), normalized);
+    }
+    
+    private static Counter cacheCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("redink.outline.cache.requests")
+                .tag("result", result)
+                .description("大纲缓存查询次数")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 调用模型生成大纲，失败或返回空内容时返回 null
+     */
+    private String callOutlineModel(String topic) {
         try {
             // 构建提示词
             String prompt = OUTLINE_PROMPT.replace("{topic}", topic);
@@ -116,17 +449,18 @@ public class OutlineGenerationServiceImpl implements OutlineGenerationService {
             Prompt aiPrompt = new Prompt(userMessage);
             
             // 调用 AI 服务
-            ChatResponse response = openAiChatModel.call(aiPrompt);
+            ChatResponse response = providerLimiter.call("text", configManager.getActiveTextProvider(),
+                    () -> openAiChatModel.call(aiPrompt));
             
             if (response == null || response.getResult() == null) {
                 logger.error("AI 服务返回空结果");
-                return generateFallbackOutline(topic);
+                return null;
             }
             
             String generatedContent = response.getResult().getOutput().getText();
             if (generatedContent == null || generatedContent.trim().isEmpty()) {
                 logger.error("AI 服务返回空内容");
-                return generateFallbackOutline(topic);
+                return null;
             }
             
             logger.info("AI 生成大纲成功，主题: {}", topic);
@@ -134,7 +468,7 @@ public class OutlineGenerationServiceImpl implements OutlineGenerationService {
             
         } catch (Exception e) {
             logger.error("AI 大纲生成失败: {}", e.getMessage(), e);
-            return generateFallbackOutline(topic);
+            return null;
         }
     }
     
@@ -152,52 +486,6 @@ public class OutlineGenerationServiceImpl implements OutlineGenerationService {
                "<page>[总结] 总结与行动计划";
     }
 
-    /**
-     * 解析大纲文本
-     */
-    private List<Page> parseOutline(String outlineText) {
-        // 按 <page> 分割页面
-        String[] pagesRaw = outlineText.split("<page>", -1);
-        
-        List<Page> pages = Arrays.stream(pagesRaw)
-                .map(String::trim)
-                .filter(s -> !s.isEmpty())
-                .map(this::parsePage)
-                .collect(Collectors.toList());
-        
-        // 为每页分配索引
-        for (int i = 0; i < pages.size(); i++) {
-            pages.get(i).setIndex(i);
-        }
-        
-        return pages;
-    }
-    
-    /**
-     * 解析单页内容
-     */
-    private Page parsePage(String pageText) {
-        String type = "content";
-        
-        // 提取页面类型
-        Pattern typePattern = Pattern.compile("\\[(\\S+)\\]");
-        Matcher typeMatcher = typePattern.matcher(pageText);
-        if (typeMatcher.find()) {
-            String typeCn = typeMatcher.group(1);
-            type = switch (typeCn) {
-                case "封面" -> "cover";
-                case "内容" -> "content";
-                case "总结" -> "summary";
-                default -> "content";
-            };
-        }
-        
-        // 清理页面内容
-        String cleanedContent = pageText.replaceAll("\\[\\S+\\]", "").trim();
-        
-        return new Page(0, type, cleanedContent);
-    }
-    
     /**
      * 分析错误信息
      */
@@ -211,4 +499,27 @@ public class OutlineGenerationServiceImpl implements OutlineGenerationService {
                 建议：检查输入参数和系统状态
                 """;
     }
+    
+    /**
+     * 客户端断开，用于中止流式调用
+     */
+    private static class ClientDisconnectedException extends RuntimeException {
+        ClientDisconnectedException() {
+            super("客户端已断开", null, false, false);
+        }
+    }
+    
+    /**
+     * 包装页面回调抛出的异常，与模型调用异常区分后原样抛给调用方
+     */
+    private static class PageConsumerException extends RuntimeException {
+        PageConsumerException(RuntimeException cause) {
+            super(cause);
+        }
+        
+        @Override
+        public synchronized RuntimeException getCause() {
+            return (RuntimeException) super.getCause();
+        }
+    }
 }
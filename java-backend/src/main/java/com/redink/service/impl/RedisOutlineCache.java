@@ -0,0 +1,59 @@
+package com.redink.service.impl;
+
+import com.redink.service.OutlineCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Redis 大纲缓存，多副本共享
+ * 每条大纲单独一个键并设置 TTL；条目数不单独限制，由 TTL 和 Redis 的 maxmemory 策略控制
+ *
+ * 键结构：
+ * redink:outline:{key}  大纲文本
+ */
+@Component
+@ConditionalOnProperty(name = "redink.outline.cache.store", havingValue = "redis")
+public class RedisOutlineCache implements OutlineCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisOutlineCache.class);
+
+    private static final String KEY_PREFIX = "redink:outline:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration ttl;
+
+    public RedisOutlineCache(StringRedisTemplate redisTemplate,
+                             @Value("${redink.outline.cache.ttl:1h}") Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
+        logger.info("大纲缓存: Redis, ttl={}", ttl);
+    }
+
+    /**
+     * Redis 不可用时视为未命中，不影响大纲生成
+     */
+    @Override
+    public String get(String key) {
+        try {
+            return redisTemplate.opsForValue().get(KEY_PREFIX + key);
+        } catch (Exception e) {
+            logger.warn("读取大纲缓存失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, String outline) {
+        try {
+            redisTemplate.opsForValue().set(KEY_PREFIX + key, outline, ttl);
+        } catch (Exception e) {
+            logger.warn("写入大纲缓存失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.redink.service.impl;
+
+import com.redink.model.TaskState;
+import com.redink.service.TaskStateRepository;
+import com.redink.util.Digests;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Redis 任务状态存储
+ * generated/failed 以 Hash 保存，多副本可共享同一任务的状态；
+ * 封面参考图和用户图片写入共享的 history/{taskId} 目录，Redis 中只保存引用和摘要：
+ * 读取时按需加载图片文件（轮询任务状态不读取图片），写入时摘要未变化的图片不重写
+ *
+ * 键结构：
+ * redink:task:{taskId}:meta       fullOutline / userTopic / userImageCount / coverRef / coverDigest / userImagesDigest
+ * redink:task:{taskId}:generated  index -> filename
+ * redink:task:{taskId}:failed     index -> error
+ */
+@Component
+@ConditionalOnProperty(name = "redink.task-state.store", havingValue = "redis")
+public class RedisTaskStateRepository implements TaskStateRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisTaskStateRepository.class);
+
+    private static final String KEY_PREFIX = "redink:task:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration ttl;
+
+    public RedisTaskStateRepository(StringRedisTemplate redisTemplate,
+                                    @Value("${redink.task-state.expire-after-access:2h}") Duration ttl) {
+        this.redisTemplate = redisTemplate;
+        this.ttl = ttl;
+        logger.info("任务状态存储: Redis, ttl={}", ttl);
+    }
+
+    /**
+     * 三个 Hash 的读取和过期时间刷新在一次管道往返中完成；图片数据在首次访问时才从文件读取
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public TaskState get(String taskId) {
+        if (taskId == null) {
+            return null;
+        }
+
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public Object execute(RedisOperations operations) {
+                operations.opsForHash().entries(metaKey(taskId));
+                operations.opsForHash().entries(generatedKey(taskId));
+                operations.opsForHash().entries(failedKey(taskId));
+                touch(operations, taskId);
+                return null;
+            }
+        });
+
+        Map<Object, Object> meta = (Map<Object, Object>) results.get(0);
+        if (meta == null || meta.isEmpty()) {
+            return null;
+        }
+
+        LazyTaskState state = new LazyTaskState(taskId, (String) meta.get("coverRef"),
+                Integer.parseInt((String) meta.getOrDefault("userImageCount", "0")),
+                (String) meta.get("coverDigest"), (String) meta.get("userImagesDigest"));
+        state.setGenerated(toIndexMap((Map<Object, Object>) results.get(1)));
+        state.setFailed(toIndexMap((Map<Object, Object>) results.get(2)));
+        state.setFullOutline((String) meta.get("fullOutline"));
+        state.setUserTopic((String) meta.get("userTopic"));
+        return state;
+    }
+
+    /**
+     * 整体写入：meta、generated、failed 先删除再写入（同一个 MULTI 事务），
+     * 同一 taskId 重新运行时不会保留上次的结果
+     */
+    @Override
+    public void put(String taskId, TaskState state) {
+        Map<String, String> meta = writePayloads(taskId, state);
+        Map<String, String> generated = toFields(state.getGenerated());
+        Map<String, String> failed = toFields(state.getFailed());
+
+        redisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public List<Object> execute(RedisOperations operations) {
+                operations.multi();
+                operations.delete(List.of(metaKey(taskId), generatedKey(taskId), failedKey(taskId)));
+                operations.opsForHash().putAll(metaKey(taskId), meta);
+                if (!generated.isEmpty()) {
+                    operations.opsForHash().putAll(generatedKey(taskId), generated);
+                }
+                if (!failed.isEmpty()) {
+                    operations.opsForHash().putAll(failedKey(taskId), failed);
+                }
+                touch(operations, taskId);
+                return operations.exec();
+            }
+        });
+    }
+
+    /**
+     * 只替换 meta，generated/failed 保持不变
+     */
+    @Override
+    public void updateContext(String taskId, TaskState state) {
+        Map<String, String> meta = writePayloads(taskId, state);
+
+        redisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public List<Object> execute(RedisOperations operations) {
+                operations.multi();
+                operations.delete(metaKey(taskId));
+                operations.opsForHash().putAll(metaKey(taskId), meta);
+                touch(operations, taskId);
+                return operations.exec();
+            }
+        });
+    }
+
+    @Override
+    public void markGenerated(String taskId, int index, String filename) {
+        String field = String.valueOf(index);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public Object execute(RedisOperations operations) {
+                operations.opsForHash().put(generatedKey(taskId), field, filename);
+                operations.opsForHash().delete(failedKey(taskId), field);
+                touch(operations, taskId);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void markFailed(String taskId, int index, String error) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public Object execute(RedisOperations operations) {
+                operations.opsForHash().put(failedKey(taskId), String.valueOf(index), error);
+                touch(operations, taskId);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void remove(String taskId) {
+        redisTemplate.delete(List.of(metaKey(taskId), generatedKey(taskId), failedKey(taskId)));
+        TaskPayloadFiles.delete(taskId);
+    }
+
+    /**
+     * 写入图片文件并返回 meta 字段
+     * 从本存储读出且未访问过图片的状态直接沿用原引用；其余按摘要比较，与 Redis 中记录的摘要相同时不重写文件
+     */
+    private Map<String, String> writePayloads(String taskId, TaskState state) {
+        Map<String, String> meta = new HashMap<>();
+        meta.put("fullOutline", state.getFullOutline() != null ? state.getFullOutline() : "");
+        meta.put("userTopic", state.getUserTopic() != null ? state.getUserTopic() : "");
+
+        if (state instanceof LazyTaskState lazy && lazy.taskId.equals(taskId) && !lazy.payloadsLoaded()) {
+            lazy.copyRefs(meta);
+            return meta;
+        }
+
+        List<Object> stored = redisTemplate.opsForHash().multiGet(metaKey(taskId),
+                List.of("coverDigest", "userImagesDigest"));
+        try {
+            byte[] cover = state.getCoverImage();
+            if (cover != null) {
+                String digest = Digests.sha256Hex(cover);
+                String ref = TaskPayloadFiles.coverFile(taskId).toString();
+                if (!digest.equals(stored.get(0))) {
+                    ref = TaskPayloadFiles.writeCover(taskId, cover).toString();
+                }
+                meta.put("coverRef", ref);
+                meta.put("coverDigest", digest);
+            }
+            byte[][] userImages = state.getUserImages();
+            if (userImages != null) {
+                String digest = userImagesDigest(userImages);
+                if (!digest.equals(stored.get(1))) {
+                    TaskPayloadFiles.writeUserImages(taskId, userImages);
+                }
+                meta.put("userImageCount", String.valueOf(userImages.length));
+                meta.put("userImagesDigest", digest);
+            }
+        } catch (IOException e) {
+            logger.warn("写入任务图片数据失败: taskId={}", taskId, e);
+        }
+        return meta;
+    }
+
+    private static String userImagesDigest(byte[][] userImages) {
+        String[] digests = new String[userImages.length];
+        for (int i = 0; i < userImages.length; i++) {
+            digests[i] = userImages[i] != null ? Digests.sha256Hex(userImages[i]) : "";
+        }
+        return Digests.sha256Hex(digests);
+    }
+
+    /**
+     * 每次访问刷新过期时间，与读写命令在同一次往返中发送
+     */
+    @SuppressWarnings("unchecked")
+    private void touch(RedisOperations<String, String> operations, String taskId) {
+        operations.expire(metaKey(taskId), ttl);
+        operations.expire(generatedKey(taskId), ttl);
+        operations.expire(failedKey(taskId), ttl);
+    }
+
+    private static Map<Integer, String> toIndexMap(Map<Object, Object> entries) {
+        Map<Integer, String> result = new ConcurrentHashMap<>();
+        if (entries != null) {
+            entries.forEach((field, value) -> result.put(Integer.parseInt((String) field), (String) value));
+        }
+        return result;
+    }
+
+    private static Map<String, String> toFields(Map<Integer, String> values) {
+        Map<String, String> fields = new HashMap<>();
+        if (values != null) {
+            values.forEach((index, value) -> fields.put(String.valueOf(index), value));
+        }
+        return fields;
+    }
+
+    private String metaKey(String taskId) {
+        return KEY_PREFIX + taskId + ":meta";
+    }
+
+    private String generatedKey(String taskId) {
+        return KEY_PREFIX + taskId + ":generated";
+    }
+
+    private String failedKey(String taskId) {
+        return KEY_PREFIX + taskId + ":failed";
+    }
+
+    /**
+     * 从 Redis 读出的任务状态，封面和用户图片在首次访问时从文件读取
+     */
+    private static final class LazyTaskState extends TaskState {
+        private final String taskId;
+        private final String coverRef;
+        private final int userImageCount;
+        private final String coverDigest;
+        private final String userImagesDigest;
+        private boolean coverLoaded;
+        private boolean userImagesLoaded;
+
+        LazyTaskState(String taskId, String coverRef, int userImageCount, String coverDigest,
+                      String userImagesDigest) {
+            this.taskId = taskId;
+            this.coverRef = coverRef;
+            this.userImageCount = userImageCount;
+            this.coverDigest = coverDigest;
+            this.userImagesDigest = userImagesDigest;
+        }
+
+        @Override
+        public synchronized byte[] getCoverImage() {
+            if (!coverLoaded) {
+                coverLoaded = true;
+                if (coverRef != null) {
+                    try {
+                        super.setCoverImage(TaskPayloadFiles.readCover(taskId));
+                    } catch (IOException e) {
+                        logger.warn("读取任务封面失败: taskId={}", taskId, e);
+                    }
+                }
+            }
+            return super.getCoverImage();
+        }
+
+        @Override
+        public synchronized void setCoverImage(byte[] coverImage) {
+            coverLoaded = true;
+            super.setCoverImage(coverImage);
+        }
+
+        @Override
+        public synchronized boolean hasCoverImage() {
+            return coverLoaded ? super.getCoverImage() != null : coverRef != null;
+        }
+
+        @Override
+        public synchronized byte[][] getUserImages() {
+            if (!userImagesLoaded) {
+                userImagesLoaded = true;
+                try {
+                    super.setUserImages(TaskPayloadFiles.readUserImages(taskId, userImageCount));
+                } catch (IOException e) {
+                    logger.warn("读取任务用户图片失败: taskId={}", taskId, e);
+                }
+            }
+            return super.getUserImages();
+        }
+
+        @Override
+        public synchronized void setUserImages(byte[][] userImages) {
+            userImagesLoaded = true;
+            super.setUserImages(userImages);
+        }
+
+        synchronized boolean payloadsLoaded() {
+            return coverLoaded || userImagesLoaded;
+        }
+
+        /**
+         * 沿用读取时的图片引用和摘要
+         */
+        void copyRefs(Map<String, String> meta) {
+            if (coverRef != null) {
+                meta.put("coverRef", coverRef);
+            }
+            if (coverDigest != null) {
+                meta.put("coverDigest", coverDigest);
+            }
+            if (userImageCount > 0) {
+                meta.put("userImageCount", String.valueOf(userImageCount));
+            }
+            if (userImagesDigest != null) {
+                meta.put("userImagesDigest", userImagesDigest);
+            }
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package com.redink.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redink.model.Page;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 图片生成任务的预写日志（history/render_jobs.log）
+ * 页面在提交到执行器之前先写入日志，生成结束（成功或重试耗尽）后追加 done，任务结束后追加 finish；
+ * 启动时重放日志，未结束的任务交给 ImageGenerationServiceImpl 继续生成（至少一次）。
+ * 日志条数达到阈值时由后台压缩：锁内把日志轮转为 render_jobs.log.compacting 并复制进行中的任务，
+ * 快照（render_jobs.snapshot）在锁外写入，完成后删除轮转出的日志段，追加日志不等待压缩的 I/O。
+ * 启动时依次重放 render_jobs.snapshot、render_jobs.log.compacting 和 render_jobs.log
+ */
+@Component
+public class RenderJobJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(RenderJobJournal.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final boolean enabled;
+    private final boolean fsync;
+    private final int compactThreshold;
+    private final Path journalFile;
+    private final Path compactingFile;
+    private final Path snapshotFile;
+
+    // 保证同时只有一个压缩，先于 this 获取
+    private final Object compactLock = new Object();
+
+    // 以下字段由 this 保护
+    // taskId -> 进行中的任务，按开始顺序排列
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private FileChannel channel;
+    private int pendingEntries;
+
+    // 启动时重放得到的未结束任务
+    private final List<Job> recovered = new ArrayList<>();
+
+    public RenderJobJournal(MeterRegistry meterRegistry,
+                            @Value("${redink.jobs.enabled:true}") boolean enabled,
+                            @Value("${redink.jobs.fsync:false}") boolean fsync,
+                            @Value("${redink.jobs.compact-threshold:1000}") int compactThreshold,
+                            @Value("${redink.jobs.max-age:24h}") Duration maxAge) {
+        this.enabled = enabled;
+        this.fsync = fsync;
+        this.compactThreshold = Math.max(1, compactThreshold);
+        this.journalFile = Paths.get("history").resolve("render_jobs.log");
+        this.compactingFile = journalFile.resolveSibling("render_jobs.log.compacting");
+        this.snapshotFile = journalFile.resolveSibling("render_jobs.snapshot");
+
+        Gauge.builder("redink.image.jobs.active", this, RenderJobJournal::activeJobs)
+                .description("日志中进行中的图片生成任务数")
+                .register(meterRegistry);
+
+        if (enabled) {
+            load(maxAge);
+            compact();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 启动时未结束的任务（按开始顺序），只能取一次
+     */
+    public synchronized List<Job> takeRecoveredJobs() {
+        List<Job> taken = new ArrayList<>(recovered);
+        recovered.clear();
+        return taken;
+    }
+
+    /**
+     * 记录任务开始
+     * @param userImageCount 用户图片数量，图片本身由 TaskPayloadFiles 保存
+     */
+    public void taskStarted(String taskId, String fullOutline, String userTopic, int userImageCount) {
+        Map<String, Object> entry = entry("task", taskId);
+        entry.put("outline", fullOutline);
+        entry.put("topic", userTopic);
+        entry.put("userImages", userImageCount);
+        entry.put("createdAt", System.currentTimeMillis());
+        append(entry);
+    }
+
+    /**
+     * 记录页面进入队列，需在提交到执行器之前调用
+     */
+    public void pageQueued(String taskId, Page page, boolean cover) {
+        Map<String, Object> entry = entry("page", taskId);
+        entry.put("index", page.getIndex());
+        entry.put("type", page.getType());
+        entry.put("content", page.getContent());
+        entry.put("cover", cover);
+        append(entry);
+    }
+
+    /**
+     * 记录页面生成结束（成功或自动重试耗尽），恢复时不再生成
+     */
+    public void pageDone(String taskId, int index) {
+        Map<String, Object> entry = entry("done", taskId);
+        entry.put("index", index);
+        append(entry);
+    }
+
+    /**
+     * 记录不再有新页面加入（大纲已完整）
+     */
+    public void pagesClosed(String taskId, String fullOutline) {
+        Map<String, Object> entry = entry("close", taskId);
+        entry.put("outline", fullOutline);
+        append(entry);
+    }
+
+    /**
+     * 记录任务结束
+     */
+    public void taskFinished(String taskId) {
+        append(entry("finish", taskId));
+    }
+
+    public synchronized int activeJobs() {
+        return jobs.size();
+    }
+
+    /**
+     * 定期检查，日志条数达到阈值时压缩
+     */
+    @Scheduled(fixedDelayString = "${redink.jobs.compact-interval:60000}")
+    public void compactIfNeeded() {
+        int pending;
+        synchronized (this) {
+            pending = pendingEntries;
+        }
+        if (enabled && pending >= compactThreshold) {
+            compact();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        closeChannel();
+    }
+
+    private Map<String, Object> entry(String op, String taskId) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("op", op);
+        entry.put("taskId", taskId);
+        return entry;
+    }
+
+    private synchronized void append(Map<String, Object> entry) {
+        if (!enabled) {
+            return;
+        }
+        apply(entry);
+        try {
+            write(objectMapper.writeValueAsString(entry));
+            pendingEntries++;
+        } catch (IOException e) {
+            logger.error("写入任务日志失败: {}", entry.get("taskId"), e);
+        }
+    }
+
+    private void write(String line) throws IOException {
+        if (channel == null) {
+            Files.createDirectories(journalFile.getParent());
+            channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * 将一条日志应用到内存中的任务表，调用方需持有锁
+     */
+    private void apply(Map<String, Object> entry) {
+        String taskId = (String) entry.get("taskId");
+        String op = (String) entry.get("op");
+        if ("task".equals(op)) {
+            Job job = new Job(taskId);
+            job.fullOutline = (String) entry.get("outline");
+            job.userTopic = (String) entry.get("topic");
+            job.userImageCount = entry.get("userImages") instanceof Number n ? n.intValue() : 0;
+            job.createdAt = entry.get("createdAt") instanceof Number n ? n.longValue() : System.currentTimeMillis();
+            jobs.put(taskId, job);
+            return;
+        }
+        Job job = jobs.get(taskId);
+        if (job == null) {
+            return;
+        }
+        switch (op) {
+            case "page" -> {
+                int index = ((Number) entry.get("index")).intValue();
+                job.pages.put(index, new Page(index, (String) entry.get("type"), (String) entry.get("content")));
+                if (Boolean.TRUE.equals(entry.get("cover"))) {
+                    job.coverIndex = index;
+                }
+            }
+            case "done" -> job.done.add(((Number) entry.get("index")).intValue());
+            case "close" -> {
+                job.closed = true;
+                if (entry.get("outline") != null) {
+                    job.fullOutline = (String) entry.get("outline");
+                }
+            }
+            case "finish" -> jobs.remove(taskId);
+            default -> logger.warn("未知的任务日志操作: {}", op);
+        }
+    }
+
+    /**
+     * 重放快照和日志，随后由构造方法压缩为新快照
+     */
+    private synchronized void load(Duration maxAge) {
+        replay(snapshotFile);
+        // 快照写入后、日志段删除前崩溃时会重放已并入快照的日志段：
+        // task 之后的日志都在同一段或更新的段中，重放结果不变
+        pendingEntries = replay(compactingFile) + replay(journalFile);
+
+        long cutoff = System.currentTimeMillis() - maxAge.toMillis();
+        jobs.values().removeIf(job -> {
+            if (job.createdAt < cutoff) {
+                logger.warn("任务超过恢复时限，不再继续生成: taskId={}", job.taskId);
+                return true;
+            }
+            return false;
+        });
+        // 复制一份，恢复过程中追加的日志不影响快照
+        jobs.values().forEach(job -> recovered.add(job.copy()));
+        logger.info("任务日志加载完成: 未结束任务={}", recovered.size());
+    }
+
+    /**
+     * 重放一个日志文件；末尾的半行（写入时崩溃）及其后的内容被丢弃，调用方需持有锁
+     * @return 重放的条数
+     */
+    @SuppressWarnings("unchecked")
+    private int replay(Path file) {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        int replayed = 0;
+        try {
+            String[] lines = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).split("\n");
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i].isBlank()) {
+                    continue;
+                }
+                try {
+                    apply(objectMapper.readValue(lines[i], Map.class));
+                    replayed++;
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("任务日志 {} 第 {} 行损坏，丢弃其后的内容", file.getFileName(), i + 1);
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("读取任务日志失败: {}", file, e);
+        }
+        return replayed;
+    }
+
+    /**
+     * 压缩：锁内只复制进行中的任务并轮转日志，快照序列化和写入在锁外完成，不阻塞追加
+     * 快照原子替换后再删除轮转出的日志段。调用方不能持有 this
+     */
+    private void compact() {
+        synchronized (compactLock) {
+            List<Job> snapshot = new ArrayList<>();
+            int compacted;
+            synchronized (this) {
+                jobs.values().forEach(job -> snapshot.add(job.copy()));
+                compacted = pendingEntries;
+                try {
+                    rotate();
+                } catch (IOException e) {
+                    logger.error("轮转任务日志失败", e);
+                    return;
+                }
+                pendingEntries = 0;
+            }
+
+            try {
+                StringBuilder lines = new StringBuilder();
+                for (Job job : snapshot) {
+                    writeJob(job, lines);
+                }
+                Files.createDirectories(snapshotFile.getParent());
+                TaskPayloadFiles.writeAtomically(snapshotFile, lines.toString().getBytes(StandardCharsets.UTF_8));
+                Files.deleteIfExists(compactingFile);
+                logger.debug("任务日志压缩完成: jobs={}, compactedEntries={}", snapshot.size(), compacted);
+            } catch (IOException e) {
+                // 轮转出的日志段保留，下次压缩时并入，条数计回待压缩数
+                logger.error("任务日志压缩失败", e);
+                synchronized (this) {
+                    pendingEntries += compacted;
+                }
+            }
+        }
+    }
+
+    /**
+     * 把当前日志移到压缩中的日志段，下次追加时创建新日志，调用方需持有锁
+     * 上次压缩失败遗留的日志段存在时，把当前日志追加到其后
+     */
+    private void rotate() throws IOException {
+        closeChannel();
+        if (!Files.exists(journalFile)) {
+            return;
+        }
+        if (Files.exists(compactingFile)) {
+            Files.write(compactingFile, Files.readAllBytes(journalFile), StandardOpenOption.APPEND);
+            Files.delete(journalFile);
+        } else {
+            Files.move(journalFile, compactingFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * 按日志格式写出一个任务的当前状态
+     */
+    private void writeJob(Job job, StringBuilder lines) throws IOException {
+        Map<String, Object> task = entry("task", job.taskId);
+        task.put("outline", job.fullOutline);
+        task.put("topic", job.userTopic);
+        task.put("userImages", job.userImageCount);
+        task.put("createdAt", job.createdAt);
+        lines.append(objectMapper.writeValueAsString(task)).append('\n');
+        for (Page page : job.pages.values()) {
+            Map<String, Object> entry = entry("page", job.taskId);
+            entry.put("index", page.getIndex());
+            entry.put("type", page.getType());
+            entry.put("content", page.getContent());
+            entry.put("cover", Integer.valueOf(page.getIndex()).equals(job.coverIndex));
+            lines.append(objectMapper.writeValueAsString(entry)).append('\n');
+        }
+        for (Integer index : job.done) {
+            Map<String, Object> entry = entry("done", job.taskId);
+            entry.put("index", index);
+            lines.append(objectMapper.writeValueAsString(entry)).append('\n');
+        }
+        if (job.closed) {
+            lines.append(objectMapper.writeValueAsString(entry("close", job.taskId))).append('\n');
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("关闭任务日志失败", e);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * 日志中的一个任务
+     */
+    public static final class Job {
+        final String taskId;
+        String fullOutline;
+        String userTopic;
+        int userImageCount;
+        long createdAt;
+        Integer coverIndex;
+        boolean closed;
+        final Map<Integer, Page> pages = new LinkedHashMap<>();
+        final Set<Integer> done = new LinkedHashSet<>();
+
+        Job(String taskId) {
+            this.taskId = taskId;
+        }
+
+        Job copy() {
+            Job copy = new Job(taskId);
+            copy.fullOutline = fullOutline;
+            copy.userTopic = userTopic;
+            copy.userImageCount = userImageCount;
+            copy.createdAt = createdAt;
+            copy.coverIndex = coverIndex;
+            copy.closed = closed;
+            copy.pages.putAll(pages);
+            copy.done.addAll(done);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.redink.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.redink.util.SseWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 图片生成任务的 SSE 事件流
+ * 每个事件带序号 id（{流标识}-{序号}），最近的事件保存在有界回放缓冲区中；
+ * 客户端断线后携带 Last-Event-ID 重新订阅，先补发错过的事件再接收后续事件。
+ * 流标识在每次开始任务时重新生成，进程重启后旧 id 不会与新事件混淆。
+ * 任务结束后事件流保留一段时间，供断线的客户端取回 finish 事件。
+ * 重启后恢复的任务开始时没有订阅者，其事件流不淘汰回放缓冲区中的事件（事件数由任务页数决定），
+ * 任务结束后同样保留 retention，期间重新订阅的客户端可以从头收到全部事件。
+ * 写出由 SseWriter 异步完成，同一页面未发出的进度事件会被该页更新的事件取代；
+ * 同一事件流可同时被 SseEmitter（servlet）和 Flux（reactive）订阅
+ */
+@Component
+public class TaskEventHub {
+
+    // 回放缓冲区不完整（事件已淘汰或来自上一个流）时先发送该事件，客户端应通过任务状态接口同步
+    static final String RESYNC_EVENT = "resync";
+
+    private final SseWriter sseWriter;
+    private final int bufferSize;
+    // SseEmitter 超时（毫秒），0 表示不超时
+    private final long emitterTimeout;
+
+    // 进行中的任务
+    private final Map<String, EventStream> active = new ConcurrentHashMap<>();
+    // 已结束的任务，保留一段时间供重连回放
+    private final Cache<String, EventStream> completed;
+
+    public TaskEventHub(SseWriter sseWriter,
+                        @Value("${redink.sse.replay-buffer-size:256}") int bufferSize,
+                        @Value("${redink.sse.timeout:0}") long emitterTimeout,
+                        @Value("${redink.sse.retention:10m}") Duration retention) {
+        this.sseWriter = sseWriter;
+        this.bufferSize = Math.max(1, bufferSize);
+        this.emitterTimeout = emitterTimeout;
+        this.completed = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(retention)
+                .build();
+    }
+
+    /**
+     * 开始任务的事件流，同一任务已有的事件流被替换
+     */
+    public void open(String taskId) {
+        open(taskId, bufferSize);
+    }
+
+    /**
+     * 开始重启后恢复的任务的事件流，回放缓冲区保留全部事件
+     */
+    public void openRecovered(String taskId) {
+        open(taskId, Integer.MAX_VALUE);
+    }
+
+    private void open(String taskId, int capacity) {
+        EventStream previous = active.put(taskId, new EventStream(taskId, capacity));
+        completed.invalidate(taskId);
+        if (previous != null) {
+            previous.complete();
+        }
+    }
+
+    /**
+     * 订阅任务事件
+     * @param lastEventId 客户端收到的最后一个事件 id，为 null 时从头回放
+     * @return SSE 发射器，任务不存在时返回 null
+     */
+    public SseEmitter subscribe(String taskId, String lastEventId) {
+        EventStream stream = stream(taskId);
+        if (stream == null) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(emitterTimeout);
+        stream.attach(sseWriter.open(emitter), lastEventId);
+        return emitter;
+    }
+
+    /**
+     * 以 Flux 订阅任务事件，订阅时才开始回放和接收
+     * @param lastEventId 客户端收到的最后一个事件 id，为 null 时从头回放
+     * @return 事件流，任务不存在时返回 null
+     */
+    public Flux<ServerSentEvent<Object>> subscribeFlux(String taskId, String lastEventId) {
+        EventStream stream = stream(taskId);
+        if (stream == null) {
+            return null;
+        }
+        return Flux.defer(() -> {
+            SseWriter.FluxConnection connection = sseWriter.openFlux();
+            stream.attach(connection, lastEventId);
+            return connection.flux();
+        });
+    }
+
+    /**
+     * 发布事件；任务没有事件流时忽略
+     */
+    public void publish(String taskId, String event, Object data) {
+        EventStream stream = active.get(taskId);
+        if (stream != null) {
+            stream.publish(event, data);
+        }
+    }
+
+    /**
+     * 任务结束：结束所有订阅，事件流转入保留区
+     */
+    public void complete(String taskId) {
+        EventStream stream = active.remove(taskId);
+        if (stream != null) {
+            stream.complete();
+            completed.put(taskId, stream);
+        }
+    }
+
+    private EventStream stream(String taskId) {
+        EventStream stream = active.get(taskId);
+        return stream != null ? stream : completed.getIfPresent(taskId);
+    }
+
+    /**
+     * 单个任务的事件序列和订阅者，由 this 保护；
+     * 订阅者列表可在锁外移除（连接关闭回调可能在持有连接锁的线程中执行）
+     */
+    private final class EventStream {
+        final String taskId;
+        // 流标识，区分同一任务的多次运行
+        final String streamId = Long.toString(System.currentTimeMillis(), 36);
+        // 回放缓冲区容量，超出时淘汰最早的事件
+        final int capacity;
+        final Deque<Event> buffer = new ArrayDeque<>();
+        final List<SseWriter.Sink> connections = new CopyOnWriteArrayList<>();
+        long lastSequence;
+        boolean done;
+
+        EventStream(String taskId, int capacity) {
+            this.taskId = taskId;
+            this.capacity = capacity;
+        }
+
+        synchronized void publish(String name, Object data) {
+            Event event = new Event(++lastSequence, name, data);
+            buffer.addLast(event);
+            if (buffer.size() > capacity) {
+                buffer.removeFirst();
+            }
+            // send 可能同步触发关闭回调（detach 修改同一列表），不能在 removeIf 中发送：
+            // 遍历快照，发送完成后再移除已关闭的连接
+            List<SseWriter.Sink> closed = null;
+            for (SseWriter.Sink connection : connections) {
+                if (!send(connection, event)) {
+                    if (closed == null) {
+                        closed = new ArrayList<>();
+                    }
+                    closed.add(connection);
+                }
+            }
+            if (closed != null) {
+                connections.removeAll(closed);
+            }
+        }
+
+        synchronized void attach(SseWriter.Sink connection, String lastEventId) {
+            long after = parseSequence(lastEventId);
+            long firstBuffered = buffer.isEmpty() ? lastSequence + 1 : buffer.peekFirst().sequence();
+            if (after + 1 < firstBuffered) {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("taskId", taskId);
+                data.put("message", "部分事件已过期，请通过任务状态接口同步");
+                connection.send(null, RESYNC_EVENT, data, null);
+            }
+            for (Event event : buffer) {
+                if (event.sequence() > after && !send(connection, event)) {
+                    return;
+                }
+            }
+            if (done) {
+                connection.complete();
+                return;
+            }
+            connections.add(connection);
+            connection.onClose(() -> detach(connection));
+        }
+
+        void detach(SseWriter.Sink connection) {
+            connections.remove(connection);
+        }
+
+        synchronized void complete() {
+            done = true;
+            connections.forEach(SseWriter.Sink::complete);
+            connections.clear();
+        }
+
+        /**
+         * 解析 Last-Event-ID；来自其他流（上一次运行或重启前）的 id 视为未收到任何事件
+         */
+        long parseSequence(String lastEventId) {
+            if (lastEventId == null || lastEventId.isBlank()) {
+                return 0;
+            }
+            int separator = lastEventId.lastIndexOf('-');
+            if (separator < 0 || !lastEventId.substring(0, separator).equals(streamId)) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(lastEventId.substring(separator + 1).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * 放入连接的发送队列，连接已关闭时返回 false
+         */
+        boolean send(SseWriter.Sink connection, Event event) {
+            return connection.send(streamId + "-" + event.sequence(), event.name(), event.data(),
+                    coalesceKey(event));
+        }
+    }
+
+    /**
+     * 合并键：同一页的进度、完成、失败事件只需发送最新的一个，其他进度事件只保留最新
+     */
+    private static String coalesceKey(Event event) {
+        String name = event.name();
+        if (!"progress".equals(name) && !"complete".equals(name) && !"error".equals(name)) {
+            return null;
+        }
+        if (event.data() instanceof Map<?, ?> data && data.get("index") != null) {
+            return "page:" + data.get("index");
+        }
+        return "progress".equals(name) ? "progress" : null;
+    }
+
+    private record Event(long sequence, String name, Object data) {
+    }
+}
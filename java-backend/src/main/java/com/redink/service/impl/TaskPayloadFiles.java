@@ -0,0 +1,118 @@
+package com.redink.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.Stream;
+
+/**
+ * 任务大体积数据（封面参考图、用户图片）的文件存储
+ * 保存在 history/{taskId} 下，内存或 Redis 中只保留引用
+ */
+final class TaskPayloadFiles {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskPayloadFiles.class);
+
+    private static final Path HISTORY_DIR = Paths.get("history");
+    private static final String COVER_FILE = ".cover_ref.bin";
+    private static final String USER_IMAGE_PREFIX = ".user_";
+
+    private TaskPayloadFiles() {
+    }
+
+    static Path historyDir() {
+        return HISTORY_DIR;
+    }
+
+    static Path taskDir(String taskId) {
+        return HISTORY_DIR.resolve(taskId);
+    }
+
+    static Path coverFile(String taskId) {
+        return taskDir(taskId).resolve(COVER_FILE);
+    }
+
+    /**
+     * 写入封面参考图
+     * @return 文件路径
+     */
+    static Path writeCover(String taskId, byte[] coverImage) throws IOException {
+        Path file = taskDir(taskId).resolve(COVER_FILE);
+        Files.createDirectories(file.getParent());
+        writeAtomically(file, coverImage);
+        return file;
+    }
+
+    static byte[] readCover(String taskId) throws IOException {
+        Path file = taskDir(taskId).resolve(COVER_FILE);
+        return Files.exists(file) ? Files.readAllBytes(file) : null;
+    }
+
+    static void writeUserImages(String taskId, byte[][] userImages) throws IOException {
+        if (userImages == null) {
+            return;
+        }
+        Files.createDirectories(taskDir(taskId));
+        for (int i = 0; i < userImages.length; i++) {
+            if (userImages[i] != null) {
+                writeAtomically(taskDir(taskId).resolve(USER_IMAGE_PREFIX + i + ".bin"), userImages[i]);
+            }
+        }
+    }
+
+    static byte[][] readUserImages(String taskId, int count) throws IOException {
+        if (count <= 0) {
+            return null;
+        }
+        byte[][] userImages = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            Path file = taskDir(taskId).resolve(USER_IMAGE_PREFIX + i + ".bin");
+            userImages[i] = Files.exists(file) ? Files.readAllBytes(file) : null;
+        }
+        return userImages;
+    }
+
+    /**
+     * 先写临时文件再原子替换，并发读取的一方只会看到完整的旧文件或新文件；
+     * 临时文件名唯一，同一文件的并发写入互不干扰（最后替换的生效）
+     */
+    static void writeAtomically(Path file, byte[] data) throws IOException {
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName() + ".", ".tmp");
+        try {
+            Files.write(tmp, data);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 删除任务的全部大体积数据文件
+     */
+    static void delete(String taskId) {
+        Path dir = taskDir(taskId);
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> {
+                        String name = p.getFileName().toString();
+                        return name.equals(COVER_FILE) || name.startsWith(USER_IMAGE_PREFIX);
+                    })
+                    .forEach(p -> {
+                        try {
+                            Files.deleteIfExists(p);
+                        } catch (IOException e) {
+                            logger.warn("删除任务数据文件失败: {}", p, e);
+                        }
+                    });
+        } catch (IOException e) {
+            logger.warn("清理任务数据文件失败: {}", taskId, e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.redink.util;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发上限（AIMD）
+ * 成功且耗时正常时上限缓慢增加（每轮约 +1），服务商限流、超时或耗时超过基线的 latencyFactor 倍时
+ * 上限按比例减小；上限在 [minLimit, maxLimit] 之间变化，基线为成功调用耗时的指数移动平均
+ */
+public class AdaptiveConcurrencyLimit {
+
+    // 拥塞时上限缩小的比例
+    private static final double BACKOFF_RATIO = 0.75;
+    // 耗时基线的平滑系数
+    private static final double BASELINE_ALPHA = 0.05;
+
+    /**
+     * 调用结果
+     */
+    public enum Outcome {
+        /** 成功 */
+        SUCCESS,
+        /** 服务商过载：限流、5xx 网关错误、超时 */
+        OVERLOAD,
+        /** 其他服务商错误，不影响并发上限 */
+        FAILURE,
+        /** 与服务商无关（中断、调用方异常），不计入统计 */
+        IGNORED
+    }
+
+    private final int minLimit;
+    private volatile int maxLimit;
+    private final double latencyFactor;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private double baselineNanos = -1;
+    private long lastDecreaseNanos;
+
+    public AdaptiveConcurrencyLimit(int minLimit, int maxLimit, double latencyFactor) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.minLimit = Math.max(1, Math.min(minLimit, this.maxLimit));
+        this.latencyFactor = latencyFactor;
+        this.limit = this.maxLimit;
+    }
+
+    /**
+     * 获取许可，超过当前上限时等待
+     * @return 超时仍未获取到时返回 false
+     */
+    public boolean acquire(Duration timeout) throws InterruptedException {
+        long remaining = timeout.toNanos();
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = available.awaitNanos(remaining);
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 不等待地获取许可，超过当前上限时返回 false
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放许可并根据调用结果调整上限
+     * @param latencyNanos 调用耗时
+     */
+    public void release(long latencyNanos, Outcome outcome) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (outcome == Outcome.SUCCESS) {
+                if (baselineNanos < 0) {
+                    baselineNanos = latencyNanos;
+                } else {
+                    boolean slow = latencyNanos > baselineNanos * latencyFactor;
+                    baselineNanos += (latencyNanos - baselineNanos) * BASELINE_ALPHA;
+                    if (slow) {
+                        decrease();
+                    } else {
+                        limit = Math.min(maxLimit, limit + 1.0 / limit);
+                    }
+                }
+            } else if (outcome == Outcome.OVERLOAD) {
+                decrease();
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 同一批在途请求集中失败时只缩小一次：两次缩小至少间隔一个基线耗时
+     */
+    private void decrease() {
+        long now = System.nanoTime();
+        long interval = baselineNanos > 0 ? (long) baselineNanos : TimeUnit.SECONDS.toNanos(1);
+        if (lastDecreaseNanos != 0 && now - lastDecreaseNanos < interval) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * 调整最大值（配置重新加载时），当前上限超出时立即收紧
+     */
+    public void setMaxLimit(int maxLimit) {
+        lock.lock();
+        try {
+            this.maxLimit = Math.max(Math.max(1, maxLimit), minLimit);
+            if (limit > this.maxLimit) {
+                limit = this.maxLimit;
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 成功调用耗时基线（毫秒），尚无样本时为 0
+     */
+    public double getBaselineMillis() {
+        lock.lock();
+        try {
+            return baselineNanos > 0 ? baselineNanos / 1_000_000.0 : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.redink.util;
+
+import org.springframework.http.HttpRange;
+
+import java.util.List;
+
+/**
+ * HTTP Range 请求解析
+ * 只支持单个字节区间；多区间或 If-Range 与当前实体标签不一致时返回完整内容
+ */
+public final class HttpRanges {
+
+    private HttpRanges() {
+    }
+
+    /**
+     * 解析请求区间
+     * @param rangeHeader Range 请求头，可为 null
+     * @param ifRange If-Range 请求头，可为 null
+     * @param etag 当前实体标签
+     * @param length 实体总字节数
+     * @return [start, end] 闭区间；返回 null 表示输出完整内容
+     * @throws UnsatisfiableRangeException 区间超出实体范围
+     */
+    public static long[] resolve(String rangeHeader, String ifRange, String etag, long length) {
+        if (rangeHeader == null || (ifRange != null && !ifRange.equals(etag))) {
+            return null;
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (ranges.size() != 1) {
+            return null;
+        }
+
+        HttpRange range = ranges.get(0);
+        try {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            if (start >= length || end < start) {
+                throw new UnsatisfiableRangeException();
+            }
+            return new long[]{start, end};
+        } catch (IllegalArgumentException e) {
+            throw new UnsatisfiableRangeException();
+        }
+    }
+
+    /**
+     * 416 响应使用的 Content-Range 值
+     */
+    public static String unsatisfiedContentRange(long length) {
+        return "bytes */" + length;
+    }
+
+    public static String contentRange(long start, long end, long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+
+    /**
+     * 请求区间无法满足
+     */
+    public static class UnsatisfiableRangeException extends RuntimeException {
+        public UnsatisfiableRangeException() {
+            super("请求区间超出范围");
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.redink.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.redink.config.ExecutorConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 图片衍生图（多尺寸缩略图）
+ * 页面图片保存后提交到低优先级执行器，原图解码一次生成多个宽度的 JPEG，不阻塞下一页的生成和推送；
+ * 最小宽度写入 thumb_{filename}（与原有缩略图同名），其余写入 thumb_w{width}_{filename}，
+ * 尺寸信息记录在 .derivatives_{filename}.json 中，供图片接口按 width 参数选择
+ */
+@Component
+public class ImageDerivatives {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageDerivatives.class);
+
+    private static final String THUMB_PREFIX = "thumb_";
+    private static final String METADATA_PREFIX = ".derivatives_";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ExecutorService executor;
+    private final int[] widths;
+    private final int quality;
+
+    // 原图路径 -> 等待生成的图片数据；同一张图排队期间再次提交只保留最新数据
+    private final Map<Path, byte[]> pending = new ConcurrentHashMap<>();
+    // 原图路径 -> 衍生图信息（没有时为空）
+    private final Cache<Path, Optional<Metadata>> metadataCache;
+
+    private final Timer deriveTimer;
+
+    public ImageDerivatives(@Qualifier(ExecutorConfig.DERIVATIVE_EXECUTOR) ExecutorService executor,
+                            MeterRegistry meterRegistry,
+                            @Value("${redink.image.derivatives.widths:360,720}") int[] widths,
+                            @Value("${redink.image.derivatives.quality:80}") int quality) {
+        this.executor = executor;
+        this.widths = Arrays.stream(widths).filter(w -> w > 0).distinct().sorted().toArray();
+        this.quality = Math.min(100, Math.max(1, quality));
+        this.metadataCache = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterAccess(Duration.ofMinutes(30))
+                .build();
+
+        this.deriveTimer = Timer.builder("redink.image.derivatives.duration")
+                .description("单张图片生成全部衍生图的耗时")
+                .register(meterRegistry);
+        Gauge.builder("redink.image.derivatives.pending", pending, Map::size)
+                .description("等待生成衍生图的图片数")
+                .register(meterRegistry);
+        logger.info("图片衍生图: widths={}, quality={}", Arrays.toString(this.widths), this.quality);
+    }
+
+    /**
+     * 提交衍生图生成，立即返回
+     * 旧的衍生图信息和默认缩略图先删除，生成完成前图片接口返回原图
+     * @param imagePath 原图路径
+     * @param imageData 原图数据
+     */
+    public void submit(Path imagePath, byte[] imageData) {
+        imagePath = imagePath.toAbsolutePath().normalize();
+        invalidate(imagePath);
+        if (pending.put(imagePath, imageData) != null) {
+            return;
+        }
+        Path path = imagePath;
+        try {
+            executor.execute(() -> derive(path));
+        } catch (RejectedExecutionException e) {
+            pending.remove(path);
+            logger.debug("衍生图执行器已关闭: {}", path);
+        }
+    }
+
+    /**
+     * 选择要返回的图片文件
+     * @param width 期望宽度，返回不小于该宽度的最小衍生图，没有时返回原图
+     * @param thumbnail 未指定宽度时是否返回默认缩略图
+     */
+    public Path select(Path imagePath, Integer width, boolean thumbnail) {
+        if (width == null && !thumbnail) {
+            return imagePath;
+        }
+        imagePath = imagePath.toAbsolutePath().normalize();
+        Optional<Metadata> metadata = metadata(imagePath);
+        if (metadata.isEmpty()) {
+            if (width == null && !pending.containsKey(imagePath)) {
+                // 旧任务只有单个缩略图，没有衍生图信息
+                Path legacy = imagePath.resolveSibling(THUMB_PREFIX + imagePath.getFileName());
+                if (Files.exists(legacy)) {
+                    return legacy;
+                }
+            }
+            return imagePath;
+        }
+
+        List<Variant> variants = metadata.get().derivatives();
+        if (variants.isEmpty()) {
+            return imagePath;
+        }
+        if (width == null) {
+            return imagePath.resolveSibling(variants.get(0).file());
+        }
+        for (Variant variant : variants) {
+            if (variant.width() >= width) {
+                return imagePath.resolveSibling(variant.file());
+            }
+        }
+        return imagePath;
+    }
+
+    /**
+     * 读取衍生图信息
+     */
+    public Optional<Metadata> metadata(Path imagePath) {
+        return metadataCache.get(imagePath.toAbsolutePath().normalize(), this::readMetadata);
+    }
+
+    private void derive(Path imagePath) {
+        byte[] data = pending.remove(imagePath);
+        if (data == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            ImageUtils.DerivedImages derived = ImageUtils.deriveWidths(data, widths, quality);
+            if (derived == null) {
+                logger.warn("无法解码图片，跳过衍生图: {}", imagePath);
+                return;
+            }
+
+            List<Variant> variants = new ArrayList<>();
+            for (int i = 0; i < derived.derivatives().size(); i++) {
+                ImageUtils.Derivative derivative = derived.derivatives().get(i);
+                String name = i == 0
+                        ? THUMB_PREFIX + imagePath.getFileName()
+                        : THUMB_PREFIX + "w" + derivative.width() + "_" + imagePath.getFileName();
+                writeAtomically(imagePath.resolveSibling(name), derivative.data());
+                variants.add(new Variant(derivative.width(), derivative.height(), name, derivative.data().length));
+            }
+
+            Metadata metadata = new Metadata(derived.width(), derived.height(), variants);
+            writeAtomically(metadataFile(imagePath), objectMapper.writeValueAsBytes(metadata));
+            if (!pending.containsKey(imagePath)) {
+                metadataCache.put(imagePath, Optional.of(metadata));
+            }
+            logger.debug("衍生图生成完成: {}, variants={}", imagePath, variants.size());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("生成衍生图失败: {}", imagePath, e);
+        } finally {
+            deriveTimer.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    private void invalidate(Path imagePath) {
+        metadataCache.invalidate(imagePath);
+        try {
+            Files.deleteIfExists(metadataFile(imagePath));
+            Files.deleteIfExists(imagePath.resolveSibling(THUMB_PREFIX + imagePath.getFileName()));
+        } catch (IOException e) {
+            logger.warn("删除旧衍生图失败: {}", imagePath, e);
+        }
+    }
+
+    private Optional<Metadata> readMetadata(Path imagePath) {
+        Path file = metadataFile(imagePath);
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(file.toFile(), Metadata.class));
+        } catch (IOException e) {
+            logger.warn("读取衍生图信息失败: {}", file, e);
+            return Optional.empty();
+        }
+    }
+
+    private static Path metadataFile(Path imagePath) {
+        return imagePath.resolveSibling(METADATA_PREFIX + imagePath.getFileName() + ".json");
+    }
+
+    private static void writeAtomically(Path file, byte[] data) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, data);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 衍生图信息
+     * @param width 原图宽度
+     * @param height 原图高度
+     * @param derivatives 衍生图，按宽度从小到大
+     */
+    public record Metadata(int width, int height, List<Variant> derivatives) {
+    }
+
+    /**
+     * 单个衍生图
+     * @param file 与原图同目录的文件名
+     */
+    public record Variant(int width, int height, String file, long bytes) {
+    }
+}
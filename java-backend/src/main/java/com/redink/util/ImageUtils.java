@@ -5,12 +5,27 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * 图片工具类
@@ -20,6 +35,23 @@ public class ImageUtils {
     private static final Logger logger = LoggerFactory.getLogger(ImageUtils.class);
     private static final int DEFAULT_MAX_SIZE_KB = 200;
     private static final int DEFAULT_QUALITY = 85;
+    // 只调整质量时允许的最低质量
+    private static final int MIN_QUALITY = 40;
+    // 目标大小与默认质量结果之比低于该值时改为缩小尺寸（质量从 85 降到 40 大约能减小一半）
+    private static final double QUALITY_ONLY_RATIO = 0.5;
+    // 缩小尺寸后的质量查找范围
+    private static final int RESIZE_MIN_QUALITY = 55;
+    private static final int RESIZE_MAX_QUALITY = 85;
+    // 质量 70 左右相对质量 85 的大小比例，用于预测缩放比例
+    private static final double RESIZE_QUALITY_RATIO = 0.7;
+    // 预测缩放比例的安全余量
+    private static final double RESIZE_MARGIN = 0.95;
+    // 缩小后长边不低于该值
+    private static final int MIN_DIMENSION = 512;
+    // 质量二分查找的最多编码次数
+    private static final int MAX_SEARCH_PASSES = 3;
+    
+    private static final ThreadLocal<JpegEncoder> JPEG_ENCODER = ThreadLocal.withInitial(JpegEncoder::new);
     
     /**
      * 压缩图片到指定大小
@@ -28,74 +60,271 @@ public class ImageUtils {
      * @return 压缩后的图片数据
      */
     public static byte[] compressImage(byte[] imageData, int maxSizeKb) {
-        if (imageData == null || imageData.length <= maxSizeKb * 1024) {
-            return imageData;
+        return compress(imageData, maxSizeKb).getData();
+    }
+    
+    /**
+     * 压缩图片到指定大小，并返回编码次数等信息
+     * 只解码一次；先以默认质量编码一次，根据每像素字节数判断是否需要缩小尺寸并预测缩放比例，
+     * 再对质量做有限次数的二分查找，通常总共 3~4 次编码；
+     * 查找不到满足要求的质量时再按预测比例缩小，只有长边到达 MIN_DIMENSION 时才会返回超出目标的结果
+     * @param imageData 原始图片数据
+     * @param maxSizeKb 最大文件大小（KB）
+     */
+    public static CompressionResult compress(byte[] imageData, int maxSizeKb) {
+        int targetSize = maxSizeKb * 1024;
+        if (imageData == null || imageData.length <= targetSize) {
+            return new CompressionResult(imageData, 0, 0, 1.0);
         }
         
+        JpegEncoder encoder = JPEG_ENCODER.get();
         try {
             BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(imageData));
             if (originalImage == null) {
-                return imageData;
+                return new CompressionResult(imageData, 0, 0, 1.0);
+            }
+            
+            BufferedImage image = toRgb(originalImage);
+            int passes = 0;
+            
+            // 第一次编码：默认质量、原尺寸
+            int firstSize = encoder.encode(image, DEFAULT_QUALITY);
+            passes++;
+            if (firstSize <= targetSize) {
+                return finish(imageData, encoder.toByteArray(), passes, DEFAULT_QUALITY, 1.0);
+            }
+            
+            double scale = 1.0;
+            int minQuality = MIN_QUALITY;
+            int maxQuality = DEFAULT_QUALITY;
+            
+            // 只降质量达不到目标时，按每像素字节数预测缩放比例（文件大小近似与像素数成正比）
+            if ((double) targetSize / firstSize < QUALITY_ONLY_RATIO) {
+                double bytesPerPixel = (double) firstSize / ((long) image.getWidth() * image.getHeight());
+                double targetPixels = targetSize / (bytesPerPixel * RESIZE_QUALITY_RATIO);
+                scale = clampScale(image, Math.sqrt(targetPixels / ((long) image.getWidth() * image.getHeight())) * RESIZE_MARGIN);
+                image = resize(image, scale);
+                minQuality = RESIZE_MIN_QUALITY;
+                maxQuality = RESIZE_MAX_QUALITY;
+            } else {
+                // 默认质量已知超出目标，不再尝试
+                maxQuality = DEFAULT_QUALITY - 1;
             }
             
-            int quality = DEFAULT_QUALITY;
-            byte[] compressedData;
+            // 二分查找满足大小要求的最高质量
+            byte[] best = null;
+            int bestQuality = 0;
+            int low = minQuality;
+            int high = maxQuality;
+            for (int i = 0; i < MAX_SEARCH_PASSES && low <= high; i++) {
+                int quality = (low + high + 1) / 2;
+                int size = encoder.encode(image, quality);
+                passes++;
+                if (size <= targetSize) {
+                    best = encoder.toByteArray();
+                    bestQuality = quality;
+                    low = quality + 1;
+                } else {
+                    high = quality - 1;
+                }
+            }
             
-            // 逐步降低质量直到满足大小要求
-            while (quality >= 20) {
-                compressedData = compressWithQuality(originalImage, quality);
-                if (compressedData.length <= maxSizeKb * 1024) {
-                    logger.info("图片压缩成功: {} -> {} KB (质量: {})", 
-                        imageData.length / 1024, compressedData.length / 1024, quality);
-                    return compressedData;
+            if (best == null) {
+                // 最低质量仍然超出时，按最低质量的每像素字节数预测缩放比例继续缩小，
+                // 直到满足大小要求或长边到达尺寸下限
+                int size = encoder.encode(image, minQuality);
+                passes++;
+                while (size > targetSize && Math.max(image.getWidth(), image.getHeight()) > MIN_DIMENSION) {
+                    double step = clampScale(image, Math.sqrt((double) targetSize / size) * RESIZE_MARGIN);
+                    image = resize(image, step);
+                    scale *= step;
+                    size = encoder.encode(image, minQuality);
+                    passes++;
                 }
-                quality -= 5;
+                best = encoder.toByteArray();
+                bestQuality = minQuality;
             }
             
-            // 如果质量压缩不够，进一步缩小尺寸
-            return compressWithResize(originalImage, maxSizeKb * 1024);
+            return finish(imageData, best, passes, bestQuality, scale);
             
         } catch (Exception e) {
             logger.warn("图片压缩失败，返回原图: {}", e.getMessage());
-            return imageData;
+            JPEG_ENCODER.remove();
+            encoder.dispose();
+            return new CompressionResult(imageData, 0, 0, 1.0);
         }
     }
     
     /**
-     * 使用指定质量压缩图片
+     * 按多个宽度生成缩小的衍生图
+     * 原图只解码一次，按宽度从大到小逐级缩小（每级以上一级为输入），统一编码为 JPEG
+     * @param widths 目标宽度，不小于原图宽度的跳过
+     * @param quality JPEG 质量（1~100）
+     * @return 原图尺寸和各衍生图（按宽度从小到大），原图无法解码时返回 null
      */
-    private static byte[] compressWithQuality(BufferedImage image, int quality) throws IOException {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        Thumbnails.of(image)
-                .outputQuality(quality / 100.0)
-                .outputFormat("JPEG")
-                .toOutputStream(output);
-        return output.toByteArray();
+    public static DerivedImages deriveWidths(byte[] imageData, int[] widths, int quality) throws IOException {
+        BufferedImage original = ImageIO.read(new ByteArrayInputStream(imageData));
+        if (original == null) {
+            return null;
+        }
+        int[] sorted = Arrays.stream(widths).filter(w -> w > 0 && w < original.getWidth())
+                .distinct().sorted().toArray();
+
+        JpegEncoder encoder = JPEG_ENCODER.get();
+        List<Derivative> derivatives = new ArrayList<>(sorted.length);
+        BufferedImage current = toRgb(original);
+        try {
+            for (int i = sorted.length - 1; i >= 0; i--) {
+                current = resize(current, (double) sorted[i] / current.getWidth());
+                encoder.encode(current, quality);
+                derivatives.add(0, new Derivative(current.getWidth(), current.getHeight(), encoder.toByteArray()));
+            }
+        } catch (IOException | RuntimeException e) {
+            JPEG_ENCODER.remove();
+            encoder.dispose();
+            throw e;
+        }
+        return new DerivedImages(original.getWidth(), original.getHeight(), derivatives);
+    }
+    
+    /**
+     * 衍生图生成结果
+     * @param width 原图宽度
+     * @param height 原图高度
+     */
+    public record DerivedImages(int width, int height, List<Derivative> derivatives) {
+    }
+    
+    /**
+     * 单个衍生图（JPEG）
+     */
+    public record Derivative(int width, int height, byte[] data) {
+    }
+    
+    private static CompressionResult finish(byte[] original, byte[] compressed, int passes, int quality, double scale) {
+        logger.info("图片压缩成功: {} -> {} KB (质量: {}, 缩放: {}, 编码次数: {})",
+            original.length / 1024, compressed.length / 1024, quality, String.format("%.2f", scale), passes);
+        return new CompressionResult(compressed, passes, quality, scale);
+    }
+    
+    /**
+     * 转为不含透明通道的 RGB 图像（JPEG 不支持透明），透明区域填充白色
+     */
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+    
+    /**
+     * 缩放比例限制在 (长边不低于 MIN_DIMENSION, 1.0] 范围内
+     */
+    private static double clampScale(BufferedImage image, double scale) {
+        scale = Math.max(scale, (double) MIN_DIMENSION / Math.max(image.getWidth(), image.getHeight()));
+        return Math.min(scale, 1.0);
+    }
+    
+    private static BufferedImage resize(BufferedImage image, double scale) throws IOException {
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        return toRgb(Thumbnails.of(image).size(width, height).asBufferedImage());
     }
     
     /**
-     * 通过调整尺寸压缩图片
+     * 每个线程复用一个 JPEG ImageWriter 和输出缓冲区
      */
-    private static byte[] compressWithResize(BufferedImage originalImage, int targetSize) throws IOException {
-        int width = originalImage.getWidth();
-        int height = originalImage.getHeight();
+    private static final class JpegEncoder {
+        private final ImageWriter writer;
+        private final ImageWriteParam param;
+        private final ReusableOutputStream buffer = new ReusableOutputStream();
         
-        // 按比例缩小，直到满足大小要求
-        while (true) {
-            width = (int) (width * 0.9);
-            height = (int) (height * 0.9);
-            
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            Thumbnails.of(originalImage)
-                    .size(width, height)
-                    .outputQuality(0.8)
-                    .outputFormat("JPEG")
-                    .toOutputStream(output);
-            
-            byte[] compressedData = output.toByteArray();
-            if (compressedData.length <= targetSize || Math.max(width, height) <= 512) {
-                return compressedData;
+        JpegEncoder() {
+            Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+            if (!writers.hasNext()) {
+                throw new IllegalStateException("没有可用的 JPEG 编码器");
+            }
+            this.writer = writers.next();
+            this.param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        }
+        
+        /**
+         * 编码到内部缓冲区
+         * @return 编码后的字节数
+         */
+        int encode(BufferedImage image, int quality) throws IOException {
+            buffer.reset();
+            param.setCompressionQuality(quality / 100f);
+            try (ImageOutputStream output = new MemoryCacheImageOutputStream(buffer)) {
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.reset();
             }
+            return buffer.size();
+        }
+        
+        byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+        
+        void dispose() {
+            writer.dispose();
+        }
+    }
+    
+    /**
+     * reset 后保留底层数组的输出流，避免每次编码重新扩容
+     */
+    private static final class ReusableOutputStream extends ByteArrayOutputStream {
+        ReusableOutputStream() {
+            super(256 * 1024);
+        }
+    }
+    
+    /**
+     * 压缩结果
+     */
+    public static final class CompressionResult {
+        private final byte[] data;
+        private final int encodePasses;
+        private final int quality;
+        private final double scale;
+        
+        CompressionResult(byte[] data, int encodePasses, int quality, double scale) {
+            this.data = data;
+            this.encodePasses = encodePasses;
+            this.quality = quality;
+            this.scale = scale;
+        }
+        
+        public byte[] getData() {
+            return data;
+        }
+        
+        /**
+         * JPEG 编码次数，未压缩时为 0
+         */
+        public int getEncodePasses() {
+            return encodePasses;
+        }
+        
+        public int getQuality() {
+            return quality;
+        }
+        
+        public double getScale() {
+            return scale;
         }
     }
     
@@ -147,4 +376,40 @@ public class ImageUtils {
         }
         return new int[]{0, 0};
     }
-}
\ No newline at end of file
+    
+    /**
+     * 根据文件头魔数识别图片类型
+     * 服务商返回的图片可能是 JPEG/WebP 但保存为 .png，不能只看扩展名
+     * @param header 文件开头的若干字节（至少 12 字节）
+     * @return MIME 类型，无法识别时返回 application/octet-stream
+     */
+    public static String detectMimeType(byte[] header, int length) {
+        if (length >= 8 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+            return "image/png";
+        }
+        if (length >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (length >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return "image/webp";
+        }
+        if (length >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8') {
+            return "image/gif";
+        }
+        return "application/octet-stream";
+    }
+    
+    /**
+     * 读取文件头识别实际的图片类型
+     */
+    public static String detectMimeType(Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // 读满文件头或到达文件末尾
+            }
+        }
+        return detectMimeType(header.array(), header.position());
+    }
+}
@@ -0,0 +1,66 @@
+package com.redink.util;
+
+import com.redink.model.Page;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 大纲文本解析
+ * 大纲以 <page> 分隔页面，页面开头的 [封面]/[内容]/[总结] 标记页面类型
+ */
+public final class OutlineParser {
+
+    private static final Pattern TYPE_PATTERN = Pattern.compile("\\[(\\S+)\\]");
+
+    private OutlineParser() {
+    }
+
+    /**
+     * 解析大纲文本
+     */
+    public static List<Page> parseOutline(String outlineText) {
+        // 按 <page> 分割页面
+        String[] pagesRaw = outlineText.split("<page>", -1);
+        
+        List<Page> pages = Arrays.stream(pagesRaw)
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .map(OutlineParser::parsePage)
+                .collect(Collectors.toList());
+        
+        // 为每页分配索引
+        for (int i = 0; i < pages.size(); i++) {
+            pages.get(i).setIndex(i);
+        }
+        
+        return pages;
+    }
+    
+    /**
+     * 解析单页内容
+     */
+    public static Page parsePage(String pageText) {
+        String type = "content";
+        
+        // 提取页面类型
+        Matcher typeMatcher = TYPE_PATTERN.matcher(pageText);
+        if (typeMatcher.find()) {
+            String typeCn = typeMatcher.group(1);
+            type = switch (typeCn) {
+                case "封面" -> "cover";
+                case "内容" -> "content";
+                case "总结" -> "summary";
+                default -> "content";
+            };
+        }
+        
+        // 清理页面内容
+        String cleanedContent = TYPE_PATTERN.matcher(pageText).replaceAll("").trim();
+        
+        return new Page(0, type, cleanedContent);
+    }
+}
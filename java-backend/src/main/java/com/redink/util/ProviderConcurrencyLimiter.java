@@ -0,0 +1,325 @@
+package com.redink.util;
+
+import com.redink.config.ConfigManager;
+import com.redink.config.ProvidersSnapshot;
+import com.redink.exception.ProviderUnavailableException;
+import com.redink.util.AdaptiveConcurrencyLimit.Outcome;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.netty.handler.timeout.ReadTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 服务商并发限制与熔断
+ * 每个服务商一个自适应并发上限（AIMD，最大值取服务商配置中的 max_concurrent，
+ * 未配置时使用 redink.image.max-concurrent / redink.outline.max-concurrent）和一个熔断器；
+ * 熔断打开或等待许可超时时抛出 ProviderUnavailableException，由调用方回退
+ */
+@Component
+public class ProviderConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProviderConcurrencyLimiter.class);
+
+    // 非阻塞等待许可时的重试间隔
+    private static final Duration ACQUIRE_POLL_INTERVAL = Duration.ofMillis(50);
+
+    private final ConfigManager configManager;
+    private final MeterRegistry meterRegistry;
+    private final int defaultImageLimit;
+    private final int defaultTextLimit;
+    private final int minLimit;
+    private final double latencyFactor;
+    private final Duration acquireTimeout;
+
+    private final int breakerWindowSize;
+    private final int breakerMinCalls;
+    private final double breakerFailureRate;
+    private final Duration breakerOpenDuration;
+    private final int breakerHalfOpenCalls;
+
+    // type:providerName -> 并发上限和熔断器
+    private final Map<String, ProviderGuard> guards = new ConcurrentHashMap<>();
+
+    public ProviderConcurrencyLimiter(ConfigManager configManager,
+                                      MeterRegistry meterRegistry,
+                                      @Value("${redink.image.max-concurrent:15}") int defaultImageLimit,
+                                      @Value("${redink.outline.max-concurrent:10}") int defaultTextLimit,
+                                      @Value("${redink.provider.min-limit:1}") int minLimit,
+                                      @Value("${redink.provider.latency-factor:2.0}") double latencyFactor,
+                                      @Value("${redink.provider.acquire-timeout:60s}") Duration acquireTimeout,
+                                      @Value("${redink.provider.circuit-breaker.window-size:20}") int breakerWindowSize,
+                                      @Value("${redink.provider.circuit-breaker.min-calls:10}") int breakerMinCalls,
+                                      @Value("${redink.provider.circuit-breaker.failure-rate-threshold:0.5}") double breakerFailureRate,
+                                      @Value("${redink.provider.circuit-breaker.open-duration:30s}") Duration breakerOpenDuration,
+                                      @Value("${redink.provider.circuit-breaker.half-open-calls:2}") int breakerHalfOpenCalls) {
+        this.configManager = configManager;
+        this.meterRegistry = meterRegistry;
+        this.defaultImageLimit = Math.max(1, defaultImageLimit);
+        this.defaultTextLimit = Math.max(1, defaultTextLimit);
+        this.minLimit = Math.max(1, minLimit);
+        this.latencyFactor = latencyFactor;
+        this.acquireTimeout = acquireTimeout;
+        this.breakerWindowSize = breakerWindowSize;
+        this.breakerMinCalls = breakerMinCalls;
+        this.breakerFailureRate = breakerFailureRate;
+        this.breakerOpenDuration = breakerOpenDuration;
+        this.breakerHalfOpenCalls = breakerHalfOpenCalls;
+
+        configManager.addReloadListener(this::onConfigReload);
+    }
+
+    /**
+     * 在服务商许可内执行调用，许可不足时阻塞等待
+     * @param type 服务商类型 image/text
+     * @param providerName 服务商名称
+     * @param action 实际调用
+     * @return 调用结果
+     * @throws ProviderUnavailableException 熔断打开或等待许可超时
+     */
+    public <T> T call(String type, String providerName, Callable<T> action) throws Exception {
+        ProviderGuard guard = guards.computeIfAbsent(key(type, providerName), k -> createGuard(type, providerName));
+
+        if (!guard.breaker.tryAcquire()) {
+            throw new ProviderUnavailableException(providerName, "熔断中");
+        }
+        boolean acquired;
+        try {
+            acquired = guard.limit.acquire(acquireTimeout);
+        } catch (InterruptedException e) {
+            guard.breaker.onIgnored();
+            throw e;
+        }
+        if (!acquired) {
+            guard.breaker.onIgnored();
+            throw new ProviderUnavailableException(providerName, "等待并发许可超时");
+        }
+
+        long start = System.nanoTime();
+        Outcome outcome = Outcome.IGNORED;
+        try {
+            T result = action.call();
+            outcome = Outcome.SUCCESS;
+            return result;
+        } catch (Throwable e) {
+            outcome = classify(e);
+            throw e;
+        } finally {
+            release(guard, type, providerName, System.nanoTime() - start, outcome);
+        }
+    }
+
+    /**
+     * 在服务商许可内执行流式调用，不阻塞线程：许可不足时按间隔重试，订阅结束（完成、失败、取消）时释放
+     * @param type 服务商类型 image/text
+     * @param providerName 服务商名称
+     * @param action 创建实际调用的 Flux，获取许可后才订阅
+     * @return 调用结果；熔断打开或等待许可超时时以 ProviderUnavailableException 结束
+     */
+    public <T> Flux<T> stream(String type, String providerName, Supplier<Flux<T>> action) {
+        return Flux.defer(() -> {
+            ProviderGuard guard = guards.computeIfAbsent(key(type, providerName), k -> createGuard(type, providerName));
+            if (!guard.breaker.tryAcquire()) {
+                return Flux.error(new ProviderUnavailableException(providerName, "熔断中"));
+            }
+            return acquireAsync(guard.limit)
+                    .doOnCancel(guard.breaker::onIgnored)
+                    .flatMapMany(acquired -> {
+                        if (!acquired) {
+                            guard.breaker.onIgnored();
+                            return Flux.error(new ProviderUnavailableException(providerName, "等待并发许可超时"));
+                        }
+                        long start = System.nanoTime();
+                        // 客户端取消不计入统计
+                        AtomicReference<Outcome> outcome = new AtomicReference<>(Outcome.IGNORED);
+                        return Flux.defer(action)
+                                .doOnComplete(() -> outcome.set(Outcome.SUCCESS))
+                                .doOnError(e -> outcome.set(classify(e)))
+                                .doFinally(signal -> release(guard, type, providerName,
+                                        System.nanoTime() - start, outcome.get()));
+                    });
+        });
+    }
+
+    /**
+     * 非阻塞获取许可：先立即尝试，不足时每隔 ACQUIRE_POLL_INTERVAL 重试，超过 acquireTimeout 返回 false
+     * 是否超时在获取许可的同一步中判断，不会出现已获取许可但被超时丢弃的情况
+     */
+    private Mono<Boolean> acquireAsync(AdaptiveConcurrencyLimit limit) {
+        long deadline = System.nanoTime() + acquireTimeout.toNanos();
+        return Mono.fromSupplier(() -> {
+                    if (limit.tryAcquire()) {
+                        return Boolean.TRUE;
+                    }
+                    return System.nanoTime() - deadline >= 0 ? Boolean.FALSE : null;
+                })
+                .repeatWhenEmpty(attempts -> attempts.delayElements(ACQUIRE_POLL_INTERVAL));
+    }
+
+    private void release(ProviderGuard guard, String type, String providerName, long latencyNanos, Outcome outcome) {
+        guard.limit.release(latencyNanos, outcome);
+        switch (outcome) {
+            case SUCCESS -> guard.breaker.onSuccess();
+            case OVERLOAD, FAILURE -> guard.breaker.onFailure();
+            default -> guard.breaker.onIgnored();
+        }
+        if (outcome == Outcome.OVERLOAD || outcome == Outcome.FAILURE) {
+            logger.debug("服务商调用失败: {}/{}, outcome={}, limit={}, circuit={}", type, providerName,
+                    outcome, guard.limit.getLimit(), guard.breaker.getState());
+        }
+    }
+
+    /**
+     * 获取服务商当前可用许可数（未使用过的服务商返回配置上限）
+     */
+    public int availablePermits(String type, String providerName) {
+        ProviderGuard guard = guards.get(key(type, providerName));
+        return guard != null
+                ? Math.max(0, guard.limit.getLimit() - guard.limit.getInFlight())
+                : resolveLimit(type, providerName);
+    }
+
+    /**
+     * 各服务商的并发上限和熔断状态，按 type:providerName 排序
+     */
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> snapshot = new TreeMap<>();
+        guards.forEach((key, guard) -> {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("limit", guard.limit.getLimit());
+            status.put("maxLimit", guard.limit.getMaxLimit());
+            status.put("inFlight", guard.limit.getInFlight());
+            status.put("baselineMillis", Math.round(guard.limit.getBaselineMillis()));
+            status.put("circuitState", guard.breaker.getState().name());
+            status.put("failureRate", guard.breaker.getFailureRate());
+            snapshot.put(key, status);
+        });
+        return snapshot;
+    }
+
+    private ProviderGuard createGuard(String type, String providerName) {
+        ProviderGuard guard = new ProviderGuard(
+                new AdaptiveConcurrencyLimit(minLimit, resolveLimit(type, providerName), latencyFactor),
+                new CircuitBreaker(breakerWindowSize, breakerMinCalls, breakerFailureRate,
+                        breakerOpenDuration, breakerHalfOpenCalls));
+
+        Tags tags = Tags.of("type", type, "provider", String.valueOf(providerName));
+        Gauge.builder("redink.provider.concurrency.limit", guard.limit, AdaptiveConcurrencyLimit::getLimit)
+                .tags(tags)
+                .description("服务商当前自适应并发上限")
+                .register(meterRegistry);
+        Gauge.builder("redink.provider.in.flight", guard.limit, AdaptiveConcurrencyLimit::getInFlight)
+                .tags(tags)
+                .description("服务商在途调用数")
+                .register(meterRegistry);
+        Gauge.builder("redink.provider.circuit.state", guard.breaker, b -> b.getState().ordinal())
+                .tags(tags)
+                .description("熔断器状态：0 关闭，1 打开，2 半开")
+                .register(meterRegistry);
+        return guard;
+    }
+
+    /**
+     * 区分服务商过载、其他服务商错误和与服务商无关的异常
+     */
+    private static Outcome classify(Throwable e) {
+        boolean providerError = false;
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof TransientAiException || t instanceof TimeoutException
+                    || t instanceof SocketTimeoutException || t instanceof ReadTimeoutException
+                    || isOverloadStatus(t)) {
+                return Outcome.OVERLOAD;
+            }
+            if (t instanceof IOException || t instanceof RestClientException
+                    || t instanceof WebClientException || t instanceof NonTransientAiException) {
+                providerError = true;
+            }
+        }
+        return providerError ? Outcome.FAILURE : Outcome.IGNORED;
+    }
+
+    private static boolean isOverloadStatus(Throwable t) {
+        int status;
+        if (t instanceof RestClientResponseException response) {
+            status = response.getStatusCode().value();
+        } else if (t instanceof WebClientResponseException response) {
+            status = response.getStatusCode().value();
+        } else {
+            return false;
+        }
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * 服务商配置重新加载后更新已有服务商的并发最大值
+     */
+    private void onConfigReload(String type) {
+        guards.forEach((key, guard) -> {
+            if (key.startsWith(type + ":")) {
+                String providerName = key.substring(type.length() + 1);
+                int limit = resolveLimit(type, providerName);
+                if (limit != guard.limit.getMaxLimit()) {
+                    logger.info("服务商并发上限已更新: {} {} -> {}", key, guard.limit.getMaxLimit(), limit);
+                    guard.limit.setMaxLimit(limit);
+                }
+            }
+        });
+    }
+
+    private int resolveLimit(String type, String providerName) {
+        int limit = "image".equals(type) ? defaultImageLimit : defaultTextLimit;
+        try {
+            ProvidersSnapshot providers = "image".equals(type)
+                    ? configManager.getImageProviders()
+                    : configManager.getTextProviders();
+            ProvidersSnapshot.Provider provider = providers.getProvider(providerName);
+            if (provider != null && provider.maxConcurrent() != null) {
+                limit = provider.maxConcurrent();
+            }
+        } catch (Exception e) {
+            logger.warn("读取服务商并发配置失败: {}/{}, 使用默认值 {}", type, providerName, limit);
+        }
+        logger.debug("服务商并发上限: {}/{} = {}", type, providerName, limit);
+        return Math.max(1, limit);
+    }
+
+    private String key(String type, String providerName) {
+        return type + ":" + providerName;
+    }
+
+    /**
+     * 单个服务商的并发上限和熔断器
+     */
+    private static final class ProviderGuard {
+        final AdaptiveConcurrencyLimit limit;
+        final CircuitBreaker breaker;
+
+        ProviderGuard(AdaptiveConcurrencyLimit limit, CircuitBreaker breaker) {
+            this.limit = limit;
+            this.breaker = breaker;
+        }
+    }
+}
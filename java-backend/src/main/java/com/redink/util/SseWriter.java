@@ -0,0 +1,468 @@
+package com.redink.util;
+
+import com.redink.config.ExecutorConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SSE 写出层
+ * 业务线程只把事件放入连接的有界队列，由写出线程发送，客户端读得慢不会阻塞生成线程；
+ * 同一合并键的事件还未发出时被新事件取代（如同一页的进度）：旧事件移出队列，新事件排到队尾，发出的事件 id 保持递增；
+ * 空闲连接定期发送心跳注释，避免代理断开长时间无数据的连接。队列溢出、写失败、超时的连接立即关闭并释放。
+ * 响应式接口使用 FluxConnection：事件放入有界缓冲区，由 WebFlux 按客户端的读取速度写出，不占用线程
+ */
+@Component
+public class SseWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SseWriter.class);
+
+    private final ExecutorService writerExecutor;
+    private final ScheduledExecutorService heartbeatScheduler;
+    private final int queueCapacity;
+    private final long heartbeatNanos;
+
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Set<FluxConnection> fluxConnections = ConcurrentHashMap.newKeySet();
+
+    private final Counter sentEvents;
+    private final Counter coalescedEvents;
+    private final Counter heartbeats;
+    private final Counter overflowed;
+
+    public SseWriter(@Qualifier(ExecutorConfig.SSE_WRITER_EXECUTOR) ExecutorService writerExecutor,
+                     MeterRegistry meterRegistry,
+                     @Value("${redink.sse.queue-capacity:512}") int queueCapacity,
+                     @Value("${redink.sse.heartbeat-interval:15s}") Duration heartbeatInterval) {
+        this.writerExecutor = writerExecutor;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.heartbeatNanos = heartbeatInterval.toNanos();
+
+        this.sentEvents = eventCounter(meterRegistry, "sent");
+        this.coalescedEvents = eventCounter(meterRegistry, "coalesced");
+        this.heartbeats = eventCounter(meterRegistry, "heartbeat");
+        this.overflowed = Counter.builder("redink.sse.connections.closed")
+                .tag("reason", "overflow")
+                .description("发送队列溢出而关闭的 SSE 连接数")
+                .register(meterRegistry);
+        Gauge.builder("redink.sse.connections", this, writer -> writer.connections.size() + writer.fluxConnections.size())
+                .description("打开的 SSE 连接数")
+                .register(meterRegistry);
+
+        this.heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redink-sse-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeatNanos > 0) {
+            heartbeatScheduler.scheduleWithFixedDelay(this::heartbeat,
+                    heartbeatNanos, heartbeatNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 接管发射器，之后只能通过返回的连接写入
+     */
+    public Connection open(SseEmitter emitter) {
+        Connection connection = new Connection(emitter);
+        connections.add(connection);
+        emitter.onCompletion(connection::closed);
+        emitter.onTimeout(connection::closed);
+        emitter.onError(e -> connection.closed());
+        return connection;
+    }
+
+    /**
+     * 创建响应式连接，返回的 Flux 只能订阅一次，订阅结束（完成或客户端断开）时连接关闭
+     */
+    public FluxConnection openFlux() {
+        FluxConnection connection = new FluxConnection();
+        fluxConnections.add(connection);
+        return connection;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeatScheduler.shutdownNow();
+    }
+
+    private void heartbeat() {
+        long now = System.nanoTime();
+        for (Connection connection : connections) {
+            if (now - connection.lastWriteNanos >= heartbeatNanos) {
+                connection.enqueue(new Outbound(SseEmitter.event().comment("heartbeat"), null, true));
+            }
+        }
+        for (FluxConnection connection : fluxConnections) {
+            if (connection.pending.get() == 0 && now - connection.lastWriteNanos >= heartbeatNanos) {
+                connection.emit(ServerSentEvent.builder().comment("heartbeat").build());
+            }
+        }
+    }
+
+    private static Counter eventCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("redink.sse.events")
+                .tag("result", result)
+                .description("SSE 事件数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 事件连接，send 不阻塞调用线程
+     */
+    public interface Sink {
+
+        /**
+         * 放入发送队列，立即返回
+         * @param id 事件 id，可为 null
+         * @param coalesceKey 合并键，同键的未发送事件被取代；为 null 时不合并
+         * @return 连接已关闭时返回 false
+         */
+        boolean send(String id, String name, Object data, String coalesceKey);
+
+        /**
+         * 队列中的事件发送完后结束连接
+         */
+        void complete();
+
+        boolean isOpen();
+
+        /**
+         * 注册连接关闭（正常结束、客户端断开、超时、溢出）时的回调
+         */
+        void onClose(Runnable listener);
+    }
+
+    /**
+     * 待发送的事件
+     */
+    private static final class Outbound {
+        final SseEmitter.SseEventBuilder event;
+        final String coalesceKey;
+        final boolean heartbeat;
+
+        Outbound(SseEmitter.SseEventBuilder event, String coalesceKey, boolean heartbeat) {
+            this.event = event;
+            this.coalesceKey = coalesceKey;
+            this.heartbeat = heartbeat;
+        }
+    }
+
+    /**
+     * 单个 SSE 连接
+     */
+    public final class Connection implements Sink {
+        private final SseEmitter emitter;
+
+        // 以下字段由 this 保护
+        // 未发送的事件，按入队顺序排列；有合并键的以合并键为键，否则以事件本身为键
+        private final Map<Object, Outbound> queue = new LinkedHashMap<>();
+        private boolean completeRequested;
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+        private volatile boolean open = true;
+        private volatile long lastWriteNanos = System.nanoTime();
+
+        private Connection(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public boolean send(String id, String name, Object data, String coalesceKey) {
+            SseEmitter.SseEventBuilder event = SseEmitter.event().name(name).data(data);
+            if (id != null) {
+                event.id(id);
+            }
+            return enqueue(new Outbound(event, coalesceKey, false));
+        }
+
+        @Override
+        public void complete() {
+            synchronized (this) {
+                if (!open) {
+                    return;
+                }
+                completeRequested = true;
+            }
+            scheduleDrain();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void onClose(Runnable listener) {
+            closeListeners.add(listener);
+            if (!open) {
+                listener.run();
+            }
+        }
+
+        private boolean enqueue(Outbound outbound) {
+            synchronized (this) {
+                if (!open || completeRequested) {
+                    return false;
+                }
+                if (outbound.heartbeat && !queue.isEmpty()) {
+                    return true;
+                }
+                Object key = outbound.coalesceKey != null ? outbound.coalesceKey : outbound;
+                if (queue.remove(key) != null) {
+                    coalescedEvents.increment();
+                }
+                if (queue.size() >= queueCapacity) {
+                    // 客户端长期读不动，关闭连接，客户端可用 Last-Event-ID 重连补发
+                    overflowed.increment();
+                    logger.warn("SSE 发送队列已满，关闭连接: capacity={}", queueCapacity);
+                    discardPending();
+                    open = false;
+                } else {
+                    queue.put(key, outbound);
+                }
+            }
+            // 溢出时由写出线程结束发射器，避免与正在进行的写操作竞争
+            scheduleDrain();
+            return open;
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    writerExecutor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                    closed();
+                }
+            }
+        }
+
+        /**
+         * 在写出线程中发送队列中的事件；同一连接同时只有一个写出任务
+         */
+        private void drain() {
+            while (true) {
+                Outbound next = null;
+                boolean end;
+                synchronized (this) {
+                    if (open) {
+                        Iterator<Outbound> pending = queue.values().iterator();
+                        if (pending.hasNext()) {
+                            next = pending.next();
+                            pending.remove();
+                        }
+                    }
+                    end = !open || (next == null && completeRequested);
+                }
+
+                if (end) {
+                    finish(null);
+                    draining.set(false);
+                    return;
+                }
+                if (next == null) {
+                    draining.set(false);
+                    // 释放标记后再检查一次，避免漏掉期间入队的事件
+                    synchronized (this) {
+                        if (queue.isEmpty() && !completeRequested && open) {
+                            return;
+                        }
+                    }
+                    if (!draining.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+
+                try {
+                    emitter.send(next.event);
+                    lastWriteNanos = System.nanoTime();
+                    (next.heartbeat ? heartbeats : sentEvents).increment();
+                } catch (IOException | IllegalStateException e) {
+                    logger.debug("SSE 连接已断开: {}", e.getMessage());
+                    finish(e);
+                    draining.set(false);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 丢弃未发送的事件，调用方需持有锁
+         */
+        private void discardPending() {
+            queue.clear();
+        }
+
+        private void finish(Throwable error) {
+            synchronized (this) {
+                open = false;
+                discardPending();
+            }
+            if (finished.compareAndSet(false, true)) {
+                try {
+                    if (error != null) {
+                        emitter.completeWithError(error);
+                    } else {
+                        emitter.complete();
+                    }
+                } catch (Exception e) {
+                    logger.debug("结束 SSE 连接失败", e);
+                }
+            }
+            closed();
+        }
+
+        /**
+         * 连接已关闭（发射器回调或写失败），释放资源并通知监听者
+         */
+        private void closed() {
+            synchronized (this) {
+                open = false;
+                discardPending();
+            }
+            if (connections.remove(this)) {
+                for (Runnable listener : closeListeners) {
+                    try {
+                        listener.run();
+                    } catch (RuntimeException e) {
+                        logger.warn("SSE 连接关闭回调失败", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 响应式 SSE 连接
+     * 事件放入有界缓冲区，WebFlux 按下游请求量写出；缓冲区满说明客户端长期读不动，结束连接，
+     * 客户端可用 Last-Event-ID 重连补发。写入由 this 串行化，不做事件合并
+     */
+    public final class FluxConnection implements Sink {
+        private final Sinks.Many<ServerSentEvent<Object>> sink;
+        private final Flux<ServerSentEvent<Object>> flux;
+        private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+        // 已放入缓冲区但尚未写出的事件数
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean open = true;
+        private volatile long lastWriteNanos = System.nanoTime();
+
+        private FluxConnection() {
+            this.sink = Sinks.many().unicast()
+                    .onBackpressureBuffer(Queues.<ServerSentEvent<Object>>get(queueCapacity).get());
+            this.flux = sink.asFlux()
+                    .doOnNext(event -> {
+                        pending.decrementAndGet();
+                        lastWriteNanos = System.nanoTime();
+                        (event.comment() != null ? heartbeats : sentEvents).increment();
+                    })
+                    .doFinally(signal -> closed());
+        }
+
+        /**
+         * 事件流，由 WebFlux 订阅
+         */
+        public Flux<ServerSentEvent<Object>> flux() {
+            return flux;
+        }
+
+        @Override
+        public boolean send(String id, String name, Object data, String coalesceKey) {
+            ServerSentEvent.Builder<Object> event = ServerSentEvent.builder(data).event(name);
+            if (id != null) {
+                event.id(id);
+            }
+            return emit(event.build());
+        }
+
+        @Override
+        public synchronized void complete() {
+            if (open) {
+                open = false;
+                sink.tryEmitComplete();
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void onClose(Runnable listener) {
+            closeListeners.add(listener);
+            if (!fluxConnections.contains(this)) {
+                listener.run();
+            }
+        }
+
+        private boolean emit(ServerSentEvent<Object> event) {
+            synchronized (this) {
+                if (!open) {
+                    return false;
+                }
+                pending.incrementAndGet();
+                Sinks.EmitResult result = sink.tryEmitNext(event);
+                if (result.isSuccess()) {
+                    return true;
+                }
+                pending.decrementAndGet();
+                open = false;
+                if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+                    overflowed.increment();
+                    logger.warn("SSE 发送缓冲区已满，关闭连接: capacity={}", queueCapacity);
+                    // 已缓冲的事件发送完后结束，客户端从最后收到的事件 id 重连
+                    sink.tryEmitComplete();
+                    return false;
+                }
+            }
+            // 客户端已断开；在锁外通知，避免与事件流的锁形成环
+            closed();
+            return false;
+        }
+
+        private void closed() {
+            open = false;
+            if (fluxConnections.remove(this)) {
+                for (Runnable listener : closeListeners) {
+                    try {
+                        listener.run();
+                    } catch (RuntimeException e) {
+                        logger.warn("SSE 连接关闭回调失败", e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package com.redink.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 仅包含 STORED（不压缩）条目的流式 ZIP
+ * PNG/JPEG 本身已压缩，直接存储即可；条目大小和 CRC 预先计算，
+ * 因此整个归档的字节布局是确定的，可以按任意字节区间输出（用于断点续传）。
+ * 图片生成后不再修改，CRC 按（大小, 修改时间）缓存在同目录的 .crc_{filename}.txt 中，
+ * 之后的下载和续传请求不再预读文件内容。
+ * 文件内容通过 FileChannel 直接拷贝到输出流，内存占用与图片大小无关
+ */
+public class StoredZipArchive {
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_RECORD_SIZE = 22;
+    private static final int VERSION = 20;
+    // 通用标志位 bit 11：文件名为 UTF-8
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final long length;
+    private final String etag;
+
+    private StoredZipArchive(List<Entry> entries) throws IOException {
+        if (entries.size() > 0xFFFF) {
+            throw new IOException("ZIP 条目数超出限制: " + entries.size());
+        }
+
+        CRC32 fingerprint = new CRC32();
+        ByteBuffer central = ByteBuffer.allocate(entries.stream()
+                        .mapToInt(e -> CENTRAL_HEADER_SIZE + e.nameBytes.length).sum())
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        long offset = 0;
+        for (Entry entry : entries) {
+            if (offset > ZIP32_LIMIT || entry.size > ZIP32_LIMIT) {
+                throw new IOException("ZIP 大小超出限制");
+            }
+
+            ByteBuffer local = ByteBuffer.allocate(LOCAL_HEADER_SIZE + entry.nameBytes.length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            local.putInt(0x04034b50)
+                    .putShort((short) VERSION)
+                    .putShort((short) FLAG_UTF8)
+                    .putShort((short) 0)
+                    .putShort((short) entry.dosTime)
+                    .putShort((short) entry.dosDate)
+                    .putInt((int) entry.crc)
+                    .putInt((int) entry.size)
+                    .putInt((int) entry.size)
+                    .putShort((short) entry.nameBytes.length)
+                    .putShort((short) 0)
+                    .put(entry.nameBytes);
+
+            central.putInt(0x02014b50)
+                    .putShort((short) VERSION)
+                    .putShort((short) VERSION)
+                    .putShort((short) FLAG_UTF8)
+                    .putShort((short) 0)
+                    .putShort((short) entry.dosTime)
+                    .putShort((short) entry.dosDate)
+                    .putInt((int) entry.crc)
+                    .putInt((int) entry.size)
+                    .putInt((int) entry.size)
+                    .putShort((short) entry.nameBytes.length)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putInt(0)
+                    .putInt((int) offset)
+                    .put(entry.nameBytes);
+
+            offset = addSegment(offset, local.array(), null, 0);
+            offset = addSegment(offset, null, entry.path, entry.size);
+
+            fingerprint.update(entry.nameBytes);
+            fingerprint.update(ByteBuffer.allocate(16).putLong(entry.size).putLong(entry.crc).array());
+            fingerprint.update((entry.dosDate << 16) | entry.dosTime);
+        }
+
+        long centralOffset = offset;
+        if (centralOffset > ZIP32_LIMIT) {
+            throw new IOException("ZIP 大小超出限制");
+        }
+        offset = addSegment(offset, central.array(), null, 0);
+
+        ByteBuffer end = ByteBuffer.allocate(END_RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(0x06054b50)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) entries.size())
+                .putShort((short) entries.size())
+                .putInt(central.capacity())
+                .putInt((int) centralOffset)
+                .putShort((short) 0);
+        offset = addSegment(offset, end.array(), null, 0);
+
+        this.length = offset;
+        this.etag = "\"zip-" + Long.toHexString(fingerprint.getValue()) + "-" + Long.toHexString(length) + "\"";
+    }
+
+    /**
+     * 根据文件列表构建归档布局（CRC 未缓存或文件已变化时读取文件计算）
+     * @param files 归档内文件名 -> 磁盘路径，按顺序写入
+     */
+    public static StoredZipArchive of(List<Map.Entry<String, Path>> files) throws IOException {
+        List<Entry> entries = new ArrayList<>(files.size());
+        byte[] buffer = new byte[64 * 1024];
+        for (Map.Entry<String, Path> file : files) {
+            entries.add(Entry.read(file.getKey(), file.getValue(), buffer));
+        }
+        return new StoredZipArchive(entries);
+    }
+
+    /**
+     * 归档总字节数
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * 由条目名称、大小和 CRC 计算的实体标签，内容不变时保持不变
+     */
+    public String etag() {
+        return etag;
+    }
+
+    /**
+     * 输出 [start, end] 闭区间内的字节
+     */
+    public void writeTo(OutputStream out, long start, long end) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        for (Segment segment : segments) {
+            long segmentEnd = segment.offset + segment.length - 1;
+            if (segmentEnd < start || segment.offset > end) {
+                continue;
+            }
+            long from = Math.max(start, segment.offset) - segment.offset;
+            long to = Math.min(end, segmentEnd) - segment.offset;
+            long count = to - from + 1;
+
+            if (segment.bytes != null) {
+                out.write(segment.bytes, (int) from, (int) count);
+            } else {
+                transfer(segment, from, count, target);
+            }
+        }
+        out.flush();
+    }
+
+    private void transfer(Segment segment, long position, long count, WritableByteChannel target) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            if (channel.size() != segment.length) {
+                throw new IOException("文件在下载过程中被修改: " + segment.path);
+            }
+            while (count > 0) {
+                long transferred = channel.transferTo(position, count, target);
+                if (transferred <= 0) {
+                    throw new IOException("读取文件失败: " + segment.path);
+                }
+                position += transferred;
+                count -= transferred;
+            }
+        }
+    }
+
+    private long addSegment(long offset, byte[] bytes, Path path, long size) {
+        long segmentLength = bytes != null ? bytes.length : size;
+        if (segmentLength > 0) {
+            segments.add(new Segment(offset, segmentLength, bytes, path));
+        }
+        return offset + segmentLength;
+    }
+
+    /**
+     * 归档中的连续字节片段：头部数据或文件内容
+     */
+    private static final class Segment {
+        final long offset;
+        final long length;
+        final byte[] bytes;
+        final Path path;
+
+        Segment(long offset, long length, byte[] bytes, Path path) {
+            this.offset = offset;
+            this.length = length;
+            this.bytes = bytes;
+            this.path = path;
+        }
+    }
+
+    /**
+     * 条目元数据
+     */
+    private static final class Entry {
+        final byte[] nameBytes;
+        final Path path;
+        final long size;
+        final long crc;
+        final int dosTime;
+        final int dosDate;
+
+        private Entry(byte[] nameBytes, Path path, long size, long crc, LocalDateTime modified) {
+            this.nameBytes = nameBytes;
+            this.path = path;
+            this.size = size;
+            this.crc = crc;
+            int year = Math.max(modified.getYear(), 1980);
+            this.dosDate = ((year - 1980) << 9) | (modified.getMonthValue() << 5) | modified.getDayOfMonth();
+            this.dosTime = (modified.getHour() << 11) | (modified.getMinute() << 5) | (modified.getSecond() / 2);
+        }
+
+        static Entry read(String name, Path path, byte[] buffer) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+
+            Long crc = cachedCrc(path, size, modified);
+            if (crc == null) {
+                crc = computeCrc(path, size, buffer);
+                cacheCrc(path, size, modified, crc);
+            }
+            return new Entry(name.getBytes(StandardCharsets.UTF_8), path, size, crc,
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(modified), ZoneId.systemDefault()));
+        }
+
+        private static long computeCrc(Path path, long expectedSize, byte[] buffer) throws IOException {
+            CRC32 crc = new CRC32();
+            long size = 0;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+                int read;
+                while ((read = channel.read(wrapped.clear())) > 0) {
+                    crc.update(buffer, 0, read);
+                    size += read;
+                }
+            }
+            if (size != expectedSize) {
+                throw new IOException("文件在读取过程中被修改: " + path);
+            }
+            return crc.getValue();
+        }
+
+        /**
+         * 读取缓存的 CRC，文件大小或修改时间不一致（或缓存不存在、损坏）时返回 null
+         */
+        private static Long cachedCrc(Path path, long size, long modified) {
+            Path file = crcFile(path);
+            try {
+                String[] parts = Files.readString(file, StandardCharsets.US_ASCII).trim().split(" ");
+                if (parts.length == 3 && Long.parseLong(parts[0]) == size && Long.parseLong(parts[1]) == modified) {
+                    return Long.parseLong(parts[2], 16);
+                }
+            } catch (IOException | NumberFormatException e) {
+                // 未缓存或缓存损坏，重新计算
+            }
+            return null;
+        }
+
+        private static void cacheCrc(Path path, long size, long modified, long crc) {
+            Path file = crcFile(path);
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                Files.writeString(tmp, size + " " + modified + " " + Long.toHexString(crc), StandardCharsets.US_ASCII);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // 缓存写入失败不影响下载，下次重新计算
+            }
+        }
+
+        private static Path crcFile(Path path) {
+            return path.resolveSibling(".crc_" + path.getFileName() + ".txt");
+        }
+    }
+}
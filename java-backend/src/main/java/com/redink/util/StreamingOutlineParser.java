@@ -0,0 +1,87 @@
+package com.redink.util;
+
+import com.redink.model.Page;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量大纲解析
+ * 模型输出逐段追加，遇到 <page> 分隔符时立即产出上一页；
+ * 页面切分、类型识别和编号规则与 {@link OutlineParser#parseOutline} 完全一致
+ */
+public class StreamingOutlineParser {
+
+    private static final String PAGE_DELIMITER = "<page>";
+
+    private final StringBuilder fullText = new StringBuilder();
+    // 最后一个分隔符之后尚未成页的文本
+    private final StringBuilder pending = new StringBuilder();
+    // pending 中下次查找分隔符的起点（分隔符可能跨两段输出）
+    private int searchFrom;
+    private int nextIndex;
+    private boolean finished;
+
+    /**
+     * 追加一段模型输出
+     * @return 本次完成的页面，可能为空
+     */
+    public List<Page> append(String chunk) {
+        if (finished) {
+            throw new IllegalStateException("解析已结束");
+        }
+        List<Page> completed = new ArrayList<>();
+        if (chunk == null || chunk.isEmpty()) {
+            return completed;
+        }
+        fullText.append(chunk);
+        pending.append(chunk);
+
+        int delimiter;
+        while ((delimiter = pending.indexOf(PAGE_DELIMITER, searchFrom)) >= 0) {
+            emit(pending.substring(0, delimiter), completed);
+            pending.delete(0, delimiter + PAGE_DELIMITER.length());
+            searchFrom = 0;
+        }
+        searchFrom = Math.max(0, pending.length() - (PAGE_DELIMITER.length() - 1));
+        return completed;
+    }
+
+    /**
+     * 输出结束，产出最后一页
+     * @return 最后完成的页面，可能为空
+     */
+    public List<Page> finish() {
+        List<Page> completed = new ArrayList<>();
+        if (!finished) {
+            finished = true;
+            emit(pending.toString(), completed);
+            pending.setLength(0);
+        }
+        return completed;
+    }
+
+    /**
+     * 目前为止收到的完整文本
+     */
+    public String getText() {
+        return fullText.toString();
+    }
+
+    /**
+     * 已产出的页数
+     */
+    public int getPageCount() {
+        return nextIndex;
+    }
+
+    private void emit(String segment, List<Page> completed) {
+        String trimmed = segment.trim();
+        if (trimmed.isEmpty()) {
+            return;
+        }
+        Page page = OutlineParser.parsePage(trimmed);
+        page.setIndex(nextIndex++);
+        completed.add(page);
+    }
+}
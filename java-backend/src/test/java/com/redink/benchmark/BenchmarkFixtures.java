@@ -0,0 +1,111 @@
+package com.redink.benchmark;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/**
+ * 基准测试固定数据
+ * 图片和大纲都由固定种子生成，不同构建之间的输入完全一致
+ */
+public final class BenchmarkFixtures {
+
+    private static final String[] TITLES = {
+            "秋冬护肤的五个关键步骤", "新手也能学会的手冲咖啡", "一周减脂餐搭配指南", "上海周末城市漫步路线",
+            "通勤穿搭的基础款清单", "高效读书笔记的方法", "租房改造低预算攻略", "跑步入门训练计划"
+    };
+
+    private static final String[] SENTENCES = {
+            "很多人都忽略了这一步，其实它决定了最终效果的七成。",
+            "准备工作不需要复杂的工具，家里常见的物品就足够了。",
+            "建议每天固定一个时间段坚持，两周之后就能看到明显变化。",
+            "记得根据自己的实际情况调整节奏，不要盲目照搬。",
+            "这个小技巧是我试了很多次之后总结出来的，真的很好用！",
+            "预算有限的话，可以优先把钱花在使用频率最高的地方。",
+            "Tips：拍照时尽量选择自然光，画面会更干净通透。",
+            "最后别忘了收藏这篇笔记，需要的时候随时翻出来看看。"
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * 生成固定内容的 PNG 图片：渐变背景、随机色块和细节噪点，压缩难度接近真实插画
+     */
+    public static byte[] image(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setPaint(new GradientPaint(0, 0, new Color(random.nextInt(0xFFFFFF)),
+                    width, height, new Color(random.nextInt(0xFFFFFF))));
+            graphics.fillRect(0, 0, width, height);
+
+            int shapes = width * height / 4000;
+            for (int i = 0; i < shapes; i++) {
+                graphics.setColor(new Color(random.nextInt(0xFFFFFF) | 0x60000000, true));
+                int size = 8 + random.nextInt(Math.max(16, width / 6));
+                graphics.fillOval(random.nextInt(width), random.nextInt(height), size, size);
+            }
+        } finally {
+            graphics.dispose();
+        }
+
+        for (int y = 0; y < height; y += 3) {
+            for (int x = (y / 3) % 3; x < width; x += 3) {
+                int rgb = image.getRGB(x, y);
+                int delta = random.nextInt(48) - 24;
+                int r = clamp(((rgb >> 16) & 0xFF) + delta);
+                int g = clamp(((rgb >> 8) & 0xFF) + delta);
+                int b = clamp((rgb & 0xFF) + delta);
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", output);
+            return output.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 生成指定页数的大纲文本，格式与模型输出一致
+     */
+    public static String outline(int pages, long seed) {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder();
+        builder.append("[封面]\n标题：").append(title(random)).append("\n副标题：")
+                .append(sentence(random)).append("\n背景：温暖的暖色调插画\n");
+        for (int i = 1; i < pages; i++) {
+            builder.append("\n<page>\n").append(i == pages - 1 ? "[总结]" : "[内容]").append("\n");
+            int lines = 3 + random.nextInt(4);
+            for (int j = 0; j < lines; j++) {
+                builder.append(j + 1).append(". ").append(sentence(random)).append("\n");
+            }
+        }
+        return builder.toString();
+    }
+
+    public static String title(Random random) {
+        return TITLES[random.nextInt(TITLES.length)] + " #" + random.nextInt(1000);
+    }
+
+    public static String sentence(Random random) {
+        return SENTENCES[random.nextInt(SENTENCES.length)];
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
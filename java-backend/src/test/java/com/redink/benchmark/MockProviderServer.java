@@ -0,0 +1,135 @@
+package com.redink.benchmark;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 本地模拟服务商（OpenAI 兼容接口），用于在不访问真实服务商的情况下测量客户端吞吐
+ * 放在测试源码中，单元测试和 benchmark profile 下的 JMH 基准共用
+ * 支持 HTTP/1.1 和 H2C，每个请求固定延迟后返回：
+ * POST .../chat/completions       大纲文本（请求体含 "stream":true 时按 SSE 分块返回）
+ * POST .../images/generations     b64_json 图片
+ *
+ * 也可以单独启动，把 spring.ai.openai.base-url 指向它做端到端压测：
+ * java -cp ... com.redink.benchmark.MockProviderServer 18080 200
+ */
+public final class MockProviderServer implements AutoCloseable {
+
+    private static final int STREAM_CHUNKS = 20;
+
+    private final DisposableServer server;
+    private final String chatResponse;
+    private final List<String> streamChunks;
+    private final String imageResponse;
+    private final Duration latency;
+
+    private MockProviderServer(int port, Duration latency) {
+        this.latency = latency;
+
+        String outline = BenchmarkFixtures.outline(8, 17L);
+        this.chatResponse = "{\"id\":\"mock\",\"object\":\"chat.completion\",\"created\":0,\"model\":\"mock\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":" + quote(outline) + "},"
+                + "\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":0,\"completion_tokens\":0,\"total_tokens\":0}}";
+
+        int chunkSize = (outline.length() + STREAM_CHUNKS - 1) / STREAM_CHUNKS;
+        this.streamChunks = new ArrayList<>();
+        for (int i = 0; i < outline.length(); i += chunkSize) {
+            String delta = outline.substring(i, Math.min(outline.length(), i + chunkSize));
+            streamChunks.add("data: {\"id\":\"mock\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"mock\","
+                    + "\"choices\":[{\"index\":0,\"delta\":{\"content\":" + quote(delta) + "}}]}\n\n");
+        }
+        streamChunks.add("data: [DONE]\n\n");
+
+        String image = Base64.getEncoder().encodeToString(BenchmarkFixtures.image(1024, 1365, 5L));
+        this.imageResponse = "{\"created\":0,\"data\":[{\"b64_json\":\"" + image + "\"}]}";
+
+        this.server = HttpServer.create()
+                .port(port)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .handle(this::handle)
+                .bindNow();
+    }
+
+    /**
+     * 启动服务
+     * @param port 端口，0 表示随机端口
+     * @param latencyMillis 每个请求的模拟处理延迟
+     */
+    public static MockProviderServer start(int port, long latencyMillis) {
+        return new MockProviderServer(port, Duration.ofMillis(latencyMillis));
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        String path = request.uri();
+        if (path.endsWith("/chat/completions")) {
+            return request.receive().aggregate().asString().defaultIfEmpty("")
+                    .delayElement(latency)
+                    .flatMap(body -> body.replace(" ", "").contains("\"stream\":true")
+                            ? response.header(HttpHeaderNames.CONTENT_TYPE, "text/event-stream")
+                                    .sendString(Flux.fromIterable(streamChunks)).then()
+                            : json(response, chatResponse));
+        }
+        if (path.endsWith("/images/generations")) {
+            return request.receive().then(Mono.delay(latency))
+                    .then(json(response, imageResponse));
+        }
+        return response.status(404).send();
+    }
+
+    private static Mono<Void> json(HttpServerResponse response, String body) {
+        return response.header(HttpHeaderNames.CONTENT_TYPE, "application/json")
+                .sendString(Mono.just(body))
+                .then();
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 16).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 18080;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        try (MockProviderServer server = start(port, latency)) {
+            System.out.println("模拟服务商已启动: " + server.baseUrl() + ", 延迟 " + latency + "ms");
+            Thread.currentThread().join();
+        }
+    }
+}
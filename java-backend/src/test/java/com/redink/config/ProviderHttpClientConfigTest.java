@@ -0,0 +1,122 @@
+package com.redink.config;
+
+import com.redink.benchmark.MockProviderServer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.HttpVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * ProviderHttpClientConfig 测试：对本地模拟服务商并发请求，检查按 base_url 设置的连接上限和连接池指标
+ */
+class ProviderHttpClientConfigTest {
+
+    private static final String IMAGE_REQUEST = "{\"model\":\"mock\",\"prompt\":\"周末城市漫步\",\"response_format\":\"b64_json\"}";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private MockProviderServer server;
+    private ConnectionProvider connectionProvider;
+
+    @BeforeEach
+    void setUp() {
+        // Reactor Netty 把连接池指标注册到全局 registry
+        Metrics.addRegistry(registry);
+        server = MockProviderServer.start(0, 500);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (connectionProvider != null) {
+            connectionProvider.disposeLater().block(Duration.ofSeconds(5));
+        }
+        server.close();
+        Metrics.removeRegistry(registry);
+        registry.close();
+    }
+
+    @Test
+    void poolLimitsConnectionsPerBaseUrlAndPublishesMetrics() throws Exception {
+        ConfigManager configManager = mock(ConfigManager.class);
+        when(configManager.loadImageProvidersConfig()).thenReturn(Map.of("providers",
+                Map.of("mock", Map.of("base_url", server.baseUrl() + "/v1", "max_concurrent", 2))));
+        when(configManager.loadTextProvidersConfig()).thenReturn(Map.of());
+        connectionProvider = new ProviderHttpClientConfig().providerConnectionProvider(configManager, "",
+                50, 500, Duration.ofSeconds(30), Duration.ofSeconds(60), Duration.ofMinutes(10));
+        HttpClient client = ProviderHttpClientConfig.createHttpClient(connectionProvider,
+                        Duration.ofSeconds(5), Duration.ofSeconds(30), true)
+                .baseUrl(server.baseUrl())
+                .headers(headers -> headers.set("Content-Type", "application/json"));
+
+        int requests = 8;
+        CompletableFuture<List<Integer>> responses = Flux.range(0, requests)
+                .flatMap(i -> client.post()
+                        .uri("/v1/images/generations")
+                        .send(ByteBufFlux.fromString(Mono.just(IMAGE_REQUEST)))
+                        .responseSingle((response, content) -> content.asString()
+                                .map(body -> response.status().code())), requests)
+                .collectList()
+                .toFuture();
+
+        // 服务商 max_concurrent=2：2 个连接在用，其余请求排队等待获取连接
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+            assertThat(gauge("reactor.netty.connection.provider.active.connections")).isEqualTo(2);
+            assertThat(gauge("reactor.netty.connection.provider.pending.connections")).isEqualTo(requests - 2);
+        });
+        assertThat(gauge("reactor.netty.connection.provider.max.connections")).isEqualTo(2);
+
+        assertThat(responses.get(30, TimeUnit.SECONDS)).hasSize(requests).containsOnly(200);
+        await().atMost(5, TimeUnit.SECONDS).untilAsserted(() -> {
+            assertThat(gauge("reactor.netty.connection.provider.active.connections")).isZero();
+            assertThat(gauge("reactor.netty.connection.provider.pending.connections")).isZero();
+            assertThat(gauge("reactor.netty.connection.provider.idle.connections")).isEqualTo(2);
+        });
+    }
+
+    @Test
+    void plainTextConnectionFallsBackToHttp11() {
+        connectionProvider = ConnectionProvider.builder("test").maxConnections(1).build();
+        HttpClient client = ProviderHttpClientConfig.createHttpClient(connectionProvider,
+                Duration.ofSeconds(5), Duration.ofSeconds(30), true);
+
+        HttpVersion version = client.post()
+                .uri(server.baseUrl() + "/v1/chat/completions")
+                .send(ByteBufFlux.fromString(Mono.just("{\"model\":\"mock\"}")))
+                .responseSingle((response, content) -> content.then(Mono.just(response.version())))
+                .block(Duration.ofSeconds(10));
+
+        assertThat(version).isEqualTo(HttpVersion.HTTP_1_1);
+    }
+
+    /**
+     * 模拟服务商对应子池的指标值
+     */
+    private double gauge(String name) {
+        String port = ":" + server.baseUrl().substring(server.baseUrl().lastIndexOf(':') + 1);
+        return registry.find(name)
+                .tag("name", ProviderHttpClientConfig.POOL_NAME)
+                .gauges().stream()
+                .filter(gauge -> gauge.getId().getTag("remote.address").endsWith(port))
+                .mapToDouble(Gauge::value)
+                .sum();
+    }
+}
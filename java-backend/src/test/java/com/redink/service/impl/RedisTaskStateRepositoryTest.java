@@ -0,0 +1,192 @@
+package com.redink.service.impl;
+
+import com.redink.model.TaskState;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * RedisTaskStateRepository 集成测试（Testcontainers 启动 Redis，没有 Docker 时跳过）
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RedisTaskStateRepositoryTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    private RedisTaskStateRepository repository;
+    private String taskId;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(REDIS.getHost(), REDIS.getMappedPort(6379)));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void setUp() {
+        repository = new RedisTaskStateRepository(redisTemplate, Duration.ofMinutes(5));
+        taskId = "test_" + UUID.randomUUID();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        repository.remove(taskId);
+        Files.deleteIfExists(TaskPayloadFiles.taskDir(taskId));
+    }
+
+    @Test
+    void putAndGetRoundTrip() {
+        byte[] cover = {1, 2, 3};
+        byte[][] userImages = {{4, 5}, {6}};
+        repository.put(taskId, state(Map.of(0, "0.png"), Map.of(1, "超时"), cover, userImages));
+
+        TaskState loaded = repository.get(taskId);
+
+        assertThat(loaded).isNotNull();
+        assertThat(loaded.getGenerated()).containsExactly(Map.entry(0, "0.png"));
+        assertThat(loaded.getFailed()).containsExactly(Map.entry(1, "超时"));
+        assertThat(loaded.getFullOutline()).isEqualTo("大纲");
+        assertThat(loaded.getUserTopic()).isEqualTo("主题");
+        assertThat(loaded.hasCoverImage()).isTrue();
+        assertThat(loaded.getCoverImage()).isEqualTo(cover);
+        assertThat(loaded.getUserImages()).isDeepEqualTo(userImages);
+    }
+
+    @Test
+    void putReplacesPreviousRun() {
+        repository.put(taskId, state(Map.of(0, "0.png", 1, "1.png"), Map.of(2, "失败"), null, null));
+        repository.put(taskId, state(Map.of(3, "3.png"), Map.of(), null, null));
+
+        TaskState loaded = repository.get(taskId);
+
+        assertThat(loaded.getGenerated()).containsOnlyKeys(3);
+        assertThat(loaded.getFailed()).isEmpty();
+        assertThat(loaded.hasCoverImage()).isFalse();
+    }
+
+    @Test
+    void concurrentMarksSurviveUpdateContext() throws Exception {
+        TaskState state = state(Map.of(), Map.of(), null, null);
+        repository.put(taskId, state);
+
+        int pages = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < pages; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    repository.markGenerated(taskId, index, index + ".png");
+                    return null;
+                }));
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    state.setCoverImage(new byte[]{(byte) index});
+                    repository.updateContext(taskId, state);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        TaskState loaded = repository.get(taskId);
+        assertThat(loaded.getGenerated()).hasSize(pages);
+        assertThat(loaded.getFullOutline()).isEqualTo("大纲");
+        assertThat(loaded.hasCoverImage()).isTrue();
+    }
+
+    @Test
+    void payloadsAreLoadedLazilyAndToleratesMissingFiles() throws Exception {
+        repository.put(taskId, state(Map.of(0, "0.png"), Map.of(), new byte[]{9}, new byte[][]{{7}}));
+
+        TaskState loaded = repository.get(taskId);
+        // 封面状态来自 meta，不读取文件
+        Files.delete(TaskPayloadFiles.coverFile(taskId));
+        assertThat(loaded.hasCoverImage()).isTrue();
+        assertThat(loaded.getGenerated()).containsOnlyKeys(0);
+
+        // 文件已丢失：读取时返回空，不抛出异常
+        assertThat(loaded.getCoverImage()).isNull();
+        assertThat(loaded.hasCoverImage()).isFalse();
+
+        TaskPayloadFiles.delete(taskId);
+        TaskState reloaded = repository.get(taskId);
+        assertThat(reloaded.getUserImages()).hasSize(1);
+        assertThat(reloaded.getUserImages()[0]).isNull();
+    }
+
+    @Test
+    void untouchedStateKeepsPayloadReferences() throws Exception {
+        repository.put(taskId, state(Map.of(), Map.of(), new byte[]{9}, null));
+        long written = Files.getLastModifiedTime(TaskPayloadFiles.coverFile(taskId)).toMillis();
+
+        TaskState loaded = repository.get(taskId);
+        loaded.setFullOutline("新大纲");
+        repository.updateContext(taskId, loaded);
+
+        TaskState reloaded = repository.get(taskId);
+        assertThat(reloaded.getFullOutline()).isEqualTo("新大纲");
+        assertThat(reloaded.getCoverImage()).isEqualTo(new byte[]{9});
+        assertThat(Files.getLastModifiedTime(TaskPayloadFiles.coverFile(taskId)).toMillis()).isEqualTo(written);
+    }
+
+    @Test
+    void getReturnsNullForUnknownTask() {
+        assertThat(repository.get(taskId)).isNull();
+    }
+
+    private static TaskState state(Map<Integer, String> generated, Map<Integer, String> failed,
+                                   byte[] cover, byte[][] userImages) {
+        TaskState state = new TaskState();
+        state.setGenerated(new ConcurrentHashMap<>(generated));
+        state.setFailed(new ConcurrentHashMap<>(failed));
+        state.setFullOutline("大纲");
+        state.setUserTopic("主题");
+        state.setCoverImage(cover);
+        state.setUserImages(userImages);
+        return state;
+    }
+}